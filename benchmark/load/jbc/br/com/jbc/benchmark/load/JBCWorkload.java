@@ -0,0 +1,52 @@
+package br.com.jbc.benchmark.load;
+
+import br.com.jbc.controller.Controller;
+import java.util.ArrayList;
+import java.util.List;
+import modelojbc.Pessoa;
+
+/**
+ * Carga sobre o exemplo ModeloJBC, usando Controller&lt;Pessoa&gt; do framework
+ * @author Rodrigo Marconato
+ */
+public class JBCWorkload implements Workload {
+
+    private Controller<Pessoa> controller;
+
+    public String getName() {
+        return "ModeloJBC";
+    }
+
+    public void setup(int rows) throws Exception {
+        this.controller = new Controller<Pessoa>();
+        List<Pessoa> lote = new ArrayList<Pessoa>();
+        for (int i = 0; i < rows; i++) {
+            lote.add(newPessoa(i));
+            if (lote.size() == 1000) {
+                this.controller.insert(lote);
+                lote.clear();
+            }
+        }
+        this.controller.insert(lote);
+    }
+
+    public void insert(int sequence) throws Exception {
+        this.controller.insert(newPessoa(sequence));
+    }
+
+    public void find(int sequence) throws Exception {
+        Pessoa filter = new Pessoa();
+        filter.setNome("Pessoa " + sequence);
+        this.controller.find(filter, Controller.SEARCH_EQUALS_STRING);
+    }
+
+    public void paginate(int firstResult, int maxResult) throws Exception {
+        this.controller.findPaginate(new Pessoa(), firstResult, maxResult, "id", Controller.ORDER_ASC);
+    }
+
+    private static Pessoa newPessoa(int sequence) {
+        Pessoa pessoa = new Pessoa();
+        pessoa.setNome("Pessoa " + sequence);
+        return pessoa;
+    }
+}
@@ -0,0 +1,44 @@
+package br.com.jbc.benchmark.load;
+
+import modelotradicional.Pessoa;
+import modelotradicional.PessoaController;
+
+/**
+ * Carga sobre o exemplo ModeloTradicional, usando PessoaController escrito à mão
+ * com Hibernate puro
+ * @author Rodrigo Marconato
+ */
+public class TradicionalWorkload implements Workload {
+
+    private PessoaController controller;
+
+    public String getName() {
+        return "ModeloTradicional";
+    }
+
+    public void setup(int rows) throws Exception {
+        this.controller = new PessoaController();
+        for (int i = 0; i < rows; i++) {
+            this.controller.insert(newPessoa(i));
+        }
+    }
+
+    public void insert(int sequence) throws Exception {
+        this.controller.insert(newPessoa(sequence));
+    }
+
+    public void find(int sequence) throws Exception {
+        this.controller.find("Pessoa " + sequence);
+    }
+
+    public void paginate(int firstResult, int maxResult) throws Exception {
+        this.controller.getCountRecords();
+        this.controller.findPaginate(firstResult, maxResult);
+    }
+
+    private static Pessoa newPessoa(int sequence) {
+        Pessoa pessoa = new Pessoa();
+        pessoa.setNome("Pessoa " + sequence);
+        return pessoa;
+    }
+}
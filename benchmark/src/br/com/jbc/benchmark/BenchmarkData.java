@@ -0,0 +1,121 @@
+package br.com.jbc.benchmark;
+
+import br.com.jbc.benchmark.model.Cidade;
+import br.com.jbc.benchmark.model.Pessoa;
+import br.com.jbc.controller.Controller;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Massa de dados e filtros compartilhados pelos benchmarks
+ * @author Rodrigo Marconato
+ */
+public class BenchmarkData {
+
+    /**
+     * Quantidade de cidades cadastradas na massa de dados
+     */
+    public static final int CIDADES = 10;
+
+    /**
+     * Formatos de filtro usados para medir BuildCriteria e as consultas
+     */
+    public enum FilterShape {
+        /** Filtro sem nenhum atributo preenchido */
+        VAZIO,
+        /** Filtro com um único atributo String */
+        SIMPLES,
+        /** Filtro com vários atributos String e Date */
+        COMPOSTO,
+        /** Filtro com atributos de uma associação ManyToOne */
+        ASSOCIACAO
+    }
+
+    /**
+     * Insere as cidades e a quantidade de pessoas informada
+     * @param quantidade Quantidade de pessoas que serão inseridas
+     * @throws Exception
+     */
+    public static void populate(int quantidade) throws Exception {
+        Controller<Cidade> controllerCidade = new Controller<Cidade>();
+        List<Cidade> cidades = new ArrayList<Cidade>();
+        for (int i = 0; i < CIDADES; i++) {
+            cidades.add(controllerCidade.insertReturnId(newCidade(i)));
+        }
+
+        Controller<Pessoa> controller = new Controller<Pessoa>();
+        List<Pessoa> lote = new ArrayList<Pessoa>();
+        for (int i = 0; i < quantidade; i++) {
+            lote.add(newPessoa(i, cidades.get(i % CIDADES)));
+            if (lote.size() == 1000) {
+                controller.insert(lote);
+                lote.clear();
+            }
+        }
+        controller.insert(lote);
+    }
+
+    /**
+     * Cria uma nova cidade ainda não persistida
+     * @param i Sequencial usado para gerar os valores
+     * @return Cidade
+     */
+    public static Cidade newCidade(int i) {
+        Cidade cidade = new Cidade();
+        cidade.setNome("Cidade " + i);
+        cidade.setUf(i % 2 == 0 ? "SP" : "PR");
+        return cidade;
+    }
+
+    /**
+     * Cria uma nova pessoa ainda não persistida
+     * @param i Sequencial usado para gerar os valores
+     * @param cidade Cidade da pessoa, pode ser null
+     * @return Pessoa
+     */
+    public static Pessoa newPessoa(int i, Cidade cidade) {
+        Pessoa pessoa = new Pessoa();
+        pessoa.setNome("Pessoa " + i);
+        pessoa.setEmail("pessoa" + i + "@jbc.com.br");
+        pessoa.setNascimento(nascimento(i));
+        pessoa.setCidade(cidade);
+        return pessoa;
+    }
+
+    /**
+     * Monta o filtro de acordo com o formato informado
+     * @param shape Formato do filtro
+     * @return Objeto VO com os filtros populados
+     */
+    public static Pessoa newFilter(FilterShape shape) {
+        Pessoa filter = new Pessoa();
+        switch (shape) {
+            case SIMPLES:
+                filter.setNome("Pessoa 1");
+                break;
+            case COMPOSTO:
+                filter.setNome("Pessoa 1");
+                filter.setEmail("@jbc.com.br");
+                filter.setNascimento(nascimento(1));
+                break;
+            case ASSOCIACAO:
+                Cidade cidade = new Cidade();
+                cidade.setNome("Cidade 1");
+                cidade.setUf("PR");
+                filter.setNome("Pessoa 1");
+                filter.setCidade(cidade);
+                break;
+            default:
+                break;
+        }
+        return filter;
+    }
+
+    private static java.util.Date nascimento(int i) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(1980 + (i % 30), i % 12, 1 + (i % 28));
+        return calendar.getTime();
+    }
+}
@@ -0,0 +1,52 @@
+package br.com.jbc.benchmark;
+
+import br.com.jbc.benchmark.BenchmarkData.FilterShape;
+import br.com.jbc.benchmark.model.Pessoa;
+import br.com.jbc.controller.Controller;
+import br.com.jbc.db.BuildCriteria;
+import br.com.jbc.db.Transaction;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.Criteria;
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Mede a montagem das restrições e do Criteria a partir de um objeto filtro,
+ * sem executar a consulta no banco de dados
+ * @author Rodrigo Marconato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BuildCriteriaBenchmark {
+
+    @Param({"VAZIO", "SIMPLES", "COMPOSTO", "ASSOCIACAO"})
+    public FilterShape shape;
+
+    private Pessoa filter;
+
+    private Session session;
+
+    @Setup
+    public void setup() {
+        this.filter = BenchmarkData.newFilter(this.shape);
+        this.session = Transaction.getInstance().getSession();
+    }
+
+    @Benchmark
+    public br.com.jbc.db.Restrictions parseRestrictions() {
+        return BuildCriteria.parseRestrictions(this.filter);
+    }
+
+    @Benchmark
+    public Criteria createCriteria() {
+        return BuildCriteria.createCriteria(this.filter, this.session, Controller.SEARCH_LIKE_STRING);
+    }
+}
@@ -0,0 +1,48 @@
+package br.com.jbc.benchmark;
+
+import br.com.jbc.benchmark.BenchmarkData.FilterShape;
+import br.com.jbc.benchmark.model.Pessoa;
+import br.com.jbc.controller.Controller;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Mede getCountRecords com cada formato de filtro sobre uma massa de dados fixa
+ * @author Rodrigo Marconato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CountRecordsBenchmark {
+
+    /**
+     * Quantidade de pessoas inseridas antes das medições
+     */
+    public static final int ROWS = 10000;
+
+    @Param({"VAZIO", "SIMPLES", "COMPOSTO", "ASSOCIACAO"})
+    public FilterShape shape;
+
+    private Controller<Pessoa> controller;
+
+    private Pessoa filter;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkData.populate(ROWS);
+        this.controller = new Controller<Pessoa>();
+        this.filter = BenchmarkData.newFilter(this.shape);
+    }
+
+    @Benchmark
+    public Integer getCountRecords() throws Exception {
+        return this.controller.getCountRecords(this.filter);
+    }
+}
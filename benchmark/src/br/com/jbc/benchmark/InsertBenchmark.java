@@ -0,0 +1,61 @@
+package br.com.jbc.benchmark;
+
+import br.com.jbc.benchmark.model.Pessoa;
+import br.com.jbc.controller.Controller;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compara Controller.insert de um registro por transação com Controller.insert
+ * de uma lista em uma única transação, com merge e com a inclusão rápida (persist).
+ * Os dois resultados são por registro.
+ * @author Rodrigo Marconato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InsertBenchmark {
+
+    /**
+     * Quantidade de registros de cada lista inserida
+     */
+    public static final int LIST_SIZE = 100;
+
+    @Param({"false", "true"})
+    public boolean fastInsert;
+
+    private Controller<Pessoa> controller;
+
+    private int sequence;
+
+    @Setup
+    public void setup() {
+        this.controller = new Controller<Pessoa>();
+        this.controller.setFastInsert(this.fastInsert);
+    }
+
+    @Benchmark
+    public Boolean insertSingle() throws Exception {
+        return this.controller.insert(BenchmarkData.newPessoa(this.sequence++, null));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LIST_SIZE)
+    public Boolean insertList() throws Exception {
+        List<Pessoa> list = new ArrayList<Pessoa>(LIST_SIZE);
+        for (int i = 0; i < LIST_SIZE; i++) {
+            list.add(BenchmarkData.newPessoa(this.sequence++, null));
+        }
+        return this.controller.insert(list);
+    }
+}
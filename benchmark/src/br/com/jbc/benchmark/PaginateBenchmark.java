@@ -0,0 +1,54 @@
+package br.com.jbc.benchmark;
+
+import br.com.jbc.benchmark.BenchmarkData.FilterShape;
+import br.com.jbc.benchmark.model.Pessoa;
+import br.com.jbc.controller.Controller;
+import br.com.jbc.util.SearchPaginate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Mede findPaginate na primeira página, no meio e no fim de uma massa de dados fixa
+ * @author Rodrigo Marconato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PaginateBenchmark {
+
+    /**
+     * Quantidade de pessoas inseridas antes das medições
+     */
+    public static final int ROWS = 10000;
+
+    /**
+     * Quantidade de registros por página
+     */
+    public static final int PAGE_SIZE = 50;
+
+    @Param({"0", "5000", "9950"})
+    public int firstResult;
+
+    private Controller<Pessoa> controller;
+
+    private Pessoa filter;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkData.populate(ROWS);
+        this.controller = new Controller<Pessoa>();
+        this.filter = BenchmarkData.newFilter(FilterShape.VAZIO);
+    }
+
+    @Benchmark
+    public SearchPaginate findPaginate() throws Exception {
+        return this.controller.findPaginate(this.filter, this.firstResult, PAGE_SIZE, "id", Controller.ORDER_ASC);
+    }
+}
@@ -0,0 +1,65 @@
+package br.com.jbc.benchmark;
+
+import br.com.jbc.benchmark.model.Pessoa;
+import br.com.jbc.controller.Controller;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compara Controller.insertOrUpdate de registros existentes gravados com merge e com o
+ * upsert nativo (MERGE INTO ... KEY no H2). Os dois resultados são por registro.
+ * @author Rodrigo Marconato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UpsertBenchmark {
+
+    /**
+     * Quantidade de pessoas inseridas antes das medições e gravadas em cada lista
+     */
+    public static final int ROWS = 100;
+
+    @Param({"false", "true"})
+    public boolean nativeUpsert;
+
+    private Controller<Pessoa> controller;
+
+    private List<Pessoa> pessoas;
+
+    private int sequence;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkData.populate(ROWS);
+        this.controller = new Controller<Pessoa>();
+        this.controller.setNativeUpsert(this.nativeUpsert);
+        this.pessoas = this.controller.findList(new Pessoa());
+    }
+
+    @Benchmark
+    public Boolean insertOrUpdateSingle() throws Exception {
+        Pessoa pessoa = this.pessoas.get(this.sequence++ % this.pessoas.size());
+        pessoa.setNome("Pessoa " + this.sequence);
+        return this.controller.insertOrUpdate(pessoa);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public Boolean insertOrUpdateList() throws Exception {
+        this.sequence++;
+        for (Pessoa pessoa : this.pessoas) {
+            pessoa.setNome("Pessoa " + this.sequence);
+        }
+        return this.controller.insertOrUpdate(this.pessoas);
+    }
+}
@@ -0,0 +1,274 @@
+package br.com.jbc.benchmark.load;
+
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gerador de carga multi-thread que executa uma mistura de insert, find e paginate
+ * sobre uma pilha de persistência, aumentando a quantidade de threads a cada etapa.
+ * Para cada etapa informa vazão, latência p50/p99, taxa de alocação e erros.
+ *
+ * Configuração por propriedades de sistema:
+ * load.threads (1,2,4,8,16,32,64), load.seconds (10), load.warmup (3), load.rows (10000),
+ * load.mix (insert:20,find:50,paginate:30), load.pageSize (20), load.serialize (true) e
+ * load.output (arquivo onde o relatório também é gravado).
+ *
+ * As duas pilhas compartilham uma única Session por JVM (Transaction.getInstance()),
+ * que não é thread-safe. Com load.serialize=true as operações disputam um único lock,
+ * assim a latência medida inclui a espera pela sessão; com false elas correm soltas e
+ * as falhas aparecem na coluna de erros.
+ * @author Rodrigo Marconato
+ */
+public class LoadHarness {
+
+    private static final Object SESSION_LOCK = new Object();
+
+    private final Workload workload;
+    private final int rows;
+    private final int pageSize;
+    private final int insertWeight;
+    private final int findWeight;
+    private final int paginateWeight;
+    private final boolean serialize;
+    private final AtomicInteger sequence;
+
+    public LoadHarness(Workload workload, int rows, int pageSize, String mix, boolean serialize) {
+        this.workload = workload;
+        this.rows = rows;
+        this.pageSize = pageSize;
+        this.serialize = serialize;
+        this.sequence = new AtomicInteger(rows);
+
+        int insert = 0, find = 0, paginate = 0;
+        for (String item : mix.split(",")) {
+            String[] pair = item.trim().split(":");
+            int weight = Integer.parseInt(pair[1].trim());
+            if (pair[0].trim().equals("insert")) {
+                insert = weight;
+            } else if (pair[0].trim().equals("find")) {
+                find = weight;
+            } else if (pair[0].trim().equals("paginate")) {
+                paginate = weight;
+            } else {
+                throw new IllegalArgumentException("Operação desconhecida em load.mix: " + pair[0]);
+            }
+        }
+        this.insertWeight = insert;
+        this.findWeight = find;
+        this.paginateWeight = paginate;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Uso: LoadHarness <classe Workload>");
+            System.exit(1);
+        }
+        Workload workload = (Workload) Class.forName(args[0]).newInstance();
+
+        int rows = Integer.getInteger("load.rows", 10000);
+        int seconds = Integer.getInteger("load.seconds", 10);
+        int warmup = Integer.getInteger("load.warmup", 3);
+        String output = System.getProperty("load.output");
+
+        LoadHarness harness = new LoadHarness(workload, rows,
+                Integer.getInteger("load.pageSize", 20),
+                System.getProperty("load.mix", "insert:20,find:50,paginate:30"),
+                Boolean.parseBoolean(System.getProperty("load.serialize", "true")));
+
+        workload.setup(rows);
+
+        List<String> report = new ArrayList<String>();
+        report.add(String.format("# %s rows=%d seconds=%d warmup=%d mix=%s serialize=%s",
+                workload.getName(), rows, seconds, warmup,
+                System.getProperty("load.mix", "insert:20,find:50,paginate:30"), harness.serialize));
+        report.add(String.format("%-8s %12s %10s %10s %12s %12s %8s",
+                "threads", "ops/s", "p50(us)", "p99(us)", "alloc(MB/s)", "alloc(B/op)", "errors"));
+        System.out.println(report.get(0));
+        System.out.println(report.get(1));
+
+        for (String threads : System.getProperty("load.threads", "1,2,4,8,16,32,64").split(",")) {
+            int n = Integer.parseInt(threads.trim());
+            harness.run(n, warmup);
+            Result result = harness.run(n, seconds);
+            String line = String.format("%-8d %12.1f %10.1f %10.1f %12.2f %12.0f %8d",
+                    n, result.throughput(), result.percentile(0.50) / 1000d, result.percentile(0.99) / 1000d,
+                    result.allocationRate() / (1024d * 1024d), result.allocationPerOperation(), result.errors);
+            report.add(line);
+            System.out.println(line);
+        }
+
+        if (output != null) {
+            PrintWriter writer = new PrintWriter(new FileWriter(output));
+            try {
+                for (String line : report) {
+                    writer.println(line);
+                }
+            } finally {
+                writer.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Executa uma etapa de carga com a quantidade de threads informada
+     * @param threads Quantidade de threads concorrentes
+     * @param seconds Duração da etapa em segundos
+     * @return Resultado da etapa
+     * @throws InterruptedException
+     */
+    public Result run(int threads, int seconds) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final long deadline = System.nanoTime() + seconds * 1000000000L;
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(start, deadline, i);
+            workers[i].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+
+        Result result = new Result();
+        for (Worker worker : workers) {
+            worker.join();
+            result.add(worker);
+        }
+        result.elapsedNanos = System.nanoTime() - begin;
+        return result;
+    }
+
+    private void execute(Random random) throws Exception {
+        int op = random.nextInt(this.insertWeight + this.findWeight + this.paginateWeight);
+        if (op < this.insertWeight) {
+            this.workload.insert(this.sequence.getAndIncrement());
+        } else if (op < this.insertWeight + this.findWeight) {
+            this.workload.find(random.nextInt(this.rows));
+        } else {
+            this.workload.paginate(random.nextInt(Math.max(1, this.rows - this.pageSize)), this.pageSize);
+        }
+    }
+
+    /**
+     * Thread de carga que guarda as próprias latências e bytes alocados
+     */
+    private class Worker extends Thread {
+
+        private final CountDownLatch start;
+        private final long deadline;
+        private final Random random;
+        private long[] latencies = new long[1 << 14];
+        private int count;
+        private int errors;
+        private long allocated = -1;
+
+        Worker(CountDownLatch start, long deadline, int index) {
+            super("load-worker-" + index);
+            this.start = start;
+            this.deadline = deadline;
+            this.random = new Random(index * 31L + System.nanoTime());
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.start.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long allocatedBefore = allocatedBytes();
+            long now = System.nanoTime();
+            while (now < this.deadline) {
+                try {
+                    if (serialize) {
+                        synchronized (SESSION_LOCK) {
+                            execute(this.random);
+                        }
+                    } else {
+                        execute(this.random);
+                    }
+                } catch (Throwable e) {
+                    this.errors++;
+                }
+                long end = System.nanoTime();
+                record(end - now);
+                now = end;
+            }
+            if (allocatedBefore >= 0) {
+                this.allocated = allocatedBytes() - allocatedBefore;
+            }
+        }
+
+        private void record(long nanos) {
+            if (this.count == this.latencies.length) {
+                this.latencies = Arrays.copyOf(this.latencies, this.count * 2);
+            }
+            this.latencies[this.count++] = nanos;
+        }
+    }
+
+    /**
+     * Bytes alocados pela thread atual, ou -1 quando a JVM não oferece a medição
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Resultado consolidado de uma etapa
+     */
+    public static class Result {
+
+        private long[] latencies = new long[0];
+        private int operations;
+        private int errors;
+        private long allocated;
+        private boolean allocationSupported = true;
+        private long elapsedNanos;
+
+        private void add(Worker worker) {
+            this.latencies = Arrays.copyOf(this.latencies, this.operations + worker.count);
+            System.arraycopy(worker.latencies, 0, this.latencies, this.operations, worker.count);
+            this.operations += worker.count;
+            this.errors += worker.errors;
+            if (worker.allocated < 0) {
+                this.allocationSupported = false;
+            } else {
+                this.allocated += worker.allocated;
+            }
+        }
+
+        public double throughput() {
+            return (this.operations - this.errors) / (this.elapsedNanos / 1e9d);
+        }
+
+        public double percentile(double p) {
+            if (this.operations == 0) {
+                return 0;
+            }
+            Arrays.sort(this.latencies, 0, this.operations);
+            return this.latencies[(int) Math.round(p * (this.operations - 1))];
+        }
+
+        public double allocationRate() {
+            return this.allocationSupported ? this.allocated / (this.elapsedNanos / 1e9d) : -1;
+        }
+
+        public double allocationPerOperation() {
+            return this.allocationSupported && this.operations > 0 ? (double) this.allocated / this.operations : -1;
+        }
+    }
+}
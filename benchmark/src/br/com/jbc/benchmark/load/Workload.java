@@ -0,0 +1,45 @@
+package br.com.jbc.benchmark.load;
+
+/**
+ * Operações executadas pelo LoadHarness sobre uma pilha de persistência.
+ * Cada implementação usa a sua própria entidade Pessoa e o seu próprio
+ * hibernate.cfg.xml, por isso cada pilha roda em uma JVM separada.
+ * @author Rodrigo Marconato
+ */
+public interface Workload {
+
+    /**
+     * Nome da pilha que aparece no relatório
+     * @return Nome da pilha
+     */
+    String getName();
+
+    /**
+     * Cria a fábrica de sessão e insere a massa de dados inicial
+     * @param rows Quantidade de pessoas inseridas, nomeadas "Pessoa 0" até "Pessoa rows-1"
+     * @throws Exception
+     */
+    void setup(int rows) throws Exception;
+
+    /**
+     * Insere uma nova pessoa em uma transação própria
+     * @param sequence Sequencial usado para gerar o nome da pessoa
+     * @throws Exception
+     */
+    void insert(int sequence) throws Exception;
+
+    /**
+     * Busca uma pessoa pelo nome exato
+     * @param sequence Sequencial da pessoa procurada
+     * @throws Exception
+     */
+    void find(int sequence) throws Exception;
+
+    /**
+     * Busca uma página de pessoas ordenada pelo id, junto com o total de registros
+     * @param firstResult Primeiro registro da página
+     * @param maxResult Número de registros por página
+     * @throws Exception
+     */
+    void paginate(int firstResult, int maxResult) throws Exception;
+}
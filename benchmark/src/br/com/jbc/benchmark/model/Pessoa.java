@@ -0,0 +1,83 @@
+package br.com.jbc.benchmark.model;
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+/**
+ * Entidade usada nos benchmarks, segue o mesmo mapeamento da Pessoa dos exemplos
+ * acrescida de campos para montar filtros de formatos diferentes. A chave vem do
+ * PooledIdGenerator, assim as inclusões são agrupadas no batch JDBC do hibernate.cfg.xml
+ * @author Rodrigo Marconato
+ */
+@Entity
+public class Pessoa implements Serializable {
+
+    @Id
+    @GeneratedValue(generator = "pessoaId")
+    @GenericGenerator(name = "pessoaId", strategy = "br.com.jbc.db.PooledIdGenerator", parameters = {
+        @Parameter(name = "sequence_name", value = "pessoa_hi_seq"),
+        @Parameter(name = "block_size", value = "100")})
+    @Column(name="ID")
+    private int id;
+
+    @Column(name="NOME", length=50, nullable=false)
+    private String nome;
+
+    @Column(name="EMAIL", length=80)
+    private String email;
+
+    @Column(name="NASCIMENTO")
+    private Date nascimento;
+
+    @ManyToOne
+    @JoinColumn(name="CIDADE_ID")
+    private Cidade cidade;
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public void setNome(String nome) {
+        this.nome = nome;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public Date getNascimento() {
+        return nascimento;
+    }
+
+    public void setNascimento(Date nascimento) {
+        this.nascimento = nascimento;
+    }
+
+    public Cidade getCidade() {
+        return cidade;
+    }
+
+    public void setCidade(Cidade cidade) {
+        this.cidade = cidade;
+    }
+}
@@ -0,0 +1,102 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.test.Check;
+import br.com.jbc.test.TestDatabase;
+import br.com.jbc.test.model.Item;
+import br.com.jbc.test.model.Registro;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Importação CSV: registros com chave existente são rejeitados sem sobrescrever o banco, chaves
+ * geradas são refeitas quando um lote falha, e a importação termina com erro quando todas as
+ * threads de gravação terminam, sem ficar bloqueada na fila dos lotes
+ * @author Rodrigo Marconato
+ */
+public class CsvImportTest {
+
+    public static void main(String[] args) throws Exception {
+        TestDatabase.install(TestDatabase.hibernateProperties("csvimport"));
+        duplicates();
+        generatedIds();
+        writersFailure();
+        System.exit(0);
+    }
+
+    private static void duplicates() throws Exception {
+        Controller<Item> controller = new Controller<Item>();
+        controller.insert(new Item(5L, "existente", 50));
+
+        StringBuilder csv = new StringBuilder("id,nome,quantidade\n");
+        for (int i = 1; i <= 10; i++) {
+            csv.append(i).append(",novo ").append(i).append(',').append(i).append('\n');
+        }
+        csv.append("7,repetido,70\n");
+        ImportReport report = new CsvImport<Item>(Item.class, "id", "nome", "quantidade")
+                .setParsers(1).setWriters(1).setBatchSize(4).run(file("itens", csv));
+
+        Check.equal(11L, report.getRecords(), "Registros lidos");
+        Check.equal(9L, report.getInserted(), "Registros incluídos");
+        Check.equal(2L, report.getRejected(), "Registros rejeitados");
+        Check.equal("existente", controller.findById(Item.class, 5L).getNome(), "Registro existente preservado");
+        Check.equal("novo 7", controller.findById(Item.class, 7L).getNome(), "Primeira ocorrência da chave repetida");
+        Check.equal(10, controller.getCountRecords(new Item()), "Registros no banco");
+    }
+
+    private static void generatedIds() throws Exception {
+        StringBuilder csv = new StringBuilder("descricao\n");
+        for (int i = 0; i < 20; i++) {
+            //O registro 13 excede o tamanho da coluna e derruba o seu lote
+            csv.append(i == 13 ? "descrição muito longa para a coluna de cinquenta caracteres" : "registro " + i).append('\n');
+        }
+        ImportReport report = new CsvImport<Registro>(Registro.class, "descricao")
+                .setParsers(1).setWriters(2).setBatchSize(5).run(file("registros", csv));
+
+        Check.equal(19L, report.getInserted(), "Registros incluídos");
+        Check.equal(1L, report.getRejected(), "Registros rejeitados");
+        Check.equal(19, new Controller<Registro>().getCountRecords(new Registro()), "Registros no banco");
+    }
+
+    private static void writersFailure() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            csv.append("registro ").append(i).append('\n');
+        }
+        final File file = file("falha", csv);
+        //String não é uma entidade mapeada, assim cada thread de gravação termina no primeiro lote
+        final CsvImport<Object> csvImport = new CsvImport<Object>(new RecordMapper<Object>() {
+            public Object map(String[] fields) {
+                return fields[0];
+            }
+        }).setHeader(false).setParsers(2).setWriters(2).setBatchSize(10).setQueueCapacity(1);
+
+        final Exception[] failure = new Exception[1];
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    csvImport.run(file);
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        thread.join(30000);
+        Check.that(!thread.isAlive(), "A importação ficou bloqueada sem threads de gravação");
+        Check.that(failure[0] != null, "Erro das threads de gravação informado");
+    }
+
+    private static File file(String name, CharSequence content) throws Exception {
+        File file = new File(name + ".csv");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content.toString());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
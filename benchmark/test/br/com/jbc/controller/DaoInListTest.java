@@ -0,0 +1,104 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.test.Check;
+import br.com.jbc.test.TestDatabase;
+import br.com.jbc.test.model.Item;
+import br.com.jbc.util.LongIdSet;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.dialect.H2Dialect;
+
+/**
+ * Listas de parametros grandes vão em uma única consulta quando o dialeto não limita o IN, e com o
+ * limite do Oracle são divididas em partes: as entidades são consultadas em sequência na sessão do
+ * Dao e sem registros repetidos, valores são concatenados com as repetições, e somente as chaves são consultadas em paralelo, em um executor
+ * com threads limitadas
+ * @author Rodrigo Marconato
+ */
+public class DaoInListTest {
+
+    private static final int ITENS = 3000;
+    private static final int PARAMETROS = 2500;
+
+    public static void main(String[] args) throws Exception {
+        List<Long> ids = new ArrayList<Long>();
+        for (long id = 1; id <= PARAMETROS; id++) {
+            ids.add(id);
+        }
+
+        SessionFactory h2 = TestDatabase.h2("inlist_h2", Item.class);
+        populate(h2);
+        Session session = h2.openSession();
+        Dao<Item> dao = new Dao<Item>(session);
+        h2.getStatistics().clear();
+        List<Item> items = dao.getListByHQLCondition("from Item i where i.id in (:ids) order by i.id desc", ids, "ids");
+        Check.equal(PARAMETROS, items.size(), "Registros sem limite do IN");
+        Check.equal(Long.valueOf(PARAMETROS), items.get(0).getId(), "Primeiro registro do order by");
+        Check.equal(Long.valueOf(1), items.get(PARAMETROS - 1).getId(), "Último registro do order by");
+        Check.equal(1L, h2.getStatistics().getQueryExecutionCount(), "Consultas sem limite do IN");
+        session.close();
+
+        SessionFactory limited = TestDatabase.open(TestDatabase.url("inlist_limitado"), LimitedInDialect.class.getName(), Item.class);
+        populate(limited);
+        session = limited.openSession();
+        dao = new Dao<Item>(session);
+        limited.getStatistics().clear();
+        //Os itens com quantidade zero fora da lista atendem às três partes
+        items = dao.getListByHQLCondition("from Item i where i.id in (:ids) or i.quantidade = 0", ids, "ids");
+        Check.equal(3L, limited.getStatistics().getQueryExecutionCount(), "Consultas com limite do IN");
+        Check.equal(PARAMETROS + (ITENS - PARAMETROS) / 10, items.size(), "Registros sem repetição com limite do IN");
+        for (Item item : items) {
+            Check.that(session.contains(item), "Registro " + item.getId() + " fora da sessão do Dao");
+        }
+        //Valores não são entidades: repetidos dentro e entre as partes, como na consulta única
+        List quantidades = dao.getListByHQLCondition("select i.quantidade from Item i where i.id in (:ids)", ids, "ids");
+        Check.equal(PARAMETROS, quantidades.size(), "Valores com limite do IN");
+
+        LongIdSet.Builder builder = new LongIdSet.Builder();
+        for (long id = 1; id <= ITENS; id++) {
+            builder.add(id);
+        }
+        LongIdSet all = builder.build();
+        for (int i = 0; i < 5; i++) {
+            Check.equal(ITENS, dao.getIdsByHQLCondition("select i.id from Item i where i.id in (:ids)", all, "ids", true).size(), "Chaves HQL em paralelo");
+            Check.equal(ITENS, dao.getIdsBySQLCondition("select ID from Item where ID in (:ids)", all, "ids", true).size(), "Chaves SQL em paralelo");
+        }
+        session.close();
+
+        int threads = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("jbc-query-")) {
+                threads++;
+            }
+        }
+        Check.that(threads <= Runtime.getRuntime().availableProcessors(), "Threads do executor das consultas: " + threads);
+        System.exit(0);
+    }
+
+    private static void populate(SessionFactory factory) {
+        Session session = factory.openSession();
+        org.hibernate.Transaction transaction = session.beginTransaction();
+        for (long id = 1; id <= ITENS; id++) {
+            session.save(new Item(id, "item " + id, (int) (id % 10)));
+            if (id % 500 == 0) {
+                session.flush();
+                session.clear();
+            }
+        }
+        transaction.commit();
+        session.close();
+    }
+
+    /**
+     * H2 com o limite de 1000 elementos no IN do Oracle
+     */
+    public static class LimitedInDialect extends H2Dialect {
+
+        @Override
+        public int getInExpressionCountLimit() {
+            return 1000;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.db.HibernateUtil;
+import br.com.jbc.test.Check;
+import br.com.jbc.test.TestDatabase;
+import br.com.jbc.test.model.Item;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
+
+/**
+ * GroupCommitExecutor grava as operações de um grupo em uma única transação: a gravação que
+ * falha é desfeita no seu savepoint e recebe o erro, e as demais são confirmadas no mesmo commit
+ * @author Rodrigo Marconato
+ */
+public class GroupCommitExecutorTest {
+
+    private static final int ITENS = 6;
+
+    public static void main(String[] args) throws Exception {
+        Properties properties = TestDatabase.hibernateProperties("group_commit");
+        properties.setProperty("hibernate.generate_statistics", "true");
+        TestDatabase.install(properties);
+        Session session = HibernateUtil.getInstance().getSession();
+        Statistics statistics = session.getSessionFactory().getStatistics();
+        session.close();
+
+        GroupCommitExecutor executor = new GroupCommitExecutor(100, 20, 500);
+        statistics.clear();
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (long id = 1; id <= ITENS / 2; id++) {
+            futures.add(executor.insert(new Item(id, "item " + id, (int) id)));
+        }
+        //O nome é obrigatório
+        Future<Boolean> failed = executor.insert(new Item(100L, null, 0));
+        for (long id = ITENS / 2 + 1; id <= ITENS; id++) {
+            futures.add(executor.insert(new Item(id, "item " + id, (int) id)));
+        }
+
+        for (Future<Boolean> future : futures) {
+            Check.equal(Boolean.TRUE, future.get(10, TimeUnit.SECONDS), "Gravação confirmada no grupo");
+        }
+        try {
+            GroupCommitExecutor.await(failed);
+            Check.that(false, "A gravação sem nome deveria falhar");
+        } catch (Exception e) {
+            //esperado, com a exceção original da gravação
+            Check.that(!(e instanceof ExecutionException), "Exceção original da gravação: " + e);
+        }
+        Check.equal(1L, statistics.getSuccessfulTransactionCount(), "Commits do grupo");
+
+        Controller<Item> items = new Controller<Item>();
+        Check.equal((long) ITENS, items.getValueByHQLCondition("select count(*) from Item"), "Itens gravados");
+        Check.equal(0L, items.getValueByHQLCondition("select count(*) from Item where id = 100"), "Item que falhou desfeito");
+
+        //O executor continua gravando depois da falha
+        Check.equal(Boolean.TRUE, GroupCommitExecutor.await(executor.insert(new Item(101L, "depois da falha", 1))), "Gravação no grupo seguinte");
+        Check.equal((long) ITENS + 1, items.getValueByHQLCondition("select count(*) from Item"), "Item do grupo seguinte");
+        executor.close();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,77 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.db.HibernateUtil;
+import br.com.jbc.test.Check;
+import br.com.jbc.test.CountingConnectionProvider;
+import br.com.jbc.test.TestDatabase;
+import br.com.jbc.test.model.Item;
+import br.com.jbc.util.SearchPaginate;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+/**
+ * Com uma réplica de leitura em outro banco H2, que não recebe as gravações do principal, a thread
+ * que gravou lê o banco principal durante jbc.replica.read_your_writes enquanto as outras threads
+ * leem a réplica, as sessões abertas na réplica são fechadas ao fim de cada leitura e as entidades
+ * lidas nela podem ser usadas depois disso
+ * @author Rodrigo Marconato
+ */
+public class ReplicaReadTest {
+
+    public static void main(String[] args) throws Exception {
+        final String replicaUrl = TestDatabase.url("replica_copia");
+        Properties properties = TestDatabase.hibernateProperties("replica_principal");
+        properties.setProperty("hibernate.connection.provider_class", CountingConnectionProvider.class.getName());
+        properties.setProperty(HibernateUtil.REPLICA_URLS, replicaUrl);
+        properties.setProperty(HibernateUtil.REPLICA_READ_YOUR_WRITES, "300");
+        TestDatabase.install(properties);
+
+        final Controller<Item> controller = new Controller<Item>();
+        Check.that(controller.insert(new Item(1L, "gravado no principal", 1)), "Inclusão no banco principal");
+        Check.equal(1, controller.findList(new Item()).size(), "Leitura da thread que gravou");
+
+        final AtomicInteger otherThread = new AtomicInteger(-1);
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    otherThread.set(controller.findList(new Item()).size());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        reader.start();
+        reader.join();
+        Check.equal(0, otherThread.get(), "Leitura de outra thread na réplica");
+        Check.equal(0, CountingConnectionProvider.getOpenConnections(replicaUrl), "Conexões da réplica abertas após a leitura de outra thread");
+
+        //Passado o tempo de read_your_writes a própria thread que gravou volta a ler a réplica
+        Thread.sleep(400);
+        Check.equal(0, controller.findList(new Item()).size(), "Leitura da thread que gravou após read_your_writes");
+        Check.equal(0, CountingConnectionProvider.getOpenConnections(replicaUrl), "Conexões da réplica abertas após a leitura");
+
+        //Um registro que existe somente na réplica, lido por cada tipo de consulta depois de fechada a sessão
+        SessionFactory replica = TestDatabase.open(replicaUrl, "org.hibernate.dialect.H2Dialect", Item.class);
+        Session session = replica.openSession();
+        org.hibernate.Transaction transaction = session.beginTransaction();
+        session.save(new Item(2L, "somente na réplica", 2));
+        transaction.commit();
+        session.close();
+
+        Check.equal("somente na réplica", controller.findById(Item.class, 2L).getNome(), "findById na réplica");
+        Item filter = new Item();
+        filter.setNome("somente");
+        Check.equal(Long.valueOf(2L), controller.find(filter).getId(), "find na réplica");
+        SearchPaginate page = controller.findPaginate(new Item(), 0, 10, "id", Controller.ORDER_ASC);
+        Check.equal(1, page.getRowCount(), "Total de findPaginate na réplica");
+        Check.equal("somente na réplica", ((Item) page.getListResult().get(0)).getNome(), "Página de findPaginate na réplica");
+        Check.equal("somente na réplica", controller.getListByHQLCondition("from Item").get(0).getNome(), "getListByHQLCondition na réplica");
+        Check.equal(1, controller.getListByHQLCondition("from Item i where i.id in (:ids)", Arrays.asList(2L), "ids").size(),
+                "getListByHQLCondition com lista de parametros na réplica");
+        Check.equal(0, CountingConnectionProvider.getOpenConnections(replicaUrl), "Conexões da réplica abertas após as consultas");
+        System.exit(0);
+    }
+}
@@ -0,0 +1,90 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.db.HibernateUtil;
+import br.com.jbc.test.Check;
+import br.com.jbc.test.CountingConnectionProvider;
+import br.com.jbc.test.TestDatabase;
+import br.com.jbc.test.model.Pedido;
+import br.com.jbc.util.SearchPaginate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Com três shards em bancos H2 distintos a paginação sem atributo de ordenação percorre todos os
+ * registros pela chave primária, sem repetir nem pular registros, e a paginação por um atributo
+ * com valores repetidos desempata pela chave primária. Nenhuma sessão dos shards fica aberta depois
+ * das operações
+ * @author Rodrigo Marconato
+ */
+public class ShardedControllerTest {
+
+    private static final int PEDIDOS = 40;
+    private static final int PAGINA = 7;
+
+    public static void main(String[] args) throws Exception {
+        String[] urls = {TestDatabase.url("shard_0"), TestDatabase.url("shard_1"), TestDatabase.url("shard_2")};
+        Properties properties = TestDatabase.hibernateProperties("shard_principal");
+        properties.setProperty("hibernate.connection.provider_class", CountingConnectionProvider.class.getName());
+        properties.setProperty(HibernateUtil.SHARD_URLS, urls[0] + "," + urls[1] + "," + urls[2]);
+        TestDatabase.install(properties);
+        Check.equal(3, HibernateUtil.getInstance().getShardCount(), "Shards configurados");
+
+        ShardedController<Pedido> controller = new ShardedController<Pedido>();
+        List<Pedido> pedidos = new ArrayList<Pedido>();
+        //Chaves em ordem diferente dos clientes, para que a ordem de inclusão em cada shard não seja a da chave
+        for (int i = 0; i < PEDIDOS; i++) {
+            long id = (i * 17L) % PEDIDOS + 1;
+            pedidos.add(new Pedido(id, Long.valueOf(i + 1), "grupo " + (i % 3)));
+        }
+        Check.that(controller.insert(pedidos), "Inclusão nos shards");
+        Check.equal(PEDIDOS, controller.getCountRecords(new Pedido()), "Registros em todos os shards");
+
+        List<Long> ids = page(controller, null, Controller.ORDER_ASC);
+        for (int i = 0; i < PEDIDOS; i++) {
+            Check.equal(Long.valueOf(i + 1), ids.get(i), "Chave na posição " + i + " sem ordenação");
+        }
+
+        //Cada descrição se repete em vários shards e é desempatada pela chave primária
+        Collections.sort(pedidos, new Comparator<Pedido>() {
+            public int compare(Pedido left, Pedido right) {
+                int result = left.getDescricao().compareTo(right.getDescricao());
+                return result != 0 ? result : left.getId().compareTo(right.getId());
+            }
+        });
+        ids = page(controller, "descricao", Controller.ORDER_ASC);
+        for (int i = 0; i < PEDIDOS; i++) {
+            Check.equal(pedidos.get(i).getId(), ids.get(i), "Chave na posição " + i + " ordenada por descrição");
+        }
+
+        //Consultas com a chave do shard vão somente para o shard do cliente, em uma sessão própria
+        Pedido filter = new Pedido();
+        filter.setCliente(7L);
+        Check.equal(1, controller.findList(filter).size(), "findList no shard do cliente");
+        Check.equal(Long.valueOf(7L), controller.find(filter).getCliente(), "find no shard do cliente");
+        Check.equal(1, controller.getCountRecords(filter), "getCountRecords no shard do cliente");
+        Check.equal(1, controller.findPaginate(filter, 0, PAGINA, null, Controller.ORDER_ASC).getListResult().size(), "findPaginate no shard do cliente");
+        for (String url : urls) {
+            Check.equal(0, CountingConnectionProvider.getOpenConnections(url), "Conexões abertas em " + url);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Percorre todas as páginas e retorna as chaves na ordem em que foram lidas
+     */
+    private static List<Long> page(ShardedController<Pedido> controller, String sortField, boolean orderByType) throws Exception {
+        List<Long> ids = new ArrayList<Long>();
+        for (int first = 0; first < PEDIDOS; first += PAGINA) {
+            SearchPaginate page = controller.findPaginate(new Pedido(), first, PAGINA, sortField, orderByType);
+            Check.equal(PEDIDOS, page.getRowCount(), "Total de registros da página " + first);
+            for (Object obj : page.getListResult()) {
+                ids.add(((Pedido) obj).getId());
+            }
+        }
+        Check.equal(PEDIDOS, ids.size(), "Registros lidos nas páginas ordenadas por " + sortField);
+        return ids;
+    }
+}
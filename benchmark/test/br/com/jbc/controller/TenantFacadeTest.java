@@ -0,0 +1,60 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.db.HibernateUtil;
+import br.com.jbc.db.ThreadTenantResolver;
+import br.com.jbc.test.Check;
+import br.com.jbc.test.TestDatabase;
+import br.com.jbc.test.model.Item;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Um mesmo Controller usado por clientes (tenants) diferentes grava e lê no banco do cliente de
+ * cada operação, e continua funcionando depois que a fábrica do cliente é fechada por falta de uso
+ * @author Rodrigo Marconato
+ */
+public class TenantFacadeTest {
+
+    public static void main(String[] args) throws Exception {
+        Properties properties = TestDatabase.hibernateProperties("tenant_principal");
+        properties.setProperty(HibernateUtil.TENANT_URL, TestDatabase.url("tenant_{tenant}"));
+        properties.setProperty(HibernateUtil.TENANT_IDLE_TIMEOUT, "200");
+        //A fábrica do cliente é recriada após o fechamento e não pode apagar as tabelas
+        properties.setProperty("hibernate.hbm2ddl.auto", "update");
+        TestDatabase.install(properties);
+
+        ThreadTenantResolver.setTenant("a");
+        Controller<Item> controller = new Controller<Item>();
+        Check.that(controller.insert(new Item(1L, "cliente a", 1)), "Inclusão no cliente a");
+
+        ThreadTenantResolver.setTenant("b");
+        Check.that(controller.insert(new Item(1L, "cliente b", 2)), "Inclusão no cliente b");
+        Check.that(controller.insert(new Item(2L, "cliente b", 3)), "Segunda inclusão no cliente b");
+
+        check(controller, "a", 1);
+        check(controller, "b", 2);
+
+        //Fecha a fábrica e a sessão dos clientes sem uso; o Controller passa a usar uma nova sessão
+        Thread.sleep(300);
+        HibernateUtil.getInstance().getTenantFactories().evictIdle();
+        Check.equal(0, HibernateUtil.getInstance().getTenantFactories().size(), "Fábricas abertas após o fechamento");
+        check(controller, "a", 1);
+        ThreadTenantResolver.setTenant("a");
+        Check.that(controller.update(new Item(1L, "cliente a alterado", 1)), "Alteração após o fechamento");
+        Check.equal("cliente a alterado", controller.findById(Item.class, 1L).getNome(), "Registro alterado no cliente a");
+        check(controller, "b", 2);
+
+        ThreadTenantResolver.clear();
+        Check.equal(0, controller.findList(new Item()).size(), "Registros no banco principal");
+        System.exit(0);
+    }
+
+    private static void check(Controller<Item> controller, String tenant, int size) throws Exception {
+        ThreadTenantResolver.setTenant(tenant);
+        List<Item> items = controller.findList(new Item());
+        Check.equal(size, items.size(), "Registros do cliente " + tenant);
+        for (Item item : items) {
+            Check.that(item.getNome().startsWith("cliente " + tenant), "Registro de outro cliente em " + tenant + ": " + item.getNome());
+        }
+    }
+}
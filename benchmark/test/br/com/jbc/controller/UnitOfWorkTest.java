@@ -0,0 +1,143 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.db.Transaction;
+import br.com.jbc.test.Check;
+import br.com.jbc.test.TestDatabase;
+import br.com.jbc.test.model.Item;
+import br.com.jbc.test.model.Registro;
+import br.com.jbc.util.JBCException;
+
+/**
+ * inTransaction confirma as gravações de vários controllers com um único commit e desfaz todas
+ * quando a unidade de trabalho falha, quando uma operação falhou mesmo com a exceção tratada e
+ * quando uma unidade interna falha, pois as unidades internas participam da transação da externa
+ * @author Rodrigo Marconato
+ */
+public class UnitOfWorkTest {
+
+    public static void main(String[] args) throws Exception {
+        TestDatabase.install(TestDatabase.hibernateProperties("unit_of_work"));
+        final Controller<Item> items = new Controller<Item>();
+        final Controller<Registro> registros = new Controller<Registro>();
+
+        //Vários controllers em uma transação
+        String result = Controller.inTransaction(new UnitOfWork<String>() {
+            public String execute() throws Exception {
+                items.insert(new Item(1L, "um", 1));
+                registros.insert(new Registro("primeiro"));
+                items.insert(new Item(2L, "dois", 2));
+                return "ok";
+            }
+        });
+        Check.equal("ok", result, "Resultado da unidade de trabalho");
+        Check.equal(2L, count(items, "Item"), "Itens confirmados");
+        Check.equal(1L, count(registros, "Registro"), "Registros confirmados");
+
+        //A exceção da unidade de trabalho desfaz todas as gravações
+        try {
+            Controller.inTransaction(new UnitOfWork<Void>() {
+                public Void execute() throws Exception {
+                    items.insert(new Item(3L, "tres", 3));
+                    registros.insert(new Registro("segundo"));
+                    throw new IllegalStateException("falha depois das gravações");
+                }
+            });
+            Check.that(false, "A unidade de trabalho deveria falhar");
+        } catch (IllegalStateException e) {
+            //esperado
+        }
+        Check.equal(2L, count(items, "Item"), "Itens após a exceção");
+        Check.equal(1L, count(registros, "Registro"), "Registros após a exceção");
+        Check.that(!Transaction.getInstance().inUnitOfWork(), "Unidade de trabalho encerrada após a exceção");
+
+        //A operação que falhou pede rollback mesmo com a exceção tratada pela unidade de trabalho
+        try {
+            Controller.inTransaction(new UnitOfWork<Void>() {
+                public Void execute() throws Exception {
+                    registros.insert(new Registro("terceiro"));
+                    try {
+                        //A descrição é obrigatória
+                        registros.insert(new Registro(null));
+                        Check.that(false, "A inclusão sem descrição deveria falhar");
+                    } catch (Exception e) {
+                        //tratada e ignorada
+                    }
+                    items.insert(new Item(4L, "quatro", 4));
+                    return null;
+                }
+            });
+            Check.that(false, "A unidade de trabalho deveria ser desfeita");
+        } catch (JBCException e) {
+            Check.equal(JBCException.TRANSACAO_DESFEITA, e.getMessage(), "Mensagem da transação desfeita");
+        }
+        Check.equal(2L, count(items, "Item"), "Itens após a falha tratada");
+        Check.equal(1L, count(registros, "Registro"), "Registros após a falha tratada");
+
+        //Unidades internas participam da transação da externa
+        Controller.inTransaction(new UnitOfWork<Void>() {
+            public Void execute() throws Exception {
+                items.insert(new Item(5L, "cinco", 5));
+                Controller.inTransaction(new UnitOfWork<Void>() {
+                    public Void execute() throws Exception {
+                        registros.insert(new Registro("interno"));
+                        return null;
+                    }
+                });
+                Check.that(Transaction.getInstance().inUnitOfWork(), "Unidade externa aberta após a interna");
+                return null;
+            }
+        });
+        Check.equal(3L, count(items, "Item"), "Itens das unidades aninhadas");
+        Check.equal(2L, count(registros, "Registro"), "Registros das unidades aninhadas");
+
+        //A falha da unidade externa desfaz o que a interna gravou
+        try {
+            Controller.inTransaction(new UnitOfWork<Void>() {
+                public Void execute() throws Exception {
+                    Controller.inTransaction(new UnitOfWork<Void>() {
+                        public Void execute() throws Exception {
+                            items.insert(new Item(6L, "seis", 6));
+                            return null;
+                        }
+                    });
+                    throw new IllegalStateException("falha depois da unidade interna");
+                }
+            });
+            Check.that(false, "A unidade externa deveria falhar");
+        } catch (IllegalStateException e) {
+            //esperado
+        }
+        Check.equal(3L, count(items, "Item"), "Itens após a falha da unidade externa");
+
+        //A falha da unidade interna, tratada pela externa, desfaz a transação inteira
+        try {
+            Controller.inTransaction(new UnitOfWork<Void>() {
+                public Void execute() throws Exception {
+                    items.insert(new Item(7L, "sete", 7));
+                    try {
+                        Controller.inTransaction(new UnitOfWork<Void>() {
+                            public Void execute() throws Exception {
+                                registros.insert(new Registro("interno desfeito"));
+                                throw new IllegalStateException("falha na unidade interna");
+                            }
+                        });
+                    } catch (IllegalStateException e) {
+                        //tratada e ignorada
+                    }
+                    return null;
+                }
+            });
+            Check.that(false, "A unidade externa deveria ser desfeita");
+        } catch (JBCException e) {
+            Check.equal(JBCException.TRANSACAO_DESFEITA, e.getMessage(), "Mensagem da transação desfeita");
+        }
+        Check.equal(3L, count(items, "Item"), "Itens após a falha da unidade interna");
+        Check.equal(2L, count(registros, "Registro"), "Registros após a falha da unidade interna");
+        Check.that(!Transaction.getInstance().inUnitOfWork(), "Nenhuma unidade de trabalho aberta no final");
+        System.exit(0);
+    }
+
+    private static Long count(Controller<?> controller, String entity) throws Exception {
+        return (Long) controller.getValueByHQLCondition("select count(*) from " + entity);
+    }
+}
@@ -0,0 +1,79 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.test.Check;
+import br.com.jbc.test.TestDatabase;
+import br.com.jbc.test.model.Item;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * WriteBehindBuffer une as gravações pendentes pela chave primária, bloqueia quem grava quando a
+ * fila está cheia e, quando o lote falha, grava cada entidade em uma transação própria para que
+ * somente a que falhou receba o erro
+ * @author Rodrigo Marconato
+ */
+public class WriteBehindBufferTest {
+
+    private static final long TIMEOUT = 10;
+
+    public static void main(String[] args) throws Exception {
+        TestDatabase.install(TestDatabase.hibernateProperties("write_behind"));
+        Controller<Item> items = new Controller<Item>();
+
+        //Gravações da mesma chave são unidas, prevalecendo a última
+        WriteBehindBuffer<Item> buffer = new WriteBehindBuffer<Item>(10, 100, 500);
+        Future<Boolean> first = buffer.insertOrUpdate(new Item(1L, "primeiro", 1));
+        Future<Boolean> last = buffer.insertOrUpdate(new Item(1L, "último", 2));
+        Check.that(first == last, "Mesmo future para a mesma chave");
+        Check.equal(1, buffer.size(), "Entidades pendentes após a união");
+        Check.equal(Boolean.TRUE, last.get(TIMEOUT, TimeUnit.SECONDS), "Gravação unida confirmada");
+        Check.equal("último", items.getValueByHQLCondition("select nome from Item where id = 1"), "Última gravação prevalece");
+        buffer.close();
+
+        //Com a fila cheia quem grava aguarda a gravação do lote
+        buffer = new WriteBehindBuffer<Item>(2, 100, 1000);
+        final WriteBehindBuffer<Item> full = buffer;
+        full.insertOrUpdate(new Item(10L, "dez", 10));
+        full.insertOrUpdate(new Item(11L, "onze", 11));
+        FutureTask<Future<Boolean>> writer = new FutureTask<Future<Boolean>>(new Callable<Future<Boolean>>() {
+            public Future<Boolean> call() throws Exception {
+                return full.insertOrUpdate(new Item(12L, "doze", 12));
+            }
+        });
+        new Thread(writer, "write-behind-writer").start();
+        try {
+            writer.get(300, TimeUnit.MILLISECONDS);
+            Check.that(false, "A gravação com a fila cheia deveria aguardar");
+        } catch (TimeoutException e) {
+            //esperado
+        }
+        Check.equal(2, full.size(), "Entidades pendentes com a fila cheia");
+        Future<Boolean> blocked = writer.get(TIMEOUT, TimeUnit.SECONDS);
+        Check.equal(Boolean.TRUE, blocked.get(TIMEOUT, TimeUnit.SECONDS), "Gravação liberada depois do lote");
+        Check.equal(3L, items.getValueByHQLCondition("select count(*) from Item where id between 10 and 12"), "Itens da fila cheia");
+        buffer.close();
+
+        //O lote que falha é gravado entidade por entidade
+        buffer = new WriteBehindBuffer<Item>(10, 3, 200);
+        Future<Boolean> before = buffer.insertOrUpdate(new Item(20L, "vinte", 20));
+        //O nome é obrigatório
+        Future<Boolean> failed = buffer.insertOrUpdate(new Item(21L, null, 21));
+        Future<Boolean> after = buffer.insertOrUpdate(new Item(22L, "vinte e dois", 22));
+        Check.equal(Boolean.TRUE, before.get(TIMEOUT, TimeUnit.SECONDS), "Entidade anterior à que falhou");
+        Check.equal(Boolean.TRUE, after.get(TIMEOUT, TimeUnit.SECONDS), "Entidade posterior à que falhou");
+        try {
+            failed.get(TIMEOUT, TimeUnit.SECONDS);
+            Check.that(false, "A gravação sem nome deveria falhar");
+        } catch (ExecutionException e) {
+            //esperado
+        }
+        Check.equal(2L, items.getValueByHQLCondition("select count(*) from Item where id between 20 and 22"), "Itens do lote que falhou");
+        Check.equal(0L, items.getValueByHQLCondition("select count(*) from Item where id = 21"), "Item que falhou");
+        buffer.close();
+        System.exit(0);
+    }
+}
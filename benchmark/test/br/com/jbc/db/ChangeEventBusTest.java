@@ -0,0 +1,127 @@
+package br.com.jbc.db;
+
+import br.com.jbc.controller.Controller;
+import br.com.jbc.controller.UnitOfWork;
+import br.com.jbc.test.Check;
+import br.com.jbc.test.TestDatabase;
+import br.com.jbc.test.model.Item;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+/**
+ * ChangeEventBus entrega as alterações somente depois do commit, descarta as desfeitas pelo
+ * rollback, não publica UPDATE de entidade sem alteração e avisa o listener atrasado por onOverflow
+ * @author Rodrigo Marconato
+ */
+public class ChangeEventBusTest {
+
+    private static final long TIMEOUT = 10;
+
+    public static void main(String[] args) throws Exception {
+        TestDatabase.install(TestDatabase.hibernateProperties("change_bus"));
+        final Controller<Item> controller = new Controller<Item>();
+        controller.setChangeTracking(true);
+        final BlockingQueue<ChangeEvent> events = new LinkedBlockingQueue<ChangeEvent>();
+        ChangeListener listener = new ChangeListener() {
+            public void onChanges(List<ChangeEvent> changes) {
+                events.addAll(changes);
+            }
+
+            public void onOverflow(long lost) {
+            }
+        };
+        ChangeEventBus.register(listener, 10);
+
+        //Entrega depois do commit
+        Check.that(controller.insert(new Item(1L, "um", 1)), "Inclusão");
+        expect(events, ChangeEvent.INSERT, 1L, "Alteração entregue depois do commit");
+
+        //A gravação desfeita pelo rollback não é entregue
+        try {
+            Controller.inTransaction(new UnitOfWork<Void>() {
+                public Void execute() throws Exception {
+                    controller.insert(new Item(2L, "dois", 2));
+                    throw new IllegalStateException("falha depois da gravação");
+                }
+            });
+            Check.that(false, "A unidade de trabalho deveria falhar");
+        } catch (IllegalStateException e) {
+            //esperado
+        }
+        Check.that(controller.insert(new Item(3L, "tres", 3)), "Inclusão depois do rollback");
+        expect(events, ChangeEvent.INSERT, 3L, "Alteração desfeita descartada");
+
+        //Entidade sem alteração não gera UPDATE, a alterada gera
+        Item filter = new Item();
+        filter.setId(1L);
+        Item item = controller.find(filter);
+        Check.that(controller.update(item), "Atualização sem alteração");
+        item.setNome("um alterado");
+        Check.that(controller.update(item), "Atualização com alteração");
+        expect(events, ChangeEvent.UPDATE, 1L, "UPDATE somente da gravação efetiva");
+        Check.that(events.poll(300, TimeUnit.MILLISECONDS) == null, "Nenhuma alteração além das esperadas");
+        ChangeEventBus.unregister(listener);
+
+        overflow();
+        System.exit(0);
+    }
+
+    /**
+     * Um listener bloqueado enquanto mais de RING_SIZE alterações são publicadas perde as mais
+     * antigas e é avisado, sem bloquear quem publica
+     */
+    private static void overflow() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch overflowed = new CountDownLatch(1);
+        final AtomicLong lost = new AtomicLong();
+        ChangeListener blocked = new ChangeListener() {
+            public void onChanges(List<ChangeEvent> changes) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            public void onOverflow(long count) {
+                lost.addAndGet(count);
+                overflowed.countDown();
+            }
+        };
+        ChangeEventBus.register(blocked, 1);
+
+        SessionFactory factory = TestDatabase.h2("change_bus_overflow", Item.class);
+        Item item = new Item(1L, "um", 1);
+        int published = 2 * ChangeEventBus.RING_SIZE;
+        Session session = factory.openSession();
+        try {
+            for (int i = 0; i < published; i++) {
+                ChangeEventBus.record(session, item, ChangeEvent.UPDATE);
+            }
+            ChangeEventBus.publish(session);
+        } finally {
+            session.close();
+        }
+        Check.that(entered.await(TIMEOUT, TimeUnit.SECONDS), "Listener recebeu o primeiro lote");
+        release.countDown();
+        Check.that(overflowed.await(TIMEOUT, TimeUnit.SECONDS), "onOverflow chamado");
+        Check.that(lost.get() > 0 && lost.get() <= published - ChangeEventBus.RING_SIZE, "Alterações perdidas: " + lost.get());
+        ChangeEventBus.unregister(blocked);
+        factory.close();
+    }
+
+    private static void expect(BlockingQueue<ChangeEvent> events, int operation, Long id, String message) throws InterruptedException {
+        ChangeEvent event = events.poll(TIMEOUT, TimeUnit.SECONDS);
+        Check.that(event != null, message + ": nenhuma alteração entregue");
+        Check.equal(operation, event.getOperation(), message + ": operação");
+        Check.equal(id, event.getId(), message + ": id");
+    }
+}
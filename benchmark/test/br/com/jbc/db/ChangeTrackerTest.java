@@ -0,0 +1,157 @@
+package br.com.jbc.db;
+
+import br.com.jbc.controller.Controller;
+import br.com.jbc.controller.UnitOfWork;
+import br.com.jbc.test.Check;
+import br.com.jbc.test.TestDatabase;
+import br.com.jbc.test.model.Item;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+/**
+ * ChangeTracker grava somente os atributos alterados, sem o UPDATE da linha inteira do flush,
+ * tanto para a entidade ainda gerenciada pela sessão quanto para uma cópia desanexada, e só
+ * considera a gravação feita depois do commit
+ * @author Rodrigo Marconato
+ */
+public class ChangeTrackerTest {
+
+    public static void main(String[] args) throws Exception {
+        SessionFactory factory = TestDatabase.h2("tracker", Item.class);
+        ChangeTracker tracker = new ChangeTracker();
+        execute(factory, "insert into Item (ID, NOME, QUANTIDADE) values (1, 'um', 1)");
+        execute(factory, "insert into Item (ID, NOME, QUANTIDADE) values (2, 'dois', 2)");
+
+        //Entidade gerenciada: lida, alterada e gravada na mesma sessão
+        factory.getStatistics().clear();
+        Session session = factory.openSession();
+        try {
+            session.beginTransaction();
+            Item item = (Item) session.get(Item.class, 1L);
+            tracker.track(session, item);
+            //Outra aplicação altera a quantidade depois da leitura
+            execute(session, "update Item set QUANTIDADE = 100 where ID = 1");
+            item.setNome("um alterado");
+            Check.that(tracker.update(session, item), "Gravação parcial da entidade gerenciada");
+            Check.that(!session.contains(item), "A cópia gerenciada foi removida da sessão");
+            session.getTransaction().commit();
+            ChangeTracker.commit(session);
+        } finally {
+            session.close();
+        }
+        Check.equal(0L, factory.getStatistics().getEntityUpdateCount(), "UPDATEs da linha inteira pelo flush");
+        Check.equal("um alterado", query(factory, "select NOME from Item where ID = 1"), "Nome gravado");
+        Check.equal(100, ((Number) query(factory, "select QUANTIDADE from Item where ID = 1")).intValue(), "Quantidade de outra aplicação preservada");
+
+        //Entidade desanexada: lida em uma sessão e gravada em outra
+        Item detached;
+        session = factory.openSession();
+        try {
+            detached = (Item) session.get(Item.class, 2L);
+            tracker.track(session, detached);
+        } finally {
+            session.close();
+        }
+        detached.setQuantidade(20);
+        session = factory.openSession();
+        try {
+            session.beginTransaction();
+            Check.that(tracker.update(session, detached), "Gravação parcial da entidade desanexada");
+            session.getTransaction().commit();
+            ChangeTracker.commit(session);
+        } finally {
+            session.close();
+        }
+        Check.equal(20, ((Number) query(factory, "select QUANTIDADE from Item where ID = 2")).intValue(), "Quantidade gravada");
+        Check.equal("dois", query(factory, "select NOME from Item where ID = 2"), "Nome inalterado");
+
+        //Sem alterações desde a última gravação nada é executado
+        factory.getStatistics().clear();
+        session = factory.openSession();
+        try {
+            Check.that(tracker.update(session, detached), "Entidade sem alterações");
+        } finally {
+            session.close();
+        }
+        Check.equal(0L, factory.getStatistics().getQueryExecutionCount(), "Consultas da entidade sem alterações");
+
+        //A gravação desfeita pelo rollback é repetida na nova tentativa
+        detached.setQuantidade(30);
+        session = factory.openSession();
+        try {
+            session.beginTransaction();
+            Check.that(tracker.update(session, detached), "Gravação desfeita");
+            session.getTransaction().rollback();
+            ChangeTracker.discard(session);
+        } finally {
+            session.close();
+        }
+        session = factory.openSession();
+        try {
+            session.beginTransaction();
+            Check.that(tracker.update(session, detached), "Nova tentativa após o rollback");
+            session.getTransaction().commit();
+            ChangeTracker.commit(session);
+        } finally {
+            session.close();
+        }
+        Check.equal(30, ((Number) query(factory, "select QUANTIDADE from Item where ID = 2")).intValue(), "Quantidade gravada na nova tentativa");
+        factory.close();
+
+        rollbackInTransaction();
+        System.exit(0);
+    }
+
+    /**
+     * O mesmo caso pelo Controller: a unidade de trabalho desfeita não avança a cópia da entidade
+     */
+    private static void rollbackInTransaction() throws Exception {
+        TestDatabase.install(TestDatabase.hibernateProperties("tracker_controller"));
+        final Controller<Item> controller = new Controller<Item>();
+        controller.setChangeTracking(true);
+        Check.that(controller.insert(new Item(10L, "original", 1)), "Inclusão pelo Controller");
+        Item filter = new Item();
+        filter.setId(10L);
+        final Item item = controller.find(filter);
+
+        item.setNome("alterado");
+        try {
+            Controller.inTransaction(new UnitOfWork<Void>() {
+                public Void execute() throws Exception {
+                    controller.update(item);
+                    throw new IllegalStateException("falha depois da gravação");
+                }
+            });
+            Check.that(false, "A unidade de trabalho deveria falhar");
+        } catch (IllegalStateException e) {
+            //esperado
+        }
+        Check.equal("original", controller.getValueByHQLCondition("select nome from Item where id = 10"), "Nome após o rollback");
+        Check.that(controller.update(item), "Nova tentativa pelo Controller");
+        Check.equal("alterado", controller.getValueByHQLCondition("select nome from Item where id = 10"), "Nome gravado na nova tentativa");
+    }
+
+    private static void execute(SessionFactory factory, String sql) {
+        Session session = factory.openSession();
+        try {
+            session.beginTransaction();
+            execute(session, sql);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    private static void execute(Session session, String sql) {
+        session.createSQLQuery(sql).executeUpdate();
+    }
+
+    private static Object query(SessionFactory factory, String sql) {
+        Session session = factory.openSession();
+        try {
+            return session.createSQLQuery(sql).uniqueResult();
+        } finally {
+            session.close();
+        }
+    }
+}
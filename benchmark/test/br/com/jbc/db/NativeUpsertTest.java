@@ -0,0 +1,76 @@
+package br.com.jbc.db;
+
+import br.com.jbc.test.Check;
+import br.com.jbc.test.TestDatabase;
+import br.com.jbc.test.model.Item;
+import java.util.Arrays;
+import java.util.List;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+
+/**
+ * Upsert nativo no H2 no modo padrão (H2Dialect, MERGE INTO ... KEY) e no modo de compatibilidade
+ * MySQL (MySQL5Dialect, INSERT ... ON DUPLICATE KEY UPDATE)
+ * @author Rodrigo Marconato
+ */
+public class NativeUpsertTest {
+
+    public static void main(String[] args) throws Exception {
+        verify(TestDatabase.h2("upsert_h2", Item.class), "merge into Item (ID, NOME, QUANTIDADE) key (ID)");
+        verify(TestDatabase.open("jdbc:h2:mem:upsert_mysql;MODE=MySQL;DB_CLOSE_DELAY=-1", "org.hibernate.dialect.MySQL5Dialect", Item.class),
+                "on duplicate key update NOME = values(NOME), QUANTIDADE = values(QUANTIDADE)");
+    }
+
+    private static void verify(SessionFactory factory, String statement) throws Exception {
+        SessionFactoryImplementor implementor = (SessionFactoryImplementor) factory;
+        String sql = NativeUpsert.getStatement(implementor.getDialect(), (AbstractEntityPersister) implementor.getEntityPersister(Item.class.getName()));
+        Check.that(sql.contains(statement), "Comando de " + implementor.getDialect() + ": " + sql);
+
+        //Inclusão de entidades novas, que não pertencem à sessão
+        write(factory, Arrays.asList(new Item(1L, "um", 1), new Item(2L, "dois", 2)));
+        Check.equal("um", nome(factory, 1L), "Item 1 incluído");
+        Check.equal("dois", nome(factory, 2L), "Item 2 incluído");
+
+        //Alteração de uma cópia desanexada enquanto a sessão possui a cópia gerenciada alterada
+        factory.getStatistics().clear();
+        Session session = factory.openSession();
+        try {
+            session.beginTransaction();
+            Item managed = (Item) session.get(Item.class, 1L);
+            managed.setNome("gerenciado");
+            List<Object> unsupported = NativeUpsert.upsert(session, Arrays.asList(new Item(1L, "desanexado", 10), new Item(null, "sem chave", 0)));
+            Check.equal(1, unsupported.size(), "Entidades sem chave devolvidas para o merge");
+            Check.that(!session.contains(managed), "A cópia gerenciada foi removida da sessão");
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+        Check.equal(0L, factory.getStatistics().getEntityUpdateCount(), "UPDATEs do flush antes do upsert");
+        Check.equal("desanexado", nome(factory, 1L), "Item 1 gravado pelo upsert");
+        Check.equal("dois", nome(factory, 2L), "Item 2 inalterado");
+
+        factory.close();
+    }
+
+    private static void write(SessionFactory factory, List<?> items) throws Exception {
+        Session session = factory.openSession();
+        try {
+            session.beginTransaction();
+            Check.equal(0, NativeUpsert.upsert(session, items).size(), "Entidades devolvidas para o merge");
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    private static String nome(SessionFactory factory, Long id) {
+        Session session = factory.openSession();
+        try {
+            return (String) session.createSQLQuery("select NOME from Item where ID = :id").setParameter("id", id).uniqueResult();
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package br.com.jbc.db;
+
+import br.com.jbc.test.Check;
+import br.com.jbc.test.CountingConnectionProvider;
+import br.com.jbc.test.TestDatabase;
+import br.com.jbc.test.model.Registro;
+import java.util.HashSet;
+import java.util.Set;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.service.ServiceRegistryBuilder;
+
+/**
+ * Chaves do PooledIdGenerator reservadas em blocos e inclusões agrupadas em batches JDBC de
+ * hibernate.jdbc.batch_size
+ * @author Rodrigo Marconato
+ */
+public class PooledIdGeneratorTest {
+
+    private static final int ROWS = 250;
+    private static final int BATCH_SIZE = 50;
+
+    public static void main(String[] args) throws Exception {
+        Configuration configuration = TestDatabase.configuration("jdbc:h2:mem:pooled;DB_CLOSE_DELAY=-1", "org.hibernate.dialect.H2Dialect", Registro.class)
+                .setProperty("hibernate.connection.provider_class", CountingConnectionProvider.class.getName())
+                .setProperty("hibernate.jdbc.batch_size", String.valueOf(BATCH_SIZE));
+        SessionFactory factory = configuration.buildSessionFactory(new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry());
+
+        CountingConnectionProvider.reset();
+        Set<Long> ids = new HashSet<Long>();
+        Session session = factory.openSession();
+        try {
+            session.beginTransaction();
+            for (int i = 0; i < ROWS; i++) {
+                Registro registro = new Registro("Registro " + i);
+                session.persist(registro);
+                //A chave é conhecida antes do INSERT, que fica para o flush
+                Check.that(registro.getId() != null, "Chave atribuída no persist");
+                ids.add(registro.getId());
+            }
+            Check.equal(0, CountingConnectionProvider.getBatchedInserts() + CountingConnectionProvider.getSingleInserts(), "INSERTs antes do flush");
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+
+        Check.equal(ROWS, ids.size(), "Chaves distintas");
+        Check.equal(0, CountingConnectionProvider.getSingleInserts(), "INSERTs individuais");
+        Check.equal(ROWS, CountingConnectionProvider.getBatchedInserts(), "INSERTs em batch");
+        Check.equal(ROWS / BATCH_SIZE, CountingConnectionProvider.getInsertBatches(), "Batches executados");
+
+        session = factory.openSession();
+        try {
+            Check.equal(ROWS, ((Number) session.createQuery("select count(*) from Registro").uniqueResult()).intValue(), "Registros gravados");
+            //Três blocos de 100 chaves atendem os 250 registros
+            Number hi = (Number) session.createSQLQuery("call next value for registro_hi_seq").uniqueResult();
+            Check.equal(4L, hi.longValue(), "Próximo valor da sequence após três blocos");
+        } finally {
+            session.close();
+        }
+        factory.close();
+    }
+}
@@ -0,0 +1,61 @@
+package br.com.jbc.test;
+
+/**
+ * Verificações dos testes do framework. Cada falha lança AssertionError com a mensagem informada,
+ * que o TestRunner registra como falha do teste
+ * @author Rodrigo Marconato
+ */
+public final class Check {
+
+    private Check() {
+    }
+
+    /**
+     * Verifica se a condição é verdadeira
+     * @param condition Condição verificada
+     * @param message Descrição da falha
+     */
+    public static void that(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * Verifica se os valores são iguais
+     * @param expected Valor esperado
+     * @param actual Valor obtido
+     * @param message Descrição do valor verificado
+     */
+    public static void equal(Object expected, Object actual, String message) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError(message + ": esperado <" + expected + ">, obtido <" + actual + ">");
+        }
+    }
+
+    /**
+     * Verifica se a execução lança a exceção informada
+     * @param type Classe da exceção esperada
+     * @param block Trecho executado
+     * @return Exceção lançada
+     */
+    public static <E extends Throwable> E fails(Class<E> type, Block block) {
+        try {
+            block.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e)) {
+                return type.cast(e);
+            }
+            throw new AssertionError("Esperado " + type.getName() + ", lançado " + e);
+        }
+        throw new AssertionError("Esperado " + type.getName() + ", nada foi lançado");
+    }
+
+    /**
+     * Trecho de teste que pode lançar qualquer exceção
+     */
+    public interface Block {
+
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,148 @@
+package br.com.jbc.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hibernate.cfg.Environment;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.spi.Configurable;
+
+/**
+ * ConnectionProvider que conta os comandos INSERT enviados ao banco, separando os batches JDBC
+ * das execuções individuais, e as conexões abertas de cada banco. Configure com
+ * hibernate.connection.provider_class
+ * @author Rodrigo Marconato
+ */
+public class CountingConnectionProvider implements ConnectionProvider, Configurable {
+
+    private static final AtomicInteger insertBatches = new AtomicInteger();
+    private static final AtomicInteger batchedInserts = new AtomicInteger();
+    private static final AtomicInteger singleInserts = new AtomicInteger();
+    private static final ConcurrentMap<String, AtomicInteger> openConnections = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private String url;
+    private String user;
+    private String password;
+
+    public void configure(Map settings) {
+        this.url = (String) settings.get(Environment.URL);
+        this.user = (String) settings.get(Environment.USER);
+        this.password = (String) settings.get(Environment.PASS);
+    }
+
+    /**
+     * Zera os contadores
+     */
+    public static void reset() {
+        insertBatches.set(0);
+        batchedInserts.set(0);
+        singleInserts.set(0);
+    }
+
+    /**
+     * @return Quantidade de executeBatch de comandos INSERT
+     */
+    public static int getInsertBatches() {
+        return insertBatches.get();
+    }
+
+    /**
+     * @return Quantidade de INSERTs enviados dentro de batches
+     */
+    public static int getBatchedInserts() {
+        return batchedInserts.get();
+    }
+
+    /**
+     * @return Quantidade de INSERTs executados individualmente
+     */
+    public static int getSingleInserts() {
+        return singleInserts.get();
+    }
+
+    /**
+     * @param url URL JDBC do banco
+     * @return Quantidade de conexões do banco obtidas e ainda não devolvidas
+     */
+    public static int getOpenConnections(String url) {
+        return opened(url).get();
+    }
+
+    private static AtomicInteger opened(String url) {
+        AtomicInteger count = openConnections.get(url);
+        if (count == null) {
+            openConnections.putIfAbsent(url, new AtomicInteger());
+            count = openConnections.get(url);
+        }
+        return count;
+    }
+
+    public Connection getConnection() throws SQLException {
+        final Connection connection = DriverManager.getConnection(this.url, this.user, this.password == null ? "" : this.password);
+        opened(this.url).incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {Connection.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                Object result = call(connection, method, args);
+                if (result instanceof PreparedStatement && args[0] instanceof String
+                        && ((String) args[0]).trim().toLowerCase().startsWith("insert")) {
+                    return count((PreparedStatement) result);
+                }
+                return result;
+            }
+        });
+    }
+
+    private static PreparedStatement count(final PreparedStatement statement) {
+        return (PreparedStatement) Proxy.newProxyInstance(CountingConnectionProvider.class.getClassLoader(), new Class[] {PreparedStatement.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("addBatch") && (args == null || args.length == 0)) {
+                    batchedInserts.incrementAndGet();
+                } else if (name.equals("executeBatch")) {
+                    insertBatches.incrementAndGet();
+                } else if (name.equals("executeUpdate") || name.equals("execute")) {
+                    singleInserts.incrementAndGet();
+                }
+                return call(statement, method, args);
+            }
+        });
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    public void closeConnection(Connection connection) throws SQLException {
+        opened(this.url).decrementAndGet();
+        connection.close();
+    }
+
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType) || CountingConnectionProvider.class.isAssignableFrom(unwrapType);
+    }
+
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (this.isUnwrappableAs(unwrapType)) {
+            return (T) this;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+}
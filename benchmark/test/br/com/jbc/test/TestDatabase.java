@@ -0,0 +1,107 @@
+package br.com.jbc.test;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.service.ServiceRegistryBuilder;
+
+/**
+ * Bancos H2 em memória usados pelos testes, cada um com a sua SessionFactory e o esquema criado
+ * a partir das entidades informadas
+ * @author Rodrigo Marconato
+ */
+public final class TestDatabase {
+
+    private TestDatabase() {
+    }
+
+    /**
+     * Propriedades de um banco H2 em memória, completas, pois o hibernate.properties substitui as
+     * propriedades do hibernate.cfg.xml
+     * @param name Nome do banco principal
+     * @return Properties
+     */
+    public static Properties hibernateProperties(String name) {
+        Properties properties = new Properties();
+        properties.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        properties.setProperty("hibernate.connection.url", url(name));
+        properties.setProperty("hibernate.connection.username", "sa");
+        properties.setProperty("hibernate.connection.password", "");
+        properties.setProperty("hibernate.connection.pool_size", "4");
+        properties.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.setProperty("hibernate.hbm2ddl.auto", "create");
+        return properties;
+    }
+
+    /**
+     * URL JDBC de um banco H2 em memória mantido até o fim da JVM
+     * @param name Nome do banco
+     * @return URL
+     */
+    public static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+    }
+
+    /**
+     * Grava o hibernate.properties na pasta de trabalho do teste, lido pelo HibernateUtil na
+     * primeira chamada de getInstance
+     * @param properties Propriedades
+     * @throws IOException
+     */
+    public static void install(Properties properties) throws IOException {
+        OutputStream out = new FileOutputStream("hibernate.properties");
+        try {
+            properties.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Cria a SessionFactory de um banco H2 em memória no modo padrão
+     * @param name Nome do banco, distinto para cada banco do teste
+     * @param entities Entidades mapeadas
+     * @return SessionFactory
+     */
+    public static SessionFactory h2(String name, Class... entities) {
+        return open(url(name), "org.hibernate.dialect.H2Dialect", entities);
+    }
+
+    /**
+     * Cria a SessionFactory de um banco
+     * @param url URL JDBC, por exemplo um H2 com MODE=MySQL
+     * @param dialect Dialeto hibernate
+     * @param entities Entidades mapeadas
+     * @return SessionFactory
+     */
+    public static SessionFactory open(String url, String dialect, Class... entities) {
+        Configuration configuration = configuration(url, dialect, entities);
+        return configuration.buildSessionFactory(new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry());
+    }
+
+    /**
+     * Configuração hibernate do banco, para testes que precisam de propriedades adicionais
+     * @param url URL JDBC
+     * @param dialect Dialeto hibernate
+     * @param entities Entidades mapeadas
+     * @return Configuration
+     */
+    public static Configuration configuration(String url, String dialect, Class... entities) {
+        Configuration configuration = new Configuration()
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", url)
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.connection.password", "")
+                .setProperty("hibernate.connection.pool_size", "4")
+                .setProperty("hibernate.dialect", dialect)
+                .setProperty("hibernate.hbm2ddl.auto", "create")
+                .setProperty("hibernate.generate_statistics", "true");
+        for (Class entity : entities) {
+            configuration.addAnnotatedClass(entity);
+        }
+        return configuration;
+    }
+}
@@ -0,0 +1,102 @@
+package br.com.jbc.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Executa as classes de teste (nome terminado em Test, com método main) encontradas na pasta
+ * informada. Cada teste roda em uma JVM própria, pois os testes configuram o HibernateUtil e
+ * outros estados estáticos do framework, com uma pasta de trabalho vazia em test-work, onde o
+ * teste pode gravar o seu hibernate.properties. Termina com código 1 quando algum teste falhar.
+ *
+ * Exemplo:
+ *
+ * java -cp build/test:lib/* br.com.jbc.test.TestRunner build/test NativeUpsert
+ * @author Rodrigo Marconato
+ */
+public class TestRunner {
+
+    public static void main(String[] args) throws Exception {
+        File root = new File(args[0]);
+        String filter = args.length > 1 ? args[1] : "";
+        List<String> tests = new ArrayList<String>();
+        find(root, "", tests);
+        Collections.sort(tests);
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> failed = new ArrayList<String>();
+        int executed = 0;
+        for (String test : tests) {
+            if (!test.contains(filter)) {
+                continue;
+            }
+            executed++;
+            List<String> command = new ArrayList<String>();
+            command.add(java);
+            String options = System.getProperty("test.jvmargs", "");
+            for (String option : options.trim().split("\\s+")) {
+                if (option.length() > 0) {
+                    command.add(option);
+                }
+            }
+            command.add("-cp");
+            command.add(classPath());
+            command.add(test);
+            File work = new File(root.getParentFile(), "test-work" + File.separator + test);
+            delete(work);
+            work.mkdirs();
+            Process process = new ProcessBuilder(command).directory(work).inheritIO().start();
+            int status = process.waitFor();
+            System.out.println((status == 0 ? "OK     " : "FALHA  ") + test);
+            if (status != 0) {
+                failed.add(test);
+            }
+        }
+        System.out.println(executed + " testes, " + failed.size() + " falhas");
+        if (!failed.isEmpty() || executed == 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Classpath desta JVM com caminhos absolutos, pois os testes rodam em outra pasta
+     */
+    private static String classPath() {
+        StringBuilder path = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (path.length() > 0) {
+                path.append(File.pathSeparator);
+            }
+            path.append(entry.endsWith("*") ? new File(entry.substring(0, entry.length() - 1)).getAbsolutePath() + File.separator + "*"
+                    : new File(entry).getAbsolutePath());
+        }
+        return path.toString();
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void find(File directory, String pkg, List<String> tests) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                find(file, pkg + name + ".", tests);
+            } else if (name.endsWith("Test.class") && name.indexOf('$') < 0) {
+                tests.add(pkg + name.substring(0, name.length() - ".class".length()));
+            }
+        }
+    }
+}
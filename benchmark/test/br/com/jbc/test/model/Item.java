@@ -0,0 +1,57 @@
+package br.com.jbc.test.model;
+
+import java.io.Serializable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Entidade com chave primária atribuída pela aplicação, usada nos testes de gravação
+ * @author Rodrigo Marconato
+ */
+@Entity
+public class Item implements Serializable {
+
+    @Id
+    @Column(name="ID")
+    private Long id;
+
+    @Column(name="NOME", length=50, nullable=false)
+    private String nome;
+
+    @Column(name="QUANTIDADE")
+    private int quantidade;
+
+    public Item() {
+    }
+
+    public Item(Long id, String nome, int quantidade) {
+        this.id = id;
+        this.nome = nome;
+        this.quantidade = quantidade;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public void setNome(String nome) {
+        this.nome = nome;
+    }
+
+    public int getQuantidade() {
+        return quantidade;
+    }
+
+    public void setQuantidade(int quantidade) {
+        this.quantidade = quantidade;
+    }
+}
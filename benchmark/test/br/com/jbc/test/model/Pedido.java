@@ -0,0 +1,59 @@
+package br.com.jbc.test.model;
+
+import br.com.jbc.db.ShardKey;
+import java.io.Serializable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Entidade distribuída entre shards pelo cliente, usada nos testes de ShardedController
+ * @author Rodrigo Marconato
+ */
+@Entity
+public class Pedido implements Serializable {
+
+    @Id
+    @Column(name="ID")
+    private Long id;
+
+    @ShardKey
+    @Column(name="CLIENTE", nullable=false)
+    private Long cliente;
+
+    @Column(name="DESCRICAO", length=50)
+    private String descricao;
+
+    public Pedido() {
+    }
+
+    public Pedido(Long id, Long cliente, String descricao) {
+        this.id = id;
+        this.cliente = cliente;
+        this.descricao = descricao;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getCliente() {
+        return cliente;
+    }
+
+    public void setCliente(Long cliente) {
+        this.cliente = cliente;
+    }
+
+    public String getDescricao() {
+        return descricao;
+    }
+
+    public void setDescricao(String descricao) {
+        this.descricao = descricao;
+    }
+}
@@ -0,0 +1,51 @@
+package br.com.jbc.test.model;
+
+import java.io.Serializable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+/**
+ * Entidade com a chave gerada pelo PooledIdGenerator em blocos de 100
+ * @author Rodrigo Marconato
+ */
+@Entity
+public class Registro implements Serializable {
+
+    @Id
+    @GeneratedValue(generator = "registroId")
+    @GenericGenerator(name = "registroId", strategy = "br.com.jbc.db.PooledIdGenerator", parameters = {
+        @Parameter(name = "sequence_name", value = "registro_hi_seq"),
+        @Parameter(name = "block_size", value = "100")})
+    @Column(name="ID")
+    private Long id;
+
+    @Column(name="DESCRICAO", length=50, nullable=false)
+    private String descricao;
+
+    public Registro() {
+    }
+
+    public Registro(String descricao) {
+        this.descricao = descricao;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getDescricao() {
+        return descricao;
+    }
+
+    public void setDescricao(String descricao) {
+        this.descricao = descricao;
+    }
+}
@@ -32,4 +32,16 @@ public class PessoaController implements Serializable {
             throw e;
         }
     }
-}
\ No newline at end of file
+
+    public Pessoa find(String nome) {
+        return this.facade.find(nome);
+    }
+
+    public List<Pessoa> findPaginate(int firstResult, int maxResult) {
+        return this.facade.findPaginate(firstResult, maxResult);
+    }
+
+    public int getCountRecords() {
+        return this.facade.getCountRecords();
+    }
+}
@@ -1,7 +1,11 @@
 package modelotradicional;
 
+import java.util.List;
 import org.hibernate.Session;
 import java.io.Serializable;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
 
 public class PessoaDao implements Serializable {
 
@@ -19,4 +23,26 @@ public class PessoaDao implements Serializable {
 
         return true;
     }
+
+    public Pessoa find(String nome) {
+        return (Pessoa) this.session.createCriteria(Pessoa.class)
+                .add(Restrictions.eq("nome", nome))
+                .uniqueResult();
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Pessoa> findPaginate(int firstResult, int maxResult) {
+        return this.session.createCriteria(Pessoa.class)
+                .setFirstResult(firstResult)
+                .setMaxResults(maxResult)
+                .addOrder(Order.asc("id"))
+                .list();
+    }
+
+    public int getCountRecords() {
+        Number count = (Number) this.session.createCriteria(Pessoa.class)
+                .setProjection(Projections.rowCount())
+                .uniqueResult();
+        return count == null ? 0 : count.intValue();
+    }
 }
@@ -1,5 +1,7 @@
 package modelotradicional;
 
+import java.util.List;
+
 import java.io.Serializable;
 
 public class PessoaFacade implements Serializable {
@@ -19,4 +21,18 @@ public class PessoaFacade implements Serializable {
             return false;
         }
     }
+
+    public Pessoa find(String nome) {
+        factory.getSession().clear();
+        return dao.find(nome);
+    }
+
+    public List<Pessoa> findPaginate(int firstResult, int maxResult) {
+        factory.getSession().clear();
+        return dao.findPaginate(firstResult, maxResult);
+    }
+
+    public int getCountRecords() {
+        return dao.getCountRecords();
+    }
 }
@@ -3,9 +3,14 @@ package br.com.jbc.controller;
 import java.util.List;
 
 import br.com.jbc.util.SearchPaginate;
+import br.com.jbc.db.FetchPlan;
 import br.com.jbc.db.Transaction;
 import br.com.jbc.util.JBCException;
+import br.com.jbc.util.LongIdSet;
+import br.com.jbc.util.RowEncoder;
 import java.io.Serializable;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Future;
 
 /**
  * Classe de controle de operacoes CRUD com controle de transacao
@@ -39,11 +44,284 @@ public class Controller<T> implements Serializable {
     public static boolean ORDER_DESC = Boolean.TRUE;
 
     private Facade<T> facade;
+    
+    /**
+     * Indica se as consultas deste controller são executadas em modo somente leitura
+     */
+    private boolean readOnly;
+    
+    /**
+     * Plano de carga padrão das associações em findList e findPaginate
+     */
+    private FetchPlan fetchPlan;
+    
+    /**
+     * Indica se findPaginate consulta o total de registros em paralelo com a página
+     */
+    private boolean parallelPaginate;
+    
+    /**
+     * Indica se as partes de uma lista de parametros grande são consultadas em paralelo
+     */
+    private boolean parallelInList;
+    
+    /**
+     * Indica se insertOrUpdate grava com o upsert nativo do banco de dados
+     */
+    private boolean nativeUpsert;
+    
+    /**
+     * Indica se insert inclui as entidades com persist
+     */
+    private boolean fastInsert;
+    
+    /**
+     * Indica se update grava somente os atributos alterados desde a leitura
+     */
+    private boolean changeTracking;
+    
+    /**
+     * Fila de gravação posterior usada por insertOrUpdateAsync
+     */
+    private transient WriteBehindBuffer<T> writeBehind;
+    
+    /**
+     * Executor de commit em grupo usado pelas gravações de um registro, ou null para commit próprio
+     */
+    private transient GroupCommitExecutor groupCommit;
 
     public Controller() {
         this.facade = new Facade<T>();
     }
 
+    /**
+     * Cria o controller informando o modo padrão das consultas
+     * @param readOnly true para que as consultas sejam executadas em modo somente leitura
+     */
+    public Controller(boolean readOnly) {
+        this();
+        this.setReadOnly(readOnly);
+    }
+
+    /**
+     * Verifica se as consultas são executadas em modo somente leitura
+     * @return true para consultas somente leitura
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Define se as consultas (find, findList, findById, findPaginate, getListByHQLCondition, etc)
+     * são executadas em modo somente leitura. Nesse modo as entidades carregadas não guardam o
+     * estado original para dirty checking, a sessão não executa flush antes da consulta e, fora
+     * de uma transação, a consulta roda em uma transação JDBC read-only.
+     * @param readOnly true para consultas somente leitura
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+        this.facade.setReadOnly(readOnly);
+    }
+
+    /**
+     * Retorna o plano de carga padrão das associações
+     * @return FetchPlan
+     */
+    public FetchPlan getFetchPlan() {
+        return fetchPlan;
+    }
+
+    /**
+     * Define o plano de carga padrão das associações usado por findList e findPaginate,
+     * por exemplo new FetchPlan().join("cliente").batch("itens", 50)
+     * @param fetchPlan Plano de carga, ou null para manter o mapeamento da entidade
+     */
+    public void setFetchPlan(FetchPlan fetchPlan) {
+        this.fetchPlan = fetchPlan;
+        this.facade.setFetchPlan(fetchPlan);
+    }
+
+    /**
+     * Verifica se findPaginate consulta o total de registros em paralelo com a página
+     * @return true para consultas em paralelo
+     */
+    public boolean isParallelPaginate() {
+        return parallelPaginate;
+    }
+
+    /**
+     * Define se findPaginate consulta o total de registros em uma segunda sessão, em paralelo
+     * com a consulta da página, assim o tempo de resposta passa a ser o da consulta mais lenta
+     * e não a soma das duas. Dentro de uma transação as consultas continuam em sequência. O pool
+     * de conexões precisa de uma conexão livre a mais para cada consulta em andamento.
+     * @param parallelPaginate true para consultas em paralelo
+     */
+    public void setParallelPaginate(boolean parallelPaginate) {
+        this.parallelPaginate = parallelPaginate;
+        this.facade.setParallelPaginate(parallelPaginate);
+    }
+
+    /**
+     * Verifica se as partes de uma lista de parametros grande são consultadas em paralelo
+     * @return true para consultas em paralelo
+     */
+    public boolean isParallelInList() {
+        return parallelInList;
+    }
+
+    /**
+     * Define se getIdsByHQLCondition e getIdsBySQLCondition consultam em paralelo as partes de uma
+     * lista de parametros maior que o limite do IN do dialeto, como os 1000 do Oracle, cada parte em
+     * uma sessão somente leitura. getListByHQLCondition consulta sempre em sequência, para que as
+     * entidades retornadas estejam na sessão. Dentro de uma transação as partes continuam em
+     * sequência. O pool de conexões precisa de uma conexão livre para cada parte em andamento.
+     * @param parallelInList true para consultas em paralelo
+     */
+    public void setParallelInList(boolean parallelInList) {
+        this.parallelInList = parallelInList;
+        this.facade.setParallelInList(parallelInList);
+    }
+
+    /**
+     * Indica se insertOrUpdate grava com o upsert nativo do banco de dados
+     * @return true se o upsert nativo estiver ativo
+     */
+    public boolean isNativeUpsert() {
+        return this.nativeUpsert;
+    }
+
+    /**
+     * Define se insertOrUpdate grava com o upsert nativo do banco de dados (MERGE, ON CONFLICT
+     * ou ON DUPLICATE KEY UPDATE de acordo com o dialeto) em vez de merge, evitando o SELECT
+     * antes de cada gravação. Listas são gravadas em um único batch JDBC
+     * @param nativeUpsert true para gravar com upsert
+     */
+    public void setNativeUpsert(boolean nativeUpsert) {
+        this.nativeUpsert = nativeUpsert;
+        this.facade.setNativeUpsert(nativeUpsert);
+    }
+
+    /**
+     * Indica se insert inclui as entidades com persist
+     * @return true se a inclusão rápida estiver ativa
+     */
+    public boolean isFastInsert() {
+        return this.fastInsert;
+    }
+
+    /**
+     * Define se insert inclui as entidades com persist em vez de merge, sem o SELECT antes da
+     * inclusão e sem flush e evict a cada registro; o flush é feito no commit. A chave gerada
+     * fica no próprio objeto informado. Deve ser usado somente com entidades novas, pois persist
+     * não aceita objetos com chave primária de registros existentes
+     * @param fastInsert true para a inclusão rápida
+     */
+    public void setFastInsert(boolean fastInsert) {
+        this.fastInsert = fastInsert;
+        this.facade.setFastInsert(fastInsert);
+    }
+
+    /**
+     * Indica se update grava somente os atributos alterados desde a leitura
+     * @return true se o controle de alterações estiver ativo
+     */
+    public boolean isChangeTracking() {
+        return this.changeTracking;
+    }
+
+    /**
+     * Define se as entidades lidas por este controller são acompanhadas para que update grave
+     * somente os atributos alterados, sem o SELECT do merge, e não grave entidades sem alteração.
+     * Entidades que não foram lidas por este controller, versionadas ou com componentes e coleções
+     * alterados continuam sendo gravadas com merge. Não tem efeito nas consultas somente leitura
+     * @param changeTracking true para acompanhar as alterações
+     */
+    public void setChangeTracking(boolean changeTracking) {
+        this.changeTracking = changeTracking;
+        this.facade.setChangeTracking(changeTracking);
+    }
+
+    /**
+     * Executa as consultas de qualquer controller feitas na thread atual dentro da unidade de trabalho
+     * com o modo somente leitura informado, em vez do modo definido em cada controller, e restaura o
+     * modo anterior no final. Pode ser aninhado. Exemplo:
+     * 
+     * List<Pessoa> pessoas = Controller.withReadOnly(true, new UnitOfWork<List<Pessoa>>() {
+     *     public List<Pessoa> execute() throws Exception {
+     *         return controller.findList(filtro);
+     *     }
+     * });
+     * 
+     * @param readOnly true para consultas somente leitura, false para consultas com dirty checking
+     * @param work Operações executadas com o modo informado
+     * @return Resultado da unidade de trabalho
+     * @throws Exception Exceção lançada pela unidade de trabalho
+     */
+    public static <R> R withReadOnly(boolean readOnly, UnitOfWork<R> work) throws Exception {
+        Boolean previous = Facade.getReadOnlyScope();
+        Facade.setReadOnlyScope(readOnly);
+        try {
+            return work.execute();
+        } finally {
+            Facade.setReadOnlyScope(previous);
+        }
+    }
+
+    /**
+     * Executa as operações de vários controllers, de qualquer entidade, em uma única transação
+     * com um único commit no final. Se a unidade de trabalho lançar uma exceção ou alguma
+     * operação pedir rollback a transação é desfeita. Unidades de trabalho executadas dentro
+     * de outra participam da transação da unidade mais externa
+     * @param work Unidade de trabalho
+     * @return Resultado da unidade de trabalho
+     * @throws Exception Exceção lançada pela unidade de trabalho, ou JBCException quando uma operação pediu rollback
+     */
+    public static <R> R inTransaction(UnitOfWork<R> work) throws Exception {
+        Transaction transaction = Transaction.getInstance();
+        transaction.beginUnitOfWork();
+        R result;
+        boolean executed = false;
+        try {
+            result = work.execute();
+            executed = true;
+        } finally {
+            if (!executed) {
+                transaction.rollbackUnitOfWork();
+            }
+        }
+        if (!transaction.endUnitOfWork()) {
+            throw new JBCException(JBCException.TRANSACAO_DESFEITA);
+        }
+        return result;
+    }
+
+    /**
+     * Retorna o executor de commit em grupo
+     * @return GroupCommitExecutor ou null quando desativado
+     */
+    public GroupCommitExecutor getGroupCommit() {
+        return this.groupCommit;
+    }
+
+    /**
+     * Define o executor de commit em grupo usado por insert, insertOrUpdate, update e delete de
+     * um registro. As gravações feitas ao mesmo tempo por várias threads são confirmadas com um
+     * único commit e cada chamador continua recebendo o seu resultado ou a sua exceção. Dentro de
+     * inTransaction as gravações continuam participando da unidade de trabalho
+     * @param groupCommit Executor, que pode ser compartilhado por vários controllers, ou null para desativar
+     */
+    public void setGroupCommit(GroupCommitExecutor groupCommit) {
+        this.groupCommit = groupCommit;
+    }
+
+    /**
+     * Verifica se a gravação de um registro deve ser feita pelo executor de commit em grupo
+     * @return true se houver um executor e nenhuma unidade de trabalho aberta
+     */
+    private boolean useGroupCommit() {
+        return this.groupCommit != null && !Transaction.getInstance().inUnitOfWork();
+    }
+
     /**
      * Retorna o facade
      * @return Facade<T>
@@ -60,6 +338,9 @@ public class Controller<T> implements Serializable {
      */
     public Boolean insert(T obj) throws Exception {
 
+        if (this.useGroupCommit()) {
+            return GroupCommitExecutor.await(this.groupCommit.insert(obj));
+        }
         try {
             Transaction.getInstance().beginTransaction();
             if (this.facade.insert(obj)) {
@@ -89,10 +370,16 @@ public class Controller<T> implements Serializable {
         try {
             Transaction.getInstance().beginTransaction();
             
-            for (Object obj : objList) {
-                if (!this.facade.insert((T)obj)){
+            if (this.fastInsert) {
+                if (!this.facade.insert(objList)){
                     throw new JBCException(JBCException.TRANSACAO_DESFEITA);
                 }
+            } else {
+                for (Object obj : objList) {
+                    if (!this.facade.insert((T)obj)){
+                        throw new JBCException(JBCException.TRANSACAO_DESFEITA);
+                    }
+                }
             }
             Transaction.getInstance().commit();
             return true;
@@ -109,6 +396,9 @@ public class Controller<T> implements Serializable {
      * @throws Exception
      */
     public Boolean insertOrUpdate(T obj) throws Exception {
+        if (this.useGroupCommit()) {
+            return GroupCommitExecutor.await(this.groupCommit.insertOrUpdate(obj));
+        }
         try {
             Transaction.getInstance().beginTransaction();
             if (this.facade.insertOrUpdate(obj)) {
@@ -138,10 +428,16 @@ public class Controller<T> implements Serializable {
         try {
             Transaction.getInstance().beginTransaction();
             
-            for (Object obj : objList) {
-                if (!this.facade.insertOrUpdate((T)obj)){
+            if (this.nativeUpsert) {
+                if (!this.facade.insertOrUpdate(objList)){
                     throw new JBCException(JBCException.TRANSACAO_DESFEITA);
                 }
+            } else {
+                for (Object obj : objList) {
+                    if (!this.facade.insertOrUpdate((T)obj)){
+                        throw new JBCException(JBCException.TRANSACAO_DESFEITA);
+                    }
+                }
             }
             Transaction.getInstance().commit();
             return true;
@@ -151,6 +447,47 @@ public class Controller<T> implements Serializable {
         }
     }
 
+    /**
+     * Habilita a gravação posterior (write-behind) usada por insertOrUpdateAsync
+     * @param capacity Quantidade máxima de entidades pendentes antes de bloquear quem grava
+     * @param batchSize Quantidade máxima de entidades gravadas por transação
+     * @param flushIntervalMillis Tempo máximo que uma gravação espera na fila
+     * @throws Exception
+     */
+    public synchronized void enableWriteBehind(int capacity, int batchSize, long flushIntervalMillis) throws Exception {
+        this.disableWriteBehind();
+        this.writeBehind = new WriteBehindBuffer<T>(capacity, batchSize, flushIntervalMillis);
+    }
+
+    /**
+     * Grava as entidades pendentes e desabilita a gravação posterior
+     * @throws Exception
+     */
+    public synchronized void disableWriteBehind() throws Exception {
+        if (this.writeBehind != null) {
+            this.writeBehind.close();
+            this.writeBehind = null;
+        }
+    }
+
+    /**
+     * Agenda a inclusão ou atualização do registro na fila de gravação posterior. As gravações
+     * pendentes da mesma entidade são unidas, prevalecendo a última
+     * @param obj Objeto VO de persistência
+     * @return Future concluído com true quando a gravação for confirmada, ou com o erro da gravação
+     * @throws Exception Quando a gravação posterior não estiver habilitada
+     */
+    public Future<Boolean> insertOrUpdateAsync(T obj) throws Exception {
+        WriteBehindBuffer<T> buffer;
+        synchronized (this) {
+            buffer = this.writeBehind;
+        }
+        if (buffer == null) {
+            throw new JBCException(JBCException.GRAVACAO_POSTERIOR_DESABILITADA);
+        }
+        return buffer.insertOrUpdate(obj);
+    }
+
     /**
      * Insere um registro em uma determinada tabela e retorna a entidade persistida
      * @param obj Objeto VO de persistência
@@ -175,6 +512,33 @@ public class Controller<T> implements Serializable {
         }
     }
 
+    /**
+     * Insere uma lista de registros novos com persist em uma única transação e retorna as
+     * entidades persistidas com as chaves geradas
+     * @param objList Lista de Objetos VO de persistência
+     * @return Lista dos Objetos Persistidos
+     * @throws Exception
+     */
+    public List<T> insertReturnId(List<T> objList) throws Exception {
+
+        if (objList == null)
+            return null;
+
+        try {
+            Transaction.getInstance().beginTransaction();
+            if (this.facade.insert(objList)) {
+                Transaction.getInstance().commit();
+                return objList;
+            } else {
+                Transaction.getInstance().rollback();
+                return null;
+            }
+        } catch (Exception e) {
+            Transaction.getInstance().rollback();
+            throw e;
+        }
+    }
+
     /**
      * Atualiza um registro em uma determinada tabela
      * @param obj Objeto VO de persistência
@@ -182,6 +546,9 @@ public class Controller<T> implements Serializable {
      * @throws Exception
      */
     public Boolean update(T obj) throws Exception {
+        if (this.useGroupCommit()) {
+            return GroupCommitExecutor.await(this.groupCommit.update(obj));
+        }
         try {
             Transaction.getInstance().beginTransaction();
             if (this.facade.update(obj)) {
@@ -231,6 +598,9 @@ public class Controller<T> implements Serializable {
      * @throws Exception
      */
     public Boolean delete(T obj) throws Exception {
+        if (this.useGroupCommit()) {
+            return GroupCommitExecutor.await(this.groupCommit.delete(obj));
+        }
         try {
             Transaction.getInstance().getSession().clear();
             Transaction.getInstance().beginTransaction();
@@ -294,6 +664,62 @@ public class Controller<T> implements Serializable {
         return this.facade.findList(filter);
     }
 
+    /**
+     * Lista os registro de uma determinada tabela carregando as associações de acordo com o plano informado
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param fetchPlan Plano de carga das associações
+     * @return Lista de objetos encontrados na consulta
+     * @throws Exception 
+     */
+    public List<T> findList(T filter, FetchPlan fetchPlan) throws Exception {
+        return this.facade.findList(filter, fetchPlan);
+    }
+
+    /**
+     * Lista somente os atributos informados dos registros de uma determinada tabela,
+     * convertendo cada linha em um objeto DTO através do seu construtor
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param dto Classe que receberá os valores, com um construtor na mesma ordem dos atributos
+     * @param properties Atributos da entidade que serão consultados, podendo ser de associações como "cidade.nome"
+     * @return Lista de objetos DTO encontrados na consulta
+     * @throws Exception 
+     */
+    public <R> List<R> findProjected(T filter, Class<R> dto, String... properties) throws Exception {
+        return this.facade.findProjected(filter, dto, properties);
+    }
+
+    /**
+     * Exporta somente os atributos informados dos registros filtrados para um arquivo ou socket,
+     * sem montar a lista em memória. As linhas são lidas com um cursor e codificadas em um buffer
+     * direto reaproveitado, que é enviado ao canal sempre que enche. Exemplo:
+     * 
+     * FileChannel channel = new FileOutputStream("pessoas.csv").getChannel();
+     * controller.export(filter, new CsvEncoder(';', true), channel, "id", "nome", "cidade.nome");
+     * 
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param encoder Codificador das linhas, como CsvEncoder ou JsonEncoder
+     * @param channel Canal de destino, que continua aberto
+     * @param properties Atributos da entidade que serão exportados, podendo ser de associações como "cidade.nome"
+     * @return Quantidade de linhas exportadas
+     * @throws Exception 
+     */
+    public long export(T filter, RowEncoder encoder, WritableByteChannel channel, String... properties) throws Exception {
+        return this.facade.export(filter, encoder, channel, properties);
+    }
+
+    /**
+     * Exporta o resultado de uma consulta HQL para um arquivo ou socket, sem montar a lista em memória
+     * @param condition Consulta HQL, normalmente com select dos atributos exportados
+     * @param encoder Codificador das linhas, como CsvEncoder ou JsonEncoder
+     * @param channel Canal de destino, que continua aberto
+     * @param columns Nomes das colunas, na ordem do select
+     * @return Quantidade de linhas exportadas
+     * @throws Exception 
+     */
+    public long exportHQL(String condition, RowEncoder encoder, WritableByteChannel channel, String... columns) throws Exception {
+        return this.facade.exportHQL(condition, encoder, channel, columns);
+    }
+
     /**
      * Retorna um registro de uma determinada tabela
      * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
@@ -316,12 +742,16 @@ public class Controller<T> implements Serializable {
     }
 
     /**
-     * Procura um registro por um ID
+     * Procura um registro por um ID. Entidades @ReferenceData carregadas por ReferenceStore.start
+     * são atendidas pelo cache, retornando uma instância compartilhada que não pode ser alterada
      * @param id Chave primária da entidade
      * @return Objeto encontrado na consulta
      * @throws Exception
      */
     public T findById(Class clazz, Number id) throws Exception {
+        if (ReferenceStore.isLoaded(clazz)) {
+            return (T) ReferenceStore.findById(clazz, id);
+        }
         T t = this.facade.findById(clazz, id);
         return t;
     }
@@ -337,7 +767,12 @@ public class Controller<T> implements Serializable {
     }
 
     /**
-     * Busca uma lista de registro por uma condição HQL com uma lista de parametros
+     * Busca uma lista de registro por uma condição HQL com uma lista de parametros. Quando o dialeto
+     * limita o IN, como no Oracle, listas maiores que o limite são divididas em várias consultas, cujos
+     * resultados são concatenados; neste caso o order by vale dentro de cada parte. Quando a consulta
+     * retorna uma única entidade por linha cada registro aparece uma vez, mesmo repetido por um join ou
+     * encontrado em mais de uma parte; valores e linhas com várias colunas são retornados como a
+     * consulta os encontrou, com repetições
      * @param condition Condição HQL
      * @param paramList Lista de parametros passada para a Query HQL
      * @param paramListName Nome da lista de parametros
@@ -374,6 +809,43 @@ public class Controller<T> implements Serializable {
         return this.facade.getListByHQLCondition(condition, paramList, paramListName, firstResult, maxResult);
     }
 
+    /**
+     * Busca as chaves primárias retornadas por uma condição HQL, como "select p.id from Pessoa p where ...",
+     * sem montar uma List de Long
+     * @param condition Condição HQL com uma única coluna numérica no select
+     * @return Chaves encontradas, em ordem crescente e sem repetições
+     * @throws Exception
+     */
+    public LongIdSet getIdsByHQLCondition(String condition) throws Exception {
+        return this.facade.getIdsByHQLCondition(condition);
+    }
+
+    /**
+     * Busca as chaves primárias retornadas por uma condição HQL com uma lista de parametros
+     * @param condition Condição HQL com uma única coluna numérica no select
+     * @param paramList Lista de parametros passada para a Query HQL, podendo ser um LongIdSet
+     * @param paramListName Nome da lista de parametros
+     * @return Chaves encontradas, em ordem crescente e sem repetições
+     * @throws Exception 
+     */
+    public LongIdSet getIdsByHQLCondition(String condition, List paramList, String paramListName) throws Exception {
+        return this.facade.getIdsByHQLCondition(condition, paramList, paramListName);
+    }
+
+    /**
+     * Busca as chaves primárias retornadas por uma consulta SQL nativa com uma lista de chaves como
+     * parametro, como "select id from pessoa where cidade_id in (:cidades)". As chaves são passadas
+     * ao JDBC com setLong e lidas com getLong, sem conversão para Long
+     * @param sql Consulta SQL com uma única coluna numérica no select
+     * @param paramList Chaves passadas no lugar do parametro, não pode ser vazia
+     * @param paramListName Nome do parametro, usado na consulta como :nome
+     * @return Chaves encontradas, em ordem crescente e sem repetições
+     * @throws Exception 
+     */
+    public LongIdSet getIdsBySQLCondition(String sql, LongIdSet paramList, String paramListName) throws Exception {
+        return this.facade.getIdsBySQLCondition(sql, paramList, paramListName);
+    }
+
     /**
      * Busca um registro por uma condição HQL
      * @param condition Condição HQL
@@ -422,6 +894,51 @@ public class Controller<T> implements Serializable {
         return this.facade.findPaginate(filter, firstResult, maxResult, sortField, orderByType);
     }
 
+    /**
+     * Realiza uma consulta paginada com filtro passado por parametro, carregando as associações
+     * da página de acordo com o plano informado
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param firstResult Número da página que a consulta irá mostrar os resultados
+     * @param maxResult Número de registros por página
+     * @param sortField Nome do atributo da entidade que será ordenado
+     * @param orderByType Tipo de ordenação da Lista, os valores devem ser Controller.ORDER_ASC ou Controller.ORDER_DESC
+     * @param fetchPlan Plano de carga das associações
+     * @return Componente SearchPaginate contendo a lista páginada e a quantidade total de registros daquela tabela
+     * @throws Exception 
+     */
+    public SearchPaginate findPaginate(T filter, int firstResult, int maxResult, String sortField, boolean orderByType, FetchPlan fetchPlan) throws Exception {
+        return this.facade.findPaginate(filter, firstResult, maxResult, sortField, orderByType, fetchPlan);
+    }
+
+    /**
+     * Consulta os registros filtrados dividindo a chave primária numérica em faixas entre a
+     * menor e a maior chave dos registros que atendem ao filtro. Cada faixa é lida em paralelo
+     * por uma sessão e conexão próprias, em modo somente leitura, e o resultado de cada uma é
+     * acumulado e unido pelo combiner. As faixas são executadas em um pool compartilhado com
+     * uma thread por processador, e o pool de conexões precisa de uma conexão para cada.
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param partitions Quantidade de partições, e de sessões, usadas na consulta
+     * @param combiner Acumulador das entidades de cada partição
+     * @return Resultado unido de todas as partições
+     * @throws Exception
+     */
+    public <R> R findPartitioned(T filter, int partitions, ScanCombiner<T, R> combiner) throws Exception {
+        return this.facade.findPartitioned(filter, partitions, combiner);
+    }
+
+    /**
+     * Lista os registros filtrados dividindo a chave primária numérica em faixas lidas em
+     * paralelo, cada uma por uma sessão própria. As entidades são retornadas na ordem da chave
+     * primária e desanexadas, sendo que as associações lazy não podem mais ser carregadas.
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param partitions Quantidade de partições, e de sessões, usadas na consulta
+     * @return Lista de objetos encontrados na consulta
+     * @throws Exception
+     */
+    public List<T> findListPartitioned(T filter, int partitions) throws Exception {
+        return this.facade.findListPartitioned(filter, partitions);
+    }
+
     /**
      * Retornar o valor máximo de acordo com o campo da tabela
      * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
@@ -0,0 +1,743 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.db.ChangeEventBus;
+import br.com.jbc.db.HibernateUtil;
+import br.com.jbc.util.DirectBufferPool;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Importação de arquivos CSV em paralelo. O arquivo é lido em blocos com um buffer direto por
+ * uma thread, que separa os registros e os entrega em grupos às threads de conversão. As threads
+ * de conversão separam os campos, convertem cada registro em uma entidade e entregam os lotes às
+ * threads de gravação, cada uma com a sua própria sessão, que incluem cada lote com persist em
+ * uma transação. As filas entre as etapas são limitadas, assim a memória usada não depende do
+ * tamanho do arquivo.
+ *
+ * Para que as inclusões sejam agrupadas em batch JDBC configure hibernate.jdbc.batch_size e use
+ * uma chave primária conhecida antes do INSERT, como PooledIdGenerator. Quando um lote falha ele
+ * é desfeito e os seus registros são incluídos um a um, também com persist, rejeitando somente os
+ * que falharem; registros cuja chave já existe no banco são rejeitados e nunca sobrescritos.
+ *
+ * Exemplo:
+ *
+ * ImportReport report = new CsvImport<Pessoa>(Pessoa.class, "nome", "email", "nascimento")
+ *     .setSeparator(';').run(new File("pessoas.csv"));
+ *
+ * Os lotes já gravados continuam gravados quando a importação é interrompida por um erro de leitura.
+ * @author Rodrigo Marconato
+ * @param <T> Value Object importado
+ */
+public class CsvImport<T> {
+
+    /**
+     * Quantidade de registros entregues de uma vez pela leitura às threads de conversão
+     */
+    private static final int BLOCK_SIZE = 1000;
+
+    /**
+     * Espera máxima por espaço na fila dos lotes antes de verificar se as threads de gravação terminaram
+     */
+    private static final long OFFER_WAIT_MILLIS = 100;
+
+    private final RecordMapper<T> mapper;
+    private char separator = ',';
+    private boolean header = true;
+    private Charset charset = Charset.forName("UTF-8");
+    private int parsers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private int writers = 2;
+    private int batchSize = 1000;
+    private int queueCapacity = 8;
+    private int maxRejections = 1000;
+
+    /**
+     * Cria a importação com um conversor próprio dos registros
+     * @param mapper Conversor dos campos em entidade
+     */
+    public CsvImport(RecordMapper<T> mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Cria a importação que atribui cada campo, na ordem do arquivo, a um atributo da entidade.
+     * São aceitos atributos texto, numéricos, booleanos, enums e datas no formato yyyy-MM-dd ou
+     * yyyy-MM-dd'T'HH:mm:ss.SSS, o mesmo da exportação. Campos vazios não são atribuídos
+     * @param entityClass Classe da entidade, com construtor sem parâmetros
+     * @param properties Atributos da entidade na ordem dos campos do arquivo
+     */
+    public CsvImport(Class<T> entityClass, String... properties) {
+        this(new PropertyRecordMapper<T>(entityClass, properties));
+    }
+
+    /**
+     * Define o separador dos campos, padrão vírgula
+     * @param separator Separador
+     * @return CsvImport
+     */
+    public CsvImport<T> setSeparator(char separator) {
+        this.separator = separator;
+        return this;
+    }
+
+    /**
+     * Define se a primeira linha do arquivo é o cabeçalho, que é ignorado. Padrão true
+     * @param header true quando houver cabeçalho
+     * @return CsvImport
+     */
+    public CsvImport<T> setHeader(boolean header) {
+        this.header = header;
+        return this;
+    }
+
+    /**
+     * Define a codificação do arquivo, padrão UTF-8
+     * @param charset Codificação
+     * @return CsvImport
+     */
+    public CsvImport<T> setCharset(Charset charset) {
+        this.charset = charset;
+        return this;
+    }
+
+    /**
+     * Define a quantidade de threads de conversão, padrão quantidade de processadores menos um
+     * @param parsers Quantidade de threads
+     * @return CsvImport
+     */
+    public CsvImport<T> setParsers(int parsers) {
+        this.parsers = positive(parsers, "parsers");
+        return this;
+    }
+
+    /**
+     * Define a quantidade de threads de gravação, cada uma com uma conexão, padrão 2
+     * @param writers Quantidade de threads
+     * @return CsvImport
+     */
+    public CsvImport<T> setWriters(int writers) {
+        this.writers = positive(writers, "writers");
+        return this;
+    }
+
+    /**
+     * Define a quantidade de registros incluídos por transação, padrão 1000
+     * @param batchSize Registros por transação
+     * @return CsvImport
+     */
+    public CsvImport<T> setBatchSize(int batchSize) {
+        this.batchSize = positive(batchSize, "batchSize");
+        return this;
+    }
+
+    /**
+     * Define a quantidade de grupos aguardando em cada fila entre as etapas, padrão 8
+     * @param queueCapacity Capacidade das filas
+     * @return CsvImport
+     */
+    public CsvImport<T> setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = positive(queueCapacity, "queueCapacity");
+        return this;
+    }
+
+    /**
+     * Define a quantidade máxima de rejeições detalhadas no relatório, padrão 1000. Todas as
+     * rejeições continuam sendo contadas
+     * @param maxRejections Quantidade de rejeições detalhadas
+     * @return CsvImport
+     */
+    public CsvImport<T> setMaxRejections(int maxRejections) {
+        this.maxRejections = maxRejections;
+        return this;
+    }
+
+    /**
+     * Importa o arquivo, retornando quando todos os registros forem gravados ou rejeitados
+     * @param file Arquivo CSV
+     * @return Relatório da importação
+     * @throws Exception Erro de leitura do arquivo
+     */
+    public ImportReport run(File file) throws Exception {
+        long start = System.nanoTime();
+        Run<T> run = new Run<T>(this.queueCapacity, this.writers);
+        HibernateUtil util = HibernateUtil.getInstance();
+        String tenant = util.getTenant();
+
+        List<Thread> writerThreads = new ArrayList<Thread>(this.writers);
+        for (int i = 0; i < this.writers; i++) {
+            writerThreads.add(this.start(new Writer(run, util.openSession(tenant)), "jbc-import-writer-" + i));
+        }
+        List<Thread> parserThreads = new ArrayList<Thread>(this.parsers);
+        for (int i = 0; i < this.parsers; i++) {
+            parserThreads.add(this.start(new Parser(run), "jbc-import-parser-" + i));
+        }
+
+        Exception failure = null;
+        try {
+            this.read(file, run);
+        } catch (Exception e) {
+            failure = e;
+            run.aborted = true;
+        } finally {
+            for (int i = 0; i < this.parsers; i++) {
+                run.blocks.put(Block.END);
+            }
+            for (Thread thread : parserThreads) {
+                thread.join();
+            }
+            for (int i = 0; i < this.writers; i++) {
+                if (!run.offer(new Batch<T>(0))) {
+                    break;
+                }
+            }
+            for (Thread thread : writerThreads) {
+                thread.join();
+            }
+            if (run.inserted.get() > 0) {
+                // As leituras de quem importou devem ver os registros, não as das threads de gravação
+                util.markWrite();
+            }
+        }
+        if (failure == null) {
+            failure = run.writerFailure;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        List<String> rejections;
+        synchronized (run.rejections) {
+            rejections = new ArrayList<String>(run.rejections);
+        }
+        return new ImportReport(run.records.get(), run.inserted.get(), run.rejected.get(), run.bytes,
+                (System.nanoTime() - start) / 1000000, rejections);
+    }
+
+    private Thread start(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Lê o arquivo em blocos e separa os registros, respeitando quebras de linha entre aspas
+     */
+    private void read(File file, Run<T> run) throws Exception {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        ByteBuffer bytes = DirectBufferPool.acquire();
+        try {
+            CharsetDecoder decoder = this.charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer chars = CharBuffer.allocate(DirectBufferPool.BUFFER_SIZE);
+            Splitter splitter = new Splitter(run);
+            boolean eof = false;
+            while (!eof && !run.aborted) {
+                int read = channel.read(bytes);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    run.bytes += read;
+                }
+                bytes.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(bytes, chars, eof);
+                    chars.flip();
+                    splitter.consume(chars);
+                    chars.clear();
+                } while (result.isOverflow());
+                bytes.compact();
+            }
+            decoder.flush(chars);
+            chars.flip();
+            splitter.consume(chars);
+            splitter.finish();
+        } finally {
+            DirectBufferPool.release(bytes);
+            channel.close();
+        }
+    }
+
+    private void reject(Run<T> run, long line, Exception e) {
+        run.rejected.incrementAndGet();
+        synchronized (run.rejections) {
+            if (run.rejections.size() < this.maxRejections) {
+                run.rejections.add("linha " + line + ": " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Separa os campos de um registro CSV, removendo as aspas
+     */
+    private String[] split(String record) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == this.separator) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    private static int positive(int value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " deve ser maior que zero");
+        }
+        return value;
+    }
+
+    /**
+     * Separação dos registros durante a leitura, guardando o registro incompleto entre os blocos
+     */
+    private class Splitter {
+
+        private final Run<T> run;
+        private final StringBuilder record = new StringBuilder();
+        private boolean inQuotes;
+        private boolean skipHeader = header;
+        private long line = 1;
+        private long recordLine = 1;
+        private Block block = new Block();
+
+        Splitter(Run<T> run) {
+            this.run = run;
+        }
+
+        void consume(CharBuffer chars) throws InterruptedException {
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                if (c == '"') {
+                    this.inQuotes = !this.inQuotes;
+                }
+                if (c == '\n') {
+                    this.line++;
+                    if (!this.inQuotes) {
+                        this.endRecord();
+                        continue;
+                    }
+                }
+                this.record.append(c);
+            }
+        }
+
+        void finish() throws InterruptedException {
+            this.endRecord();
+            if (this.block.size > 0) {
+                this.run.blocks.put(this.block);
+            }
+        }
+
+        private void endRecord() throws InterruptedException {
+            int length = this.record.length();
+            if (length > 0 && this.record.charAt(length - 1) == '\r') {
+                this.record.setLength(--length);
+            }
+            if (length > 0) {
+                if (this.skipHeader) {
+                    this.skipHeader = false;
+                } else {
+                    this.block.records[this.block.size] = this.record.toString();
+                    this.block.lines[this.block.size++] = this.recordLine;
+                    this.run.records.incrementAndGet();
+                    if (this.block.size == BLOCK_SIZE) {
+                        this.run.blocks.put(this.block);
+                        this.block = new Block();
+                    }
+                }
+            }
+            this.record.setLength(0);
+            this.recordLine = this.line;
+        }
+    }
+
+    /**
+     * Thread de conversão dos registros em entidades
+     */
+    private class Parser implements Runnable {
+
+        private final Run<T> run;
+
+        Parser(Run<T> run) {
+            this.run = run;
+        }
+
+        public void run() {
+            Batch<T> batch = new Batch<T>(batchSize);
+            try {
+                while (true) {
+                    Block block = this.run.blocks.take();
+                    if (block == Block.END) {
+                        break;
+                    }
+                    if (this.run.aborted) {
+                        continue;
+                    }
+                    for (int i = 0; i < block.size; i++) {
+                        try {
+                            batch.add(mapper.map(split(block.records[i])), block.lines[i]);
+                        } catch (Exception e) {
+                            reject(this.run, block.lines[i], e);
+                            continue;
+                        }
+                        if (batch.entities.size() == batchSize) {
+                            this.run.offer(batch);
+                            batch = new Batch<T>(batchSize);
+                        }
+                    }
+                }
+                if (!batch.entities.isEmpty()) {
+                    this.run.offer(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Thread de gravação dos lotes, com uma sessão própria
+     */
+    private class Writer implements Runnable {
+
+        private final Run<T> run;
+        private final Session session;
+        private final Dao<T> dao;
+
+        Writer(Run<T> run, Session session) {
+            this.run = run;
+            this.session = session;
+            this.dao = new Dao<T>(session);
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    Batch<T> batch = this.run.batches.take();
+                    if (batch.entities.isEmpty()) {
+                        break;
+                    }
+                    if (!this.run.aborted) {
+                        this.write(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                this.run.writerFailure = e;
+            } finally {
+                this.session.close();
+                //Sem threads de gravação a leitura e a conversão são interrompidas
+                if (this.run.writers.decrementAndGet() == 0) {
+                    this.run.aborted = true;
+                }
+            }
+        }
+
+        /**
+         * Inclui o lote em uma transação. Se o lote falhar cada registro é incluído com persist em
+         * uma transação própria, com a chave que tinha antes do lote, pois o persist que falhou
+         * pode ter atribuída uma chave gerada. Registros já existentes falham e são rejeitados
+         */
+        private void write(Batch<T> batch) {
+            SessionImplementor implementor = (SessionImplementor) this.session;
+            EntityPersister persister = implementor.getFactory().getEntityPersister(batch.entities.get(0).getClass().getName());
+            Serializable[] ids = new Serializable[batch.entities.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = persister.getIdentifier(batch.entities.get(i), implementor);
+            }
+
+            org.hibernate.Transaction transaction = null;
+            try {
+                transaction = this.session.beginTransaction();
+                this.dao.insert(batch.entities);
+                transaction.commit();
+                ChangeEventBus.publish(this.session);
+                this.run.inserted.addAndGet(batch.entities.size());
+                return;
+            } catch (Exception e) {
+                this.rollback(transaction);
+                if (batch.entities.size() == 1) {
+                    reject(this.run, batch.lines.get(0), e);
+                    return;
+                }
+            } finally {
+                this.session.clear();
+            }
+            for (int i = 0; i < batch.entities.size(); i++) {
+                T entity = batch.entities.get(i);
+                transaction = null;
+                try {
+                    persister.setIdentifier(entity, ids[i], implementor);
+                    transaction = this.session.beginTransaction();
+                    this.dao.insert(Collections.singletonList(entity));
+                    transaction.commit();
+                    ChangeEventBus.publish(this.session);
+                    this.run.inserted.incrementAndGet();
+                } catch (Exception e) {
+                    this.rollback(transaction);
+                    reject(this.run, batch.lines.get(i), e);
+                } finally {
+                    this.session.clear();
+                }
+            }
+        }
+
+        /**
+         * Desfaz a transação que falhou, que pode nem ter sido iniciada
+         */
+        private void rollback(org.hibernate.Transaction transaction) {
+            try {
+                if (transaction != null && transaction.isActive()) {
+                    transaction.rollback();
+                }
+            } catch (RuntimeException e) {
+                //A conexão falhou; os registros já são rejeitados pelo erro original
+            } finally {
+                ChangeEventBus.discard(this.session);
+            }
+        }
+    }
+
+    /**
+     * Estado de uma execução da importação
+     */
+    private static class Run<T> {
+
+        private final BlockingQueue<Block> blocks;
+        private final BlockingQueue<Batch<T>> batches;
+        private final AtomicLong records = new AtomicLong();
+        private final AtomicLong inserted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final List<String> rejections = Collections.synchronizedList(new ArrayList<String>());
+        private long bytes;
+        private volatile boolean aborted;
+
+        /**
+         * Quantidade de threads de gravação em execução
+         */
+        private final AtomicInteger writers;
+
+        /**
+         * Erro que encerrou uma thread de gravação
+         */
+        private volatile RuntimeException writerFailure;
+
+        Run(int queueCapacity, int writers) {
+            this.blocks = new ArrayBlockingQueue<Block>(queueCapacity);
+            this.batches = new ArrayBlockingQueue<Batch<T>>(queueCapacity);
+            this.writers = new AtomicInteger(writers);
+        }
+
+        /**
+         * Entrega o lote às threads de gravação, aguardando espaço na fila enquanto houver
+         * alguma thread de gravação em execução
+         * @return false se o lote foi descartado porque todas as threads de gravação terminaram
+         */
+        boolean offer(Batch<T> batch) throws InterruptedException {
+            while (!this.batches.offer(batch, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (this.writers.get() == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Grupo de registros lidos, com a linha de cada registro no arquivo
+     */
+    private static class Block {
+
+        private static final Block END = new Block();
+
+        private final String[] records = new String[BLOCK_SIZE];
+        private final long[] lines = new long[BLOCK_SIZE];
+        private int size;
+    }
+
+    /**
+     * Lote de entidades a ser incluído em uma transação. Um lote vazio encerra a thread de gravação
+     */
+    private static class Batch<T> {
+
+        private final List<T> entities;
+        private final List<Long> lines;
+
+        Batch(int size) {
+            this.entities = new ArrayList<T>(size);
+            this.lines = new ArrayList<Long>(size);
+        }
+
+        void add(T entity, long line) {
+            this.entities.add(entity);
+            this.lines.add(line);
+        }
+    }
+
+    /**
+     * Conversor que atribui os campos aos atributos da entidade pelos seus métodos set
+     */
+    private static class PropertyRecordMapper<T> implements RecordMapper<T> {
+
+        private static final ThreadLocal<SimpleDateFormat> dateTimeFormat = new ThreadLocal<SimpleDateFormat>() {
+            @Override
+            protected SimpleDateFormat initialValue() {
+                SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+                format.setLenient(false);
+                return format;
+            }
+        };
+
+        private static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+            @Override
+            protected SimpleDateFormat initialValue() {
+                SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+                format.setLenient(false);
+                return format;
+            }
+        };
+
+        private final Class<T> entityClass;
+        private final Method[] setters;
+        private final Class[] types;
+
+        PropertyRecordMapper(Class<T> entityClass, String[] properties) {
+            this.entityClass = entityClass;
+            this.setters = new Method[properties.length];
+            this.types = new Class[properties.length];
+            for (int i = 0; i < properties.length; i++) {
+                Field field = findField(entityClass, properties[i]);
+                String name = "set" + Character.toUpperCase(properties[i].charAt(0)) + properties[i].substring(1);
+                try {
+                    this.setters[i] = entityClass.getMethod(name, field.getType());
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalArgumentException("Método " + name + " não encontrado em " + entityClass.getName());
+                }
+                this.types[i] = field.getType();
+            }
+        }
+
+        public T map(String[] fields) throws Exception {
+            if (fields.length != this.setters.length) {
+                throw new IllegalArgumentException("Quantidade de campos inválida: " + fields.length + ", esperado " + this.setters.length);
+            }
+            T entity = this.entityClass.newInstance();
+            for (int i = 0; i < fields.length; i++) {
+                if (!fields[i].isEmpty()) {
+                    this.setters[i].invoke(entity, convert(fields[i], this.types[i]));
+                }
+            }
+            return entity;
+        }
+
+        private static Field findField(Class type, String property) {
+            for (Class current = type; current != null; current = current.getSuperclass()) {
+                try {
+                    return current.getDeclaredField(property);
+                } catch (NoSuchFieldException e) {
+                    //Procura na superclasse
+                }
+            }
+            throw new IllegalArgumentException("Atributo " + property + " não encontrado em " + type.getName());
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Object convert(String value, Class type) throws Exception {
+            if (type == String.class) {
+                return value;
+            }
+            String text = value.trim();
+            if (type == Integer.class || type == int.class) {
+                return Integer.valueOf(text);
+            }
+            if (type == Long.class || type == long.class) {
+                return Long.valueOf(text);
+            }
+            if (type == Short.class || type == short.class) {
+                return Short.valueOf(text);
+            }
+            if (type == Double.class || type == double.class) {
+                return Double.valueOf(text);
+            }
+            if (type == Float.class || type == float.class) {
+                return Float.valueOf(text);
+            }
+            if (type == BigDecimal.class) {
+                return new BigDecimal(text);
+            }
+            if (type == BigInteger.class) {
+                return new BigInteger(text);
+            }
+            if (type == Boolean.class || type == boolean.class) {
+                return Boolean.valueOf(text.equals("1") || text.equalsIgnoreCase("true"));
+            }
+            if (type == Character.class || type == char.class) {
+                return Character.valueOf(value.charAt(0));
+            }
+            if (type.isEnum()) {
+                return Enum.valueOf(type, text);
+            }
+            if (Date.class.isAssignableFrom(type) || type == Calendar.class) {
+                Date date = (text.length() > 10 ? dateTimeFormat : dateFormat).get().parse(text);
+                if (type == java.sql.Date.class) {
+                    return new java.sql.Date(date.getTime());
+                }
+                if (type == java.sql.Timestamp.class) {
+                    return new java.sql.Timestamp(date.getTime());
+                }
+                if (type == Calendar.class) {
+                    Calendar calendar = Calendar.getInstance();
+                    calendar.setTime(date);
+                    return calendar;
+                }
+                return date;
+            }
+            throw new IllegalArgumentException("Tipo não suportado na importação: " + type.getName());
+        }
+    }
+}
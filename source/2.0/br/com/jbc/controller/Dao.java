@@ -1,17 +1,56 @@
 package br.com.jbc.controller;
 
 import br.com.jbc.db.BuildCriteria;
+import br.com.jbc.db.ChangeEvent;
+import br.com.jbc.db.ChangeEventBus;
+import br.com.jbc.db.ChangeTracker;
+import br.com.jbc.db.FetchPlan;
+import br.com.jbc.db.HibernateUtil;
+import br.com.jbc.db.NativeUpsert;
+import br.com.jbc.db.ProjectionMapper;
+import br.com.jbc.util.ChannelWriter;
+import br.com.jbc.util.LongIdSet;
+import br.com.jbc.util.RowEncoder;
+import java.nio.channels.WritableByteChannel;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.hibernate.Criteria;
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.criterion.Example;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.ProjectionList;
 import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.jdbc.Work;
+import org.hibernate.type.Type;
 import org.hibernate.Query;
 
+import br.com.jbc.util.JBCException;
 import br.com.jbc.util.SearchPaginate;
 import java.io.Serializable;
 
@@ -22,13 +61,225 @@ import java.io.Serializable;
  */
 public class Dao<T> implements Serializable {
 
+    /**
+     * Quantidade de entidades lidas por scanRange entre cada limpeza da sessão
+     */
+    private static final int SCAN_CLEAR_INTERVAL = 1000;
+    
+    /**
+     * Quantidade de entidades incluídas pela inclusão rápida de listas entre cada flush e limpeza da sessão
+     */
+    private static final int INSERT_CLEAR_INTERVAL = 1000;
+    
+    /**
+     * Quantidade máxima de elementos de uma lista de parametros por consulta quando o dialeto limita
+     * o IN, como os 1000 do Oracle. Nos bancos sem limite a lista é enviada em uma única consulta
+     */
+    private static final int IN_LIST_CHUNK = 1000;
+
+    /**
+     * Tamanhos para os quais as listas de parametros são completadas, repetindo o último elemento,
+     * para que listas de tamanhos diferentes reaproveitem o mesmo plano de consulta
+     */
+    private static final int[] IN_LIST_BUCKETS = {10, 50, 100, 250, 500, IN_LIST_CHUNK};
+
+    /**
+     * Quantidade de threads do executor das consultas paralelas; as consultas além deste número
+     * aguardam na fila do executor
+     */
+    private static final int PARALLEL_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Executor das consultas executadas em paralelo em outras sessões
+     */
+    private static ExecutorService executor;
+
     private final Session session;
+    
+    /**
+     * Indica se as consultas devem ser executadas em modo somente leitura
+     */
+    private boolean readOnly;
+    
+    /**
+     * Plano de carga padrão das associações em findList e findPaginate
+     */
+    private FetchPlan fetchPlan;
+    
+    /**
+     * Indica se insertOrUpdate grava com o upsert nativo do banco de dados em vez de merge
+     */
+    private boolean nativeUpsert;
+    
+    /**
+     * Indica se insert inclui com persist, deixando o flush para o commit
+     */
+    private boolean fastInsert;
+    
+    /**
+     * Controle de alterações usado por update, ou null quando desativado
+     */
+    private ChangeTracker changeTracker;
 
     @SuppressWarnings("unchecked")
     protected Dao(Session session) {
         this.session = session;
     }
 
+    /**
+     * Cria um Dao com as mesmas configurações deste, usando outra sessão
+     * @param session Sessão hibernate
+     * @return Dao
+     */
+    protected Dao<T> withSession(Session session) {
+        Dao<T> dao = new Dao<T>(session);
+        dao.readOnly = this.readOnly;
+        dao.fetchPlan = this.fetchPlan;
+        dao.nativeUpsert = this.nativeUpsert;
+        dao.fastInsert = this.fastInsert;
+        dao.changeTracker = this.changeTracker;
+        return dao;
+    }
+
+    /**
+     * Define o plano de carga padrão das associações em findList e findPaginate
+     * @param fetchPlan Plano de carga, ou null para manter o mapeamento da entidade
+     */
+    protected void setFetchPlan(FetchPlan fetchPlan) {
+        this.fetchPlan = fetchPlan;
+    }
+
+    /**
+     * Retorna o plano de carga padrão das associações em findList e findPaginate
+     * @return FetchPlan
+     */
+    protected FetchPlan getFetchPlan() {
+        return this.fetchPlan;
+    }
+
+    /**
+     * Define se insertOrUpdate grava com o upsert nativo do banco de dados, sem o SELECT
+     * executado pelo merge. Entidades que o upsert não suporta continuam sendo gravadas com merge
+     * @param nativeUpsert true para gravar com upsert
+     */
+    protected void setNativeUpsert(boolean nativeUpsert) {
+        this.nativeUpsert = nativeUpsert;
+    }
+
+    /**
+     * Define se insert inclui as entidades com persist, sem o SELECT do merge e deixando o
+     * flush para o commit. Deve ser usado somente com entidades novas
+     * @param fastInsert true para a inclusão rápida
+     */
+    protected void setFastInsert(boolean fastInsert) {
+        this.fastInsert = fastInsert;
+    }
+
+    /**
+     * Define se as entidades lidas são acompanhadas para que update grave somente os atributos alterados
+     * @param changeTracking true para acompanhar as alterações
+     */
+    protected void setChangeTracking(boolean changeTracking) {
+        this.changeTracker = changeTracking ? new ChangeTracker() : null;
+    }
+
+    /**
+     * Guarda a cópia dos valores das entidades lidas quando o controle de alterações estiver ativo
+     * @param list Lista de entidades
+     * @return A mesma lista
+     */
+    private <E> List<E> track(List<E> list) {
+        if (this.changeTracker != null && !this.readOnly) {
+            this.changeTracker.trackAll(this.session, list);
+        }
+        return list;
+    }
+
+    /**
+     * Guarda a cópia dos valores da entidade lida quando o controle de alterações estiver ativo
+     * @param obj Entidade
+     * @return A mesma entidade
+     */
+    private T track(T obj) {
+        if (this.changeTracker != null && !this.readOnly) {
+            this.changeTracker.track(this.session, obj);
+        }
+        return obj;
+    }
+
+    /**
+     * Guarda a cópia dos valores da entidade gravada quando o controle de alterações estiver ativo,
+     * que passa a valer no commit da transação
+     * @param obj Entidade
+     * @return A mesma entidade
+     */
+    private T trackWritten(T obj) {
+        if (this.changeTracker != null) {
+            this.changeTracker.trackWritten(this.session, obj);
+        }
+        return obj;
+    }
+
+    /**
+     * Define se as consultas devem ser executadas em modo somente leitura, sem guardar
+     * o estado carregado das entidades e sem executar flush antes da consulta
+     * @param readOnly true para consultas somente leitura
+     */
+    protected void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Retorna a sessão hibernate usada por este Dao
+     * @return Session
+     */
+    protected Session getSession() {
+        return this.session;
+    }
+
+    /**
+     * Verifica se as consultas são executadas em modo somente leitura
+     * @return true para consultas somente leitura
+     */
+    protected boolean isReadOnly() {
+        return this.readOnly;
+    }
+
+    /**
+     * Remove da sessão uma entidade carregada em modo somente leitura, para que o merge
+     * compare o objeto com o registro do banco, pois o flush ignora entidades read-only
+     * @param obj Objeto VO de persistência
+     */
+    private void detachReadOnly(T obj) {
+        if (this.session.contains(obj) && this.session.isReadOnly(obj)) {
+            this.session.evict(obj);
+        }
+    }
+
+    /**
+     * Aplica o modo somente leitura ao Criteria quando estiver ativo
+     * @param criteria Criteria da consulta
+     * @return O mesmo Criteria
+     */
+    private Criteria prepare(Criteria criteria) {
+        if (this.readOnly) {
+            criteria.setReadOnly(true).setFlushMode(FlushMode.MANUAL);
+        }
+        return criteria;
+    }
+
+    /**
+     * Aplica o modo somente leitura à Query quando estiver ativo
+     * @param query Query da consulta
+     * @return A mesma Query
+     */
+    private Query prepare(Query query) {
+        if (this.readOnly) {
+            query.setReadOnly(true).setFlushMode(FlushMode.MANUAL);
+        }
+        return query;
+    }
+
     /**
      * Insere um registro em uma determinada tabela
      * @param obj Objeto VO de persistência
@@ -37,26 +288,85 @@ public class Dao<T> implements Serializable {
      */
     protected Boolean insert(T obj) throws ConstraintViolationException {
 
-        this.session.merge(obj);
+        if (this.fastInsert) {
+            this.session.persist(obj);
+            ChangeEventBus.record(this.session, obj, ChangeEvent.INSERT);
+            return true;
+        }
+        ChangeEventBus.record(this.session, this.session.merge(obj), ChangeEvent.INSERT);
         this.session.flush();
         this.session.evict(obj);
 
         return true;
     }
 
+    /**
+     * Insere uma lista de registros novos com persist. O flush é feito a cada INSERT_CLEAR_INTERVAL
+     * entidades, limpando a sessão em seguida, e as restantes são gravadas no commit
+     * @param objList Lista de Objetos VO de persistência
+     * @return Boolean.True para transação com sucesso e Boolean.False para transação com Rollback
+     * @throws ConstraintViolationException
+     */
+    protected Boolean insert(List<T> objList) throws ConstraintViolationException {
+        int count = 0;
+        for (T obj : objList) {
+            this.session.persist(obj);
+            ChangeEventBus.record(this.session, obj, ChangeEvent.INSERT);
+            if (++count % INSERT_CLEAR_INTERVAL == 0) {
+                this.session.flush();
+                this.session.clear();
+            }
+        }
+        return true;
+    }
+
     /**
      * Insere ou atualiza um registro em uma determinada tabela
      * @param obj Objeto VO de persistência
      * @return Boolean.True para transação com sucesso e Boolean.False para transação com Rollback
      * @throws ConstraintViolationException
      */
-    protected Boolean insertOrUpdate(T obj) throws ConstraintViolationException {
-        this.session.merge(obj);
+    protected Boolean insertOrUpdate(T obj) throws ConstraintViolationException, JBCException {
+        if (this.nativeUpsert) {
+            List<T> objList = new ArrayList<T>(1);
+            objList.add(obj);
+            return this.insertOrUpdate(objList);
+        }
+        this.detachReadOnly(obj);
+        ChangeEventBus.record(this.session, this.session.merge(obj), ChangeEvent.INSERT_OR_UPDATE);
         this.session.flush();
         this.session.evict(obj);
         return true;
     }
 
+    /**
+     * Insere ou atualiza uma lista de registros com um único flush, permitindo que o hibernate
+     * agrupe os comandos quando hibernate.jdbc.batch_size estiver configurado. Com o upsert
+     * nativo ativo os registros são gravados em um batch JDBC de upsert
+     * @param objList Lista de Objetos VO de persistência
+     * @return Boolean.True para transação com sucesso e Boolean.False para transação com Rollback
+     * @throws ConstraintViolationException
+     * @throws JBCException Quando o upsert estiver ativo e o dialeto não o suportar
+     */
+    protected Boolean insertOrUpdate(List<T> objList) throws ConstraintViolationException, JBCException {
+        List<?> mergeList = objList;
+        if (this.nativeUpsert) {
+            mergeList = NativeUpsert.upsert(this.session, objList);
+            for (T obj : objList) {
+                if (!mergeList.contains(obj)) {
+                    ChangeEventBus.record(this.session, obj, ChangeEvent.INSERT_OR_UPDATE);
+                }
+            }
+        }
+        for (Object obj : mergeList) {
+            this.detachReadOnly((T) obj);
+            ChangeEventBus.record(this.session, this.session.merge(obj), ChangeEvent.INSERT_OR_UPDATE);
+        }
+        this.session.flush();
+        this.session.clear();
+        return true;
+    }
+
     /**
      * Insere um registro em uma determinada tabela e retorna a entidade persistida
      * @param obj Objeto VO de persistência
@@ -65,7 +375,8 @@ public class Dao<T> implements Serializable {
      */
     protected T insertReturnId(T obj) throws ConstraintViolationException {
         this.session.persist(obj);
-        return obj;
+        ChangeEventBus.record(this.session, obj, ChangeEvent.INSERT);
+        return this.trackWritten(obj);
     }
 
     /**
@@ -75,9 +386,16 @@ public class Dao<T> implements Serializable {
      * @throws ConstraintViolationException
      */
     protected Boolean update(T obj) throws ConstraintViolationException {
+        // O ChangeTracker registra a alteração somente quando grava, entidades sem alteração não geram evento
+        if (this.changeTracker != null && this.changeTracker.update(this.session, obj)) {
+            return true;
+        }
+        this.detachReadOnly(obj);
         this.session.merge(obj);
         this.session.flush();
+        ChangeEventBus.record(this.session, obj, ChangeEvent.UPDATE);
         this.session.evict(obj);
+        this.trackWritten(obj);
         return true;
 
     }
@@ -89,6 +407,10 @@ public class Dao<T> implements Serializable {
      */
     protected void delete(T obj) throws Exception {
         this.session.delete(obj);
+        ChangeEventBus.record(this.session, obj, ChangeEvent.DELETE);
+        if (this.changeTracker != null) {
+            this.changeTracker.untrack(obj);
+        }
     }
 
     /**
@@ -97,31 +419,138 @@ public class Dao<T> implements Serializable {
      * @return Lista de objetos encontrados na consulta
      * @throws Exception 
      */
-    @SuppressWarnings("unchecked")
     protected List<T> findList(T filter) throws Exception {
+        return this.findList(filter, Controller.SEARCH_LIKE_STRING, this.fetchPlan);
+    }
+
+    /**
+     * Lista os registro de uma determinada tabela, sendo que pode ser informado o tipo de consulta
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param searchType Tipo de pesquisa que será feita a consulta no banco de dados, sendo Controller.SEARCH_LIKE_STRING E Controller.SEARCH_EQUALS_STRING
+     * @return Lista de objetos encontrados na consulta
+     * @throws Exception 
+     */
+    protected List<T> findList(T filter, int searchType) throws Exception {
+        return this.findList(filter, searchType, this.fetchPlan);
+    }
+
+    /**
+     * Lista os registro de uma determinada tabela carregando as associações de acordo com o plano informado
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param searchType Tipo de pesquisa que será feita a consulta no banco de dados, sendo Controller.SEARCH_LIKE_STRING E Controller.SEARCH_EQUALS_STRING
+     * @param fetchPlan Plano de carga das associações, ou null para manter o mapeamento da entidade
+     * @return Lista de objetos encontrados na consulta
+     * @throws Exception 
+     */
+    @SuppressWarnings("unchecked")
+    protected List<T> findList(T filter, int searchType, FetchPlan fetchPlan) throws Exception {
         Example example = Example.create(filter).excludeZeroes() //exclude zero valued properties
                 .ignoreCase().enableLike(MatchMode.ANYWHERE);   //use like for string comparisons
 
-        Criteria criteria = BuildCriteria.createCriteria(filter, session, Controller.SEARCH_LIKE_STRING).add(example);
+        Criteria criteria = prepare(BuildCriteria.createCriteria(filter, session, searchType)).add(example);
 
-        return criteria.list();
+        if (fetchPlan == null) {
+            return this.track((List<T>) criteria.list());
+        }
+        List<T> list = fetchPlan.apply(criteria).list();
+        fetchPlan.initialize(session, filter.getClass(), list, this.readOnly);
+        return this.track(list);
     }
 
     /**
-     * Lista os registro de uma determinada tabela, sendo que pode ser informado o tipo de consulta
+     * Lista somente os atributos informados dos registros de uma determinada tabela,
+     * convertendo cada linha em um objeto DTO através do seu construtor
      * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
-     * @param searchType Tipo de pesquisa que será feita a consulta no banco de dados, sendo Controller.SEARCH_LIKE_STRING E Controller.SEARCH_EQUALS_STRING
-     * @return Lista de objetos encontrados na consulta
+     * @param dto Classe que receberá os valores, com um construtor na mesma ordem dos atributos
+     * @param properties Atributos da entidade que serão consultados, podendo ser de associações como "cidade.nome"
+     * @return Lista de objetos DTO encontrados na consulta
      * @throws Exception 
      */
     @SuppressWarnings("unchecked")
-    protected List<T> findList(T filter, int searchType) throws Exception {
+    protected <R> List<R> findProjected(T filter, Class<R> dto, String... properties) throws Exception {
+        Example example = Example.create(filter).excludeZeroes() //exclude zero valued properties
+                .ignoreCase().enableLike(MatchMode.ANYWHERE);   //use like for string comparisons
+
+        ProjectionList projection = Projections.projectionList();
+        for (String property : properties) {
+            projection.add(Projections.property(BuildCriteria.parsePropertyAlias(property)));
+        }
+
+        Criteria criteria = prepare(BuildCriteria.createCriteria(filter, session, Controller.SEARCH_LIKE_STRING, properties))
+                .add(example)
+                .setProjection(projection);
+
+        return ProjectionMapper.map(criteria.list(), filter.getClass(), dto, properties);
+    }
+
+    /**
+     * Exporta somente os atributos informados dos registros filtrados. As linhas são lidas com um
+     * cursor e escritas no canal à medida que são lidas, sem montar a lista em memória
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param encoder Codificador das linhas, como CsvEncoder ou JsonEncoder
+     * @param channel Canal de destino, que continua aberto
+     * @param properties Atributos da entidade que serão exportados, podendo ser de associações como "cidade.nome"
+     * @return Quantidade de linhas exportadas
+     * @throws Exception 
+     */
+    protected long export(T filter, RowEncoder encoder, WritableByteChannel channel, String... properties) throws Exception {
         Example example = Example.create(filter).excludeZeroes() //exclude zero valued properties
                 .ignoreCase().enableLike(MatchMode.ANYWHERE);   //use like for string comparisons
 
-        Criteria criteria = BuildCriteria.createCriteria(filter, session, searchType).add(example);
+        ProjectionList projection = Projections.projectionList();
+        for (String property : properties) {
+            projection.add(Projections.property(BuildCriteria.parsePropertyAlias(property)));
+        }
+
+        Criteria criteria = prepare(BuildCriteria.createCriteria(filter, session, Controller.SEARCH_LIKE_STRING, properties))
+                .add(example)
+                .setProjection(projection)
+                .setFetchSize(SCAN_CLEAR_INTERVAL);
 
-        return criteria.list();
+        return this.export(criteria.scroll(ScrollMode.FORWARD_ONLY), properties, encoder, channel);
+    }
+
+    /**
+     * Exporta o resultado de uma consulta HQL com um cursor, escrevendo cada linha no canal à medida
+     * que é lida. Entidades retornadas pela consulta são retiradas da sessão depois de escritas
+     * @param condition Consulta HQL, normalmente com select dos atributos exportados
+     * @param encoder Codificador das linhas, como CsvEncoder ou JsonEncoder
+     * @param channel Canal de destino, que continua aberto
+     * @param columns Nomes das colunas, na ordem do select
+     * @return Quantidade de linhas exportadas
+     * @throws Exception 
+     */
+    protected long exportHQL(String condition, RowEncoder encoder, WritableByteChannel channel, String... columns) throws Exception {
+        Query query = prepare(session.createQuery(condition)).setFetchSize(SCAN_CLEAR_INTERVAL);
+        return this.export(query.scroll(ScrollMode.FORWARD_ONLY), columns, encoder, channel);
+    }
+
+    private long export(ScrollableResults results, String[] columns, RowEncoder encoder, WritableByteChannel channel) throws Exception {
+        ChannelWriter out = new ChannelWriter(channel);
+        boolean completed = false;
+        long count = 0;
+        try {
+            encoder.begin(columns, out);
+            while (results.next()) {
+                Object[] row = results.get();
+                encoder.row(columns, row, count == 0, out);
+                for (Object value : row) {
+                    if (value != null && session.contains(value)) {
+                        session.evict(value);
+                    }
+                }
+                count++;
+            }
+            encoder.end(out);
+            out.close();
+            completed = true;
+        } finally {
+            results.close();
+            if (!completed) {
+                out.discard();
+            }
+        }
+        return count;
     }
 
     /**
@@ -135,7 +564,7 @@ public class Dao<T> implements Serializable {
         Example example = Example.create(filter).excludeZeroes() //exclude zero valued properties
                 .ignoreCase().enableLike(MatchMode.ANYWHERE);   //use like for string comparisons
 
-        return (T) BuildCriteria.createCriteria(filter, session, Controller.SEARCH_LIKE_STRING).add(example).uniqueResult();
+        return this.track((T) prepare(BuildCriteria.createCriteria(filter, session, Controller.SEARCH_LIKE_STRING)).add(example).uniqueResult());
     }
 
     /**
@@ -150,7 +579,7 @@ public class Dao<T> implements Serializable {
         Example example = Example.create(filter).excludeZeroes() //exclude zero valued properties
                 .ignoreCase().enableLike(MatchMode.ANYWHERE);   //use like for string comparisons
 
-        return (T) BuildCriteria.createCriteria(filter, session, searchType).add(example).uniqueResult();
+        return this.track((T) prepare(BuildCriteria.createCriteria(filter, session, searchType)).add(example).uniqueResult());
     }
 
     /**
@@ -161,7 +590,11 @@ public class Dao<T> implements Serializable {
      */
     @SuppressWarnings("unchecked")
     protected T findById(Class clazz, Number id) throws Exception {
-        return (T) session.load(clazz, id);
+        T t = (T) session.load(clazz, id);
+        if (this.readOnly) {
+            session.setReadOnly(t, true);
+        }
+        return t;
     }
 
     /**
@@ -172,22 +605,51 @@ public class Dao<T> implements Serializable {
      */
     @SuppressWarnings("unchecked")
     protected List<T> getListByHQLCondition(String condition) throws Exception {
-        Query query = session.createQuery(condition);
-        return (query.list());
+        Query query = prepare(session.createQuery(condition));
+        return this.track((List<T>) query.list());
     }
 
     /**
-     * Busca uma lista de registro por uma condição HQL com uma lista de parametros
+     * Busca uma lista de registro por uma condição HQL com uma lista de parametros. Quando o dialeto
+     * limita o IN, como no Oracle, listas maiores que o limite são divididas em várias consultas, cujos
+     * resultados são concatenados; neste caso o order by vale dentro de cada parte. Quando a consulta
+     * retorna uma única entidade por linha cada registro aparece uma vez, mesmo repetido por um join ou
+     * encontrado em mais de uma parte; valores e linhas com várias colunas são retornados como a
+     * consulta os encontrou, com repetições
      * @param condition Condição HQL
      * @param paramList Lista de parametros passada para a Query HQL
      * @param paramListName Nome da lista de parametros
      * @return Lista de objetos encontrados na consulta
      * @throws Exception 
      */
-    @SuppressWarnings("unchecked")
-    protected List<T> getListByHQLCondition(String condition, List paramList, String paramListName) throws Exception {
-        Query query = session.createQuery(condition).setParameterList(paramListName, paramList);
-        return (query.list());
+    protected List<T> getListByHQLCondition(final String condition, List paramList, final String paramListName) throws Exception {
+        // As partes são consultadas em sequência nesta sessão, para que todas as entidades retornadas estejam nela
+        List<List<T>> results = this.inChunks(this.chunk(paramList), false, new ChunkQuery<T, List<T>>() {
+            @SuppressWarnings("unchecked")
+            public List<T> execute(Dao<T> dao, Object chunk) {
+                Query query = dao.prepare(dao.session.createQuery(condition)).setParameterList(paramListName, (List) chunk);
+                return dao.track((List<T>) query.list());
+            }
+        });
+        Type[] types = this.session.createQuery(condition).getReturnTypes();
+        if (types.length != 1 || !types[0].isEntityType()) {
+            List<T> merged = new ArrayList<T>();
+            for (List<T> result : results) {
+                merged.addAll(result);
+            }
+            return merged;
+        }
+        // Na mesma sessão um registro encontrado mais de uma vez é a mesma instância
+        Set<T> found = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+        List<T> merged = new ArrayList<T>();
+        for (List<T> result : results) {
+            for (T obj : result) {
+                if (found.add(obj)) {
+                    merged.add(obj);
+                }
+            }
+        }
+        return merged;
     }
 
     /**
@@ -200,8 +662,8 @@ public class Dao<T> implements Serializable {
      */
     @SuppressWarnings("unchecked")
     protected List<T> getListByHQLCondition(String condition, int firstResult, int maxResult) throws Exception {
-        Query query = session.createQuery(condition).setFirstResult(firstResult).setMaxResults(maxResult);
-        return (query.list());
+        Query query = prepare(session.createQuery(condition)).setFirstResult(firstResult).setMaxResults(maxResult);
+        return this.track((List<T>) query.list());
     }
 
     /**
@@ -216,9 +678,302 @@ public class Dao<T> implements Serializable {
      */
     @SuppressWarnings("unchecked")
     protected List<T> getListByHQLCondition(String condition, List paramList, String paramListName, int firstResult, int maxResult) throws Exception {
-        Query query = session.createQuery(condition).setParameterList(paramListName, paramList)
+        Query query = prepare(session.createQuery(condition)).setParameterList(paramListName, paramList)
                 .setFirstResult(firstResult).setMaxResults(maxResult);
-        return (query.list());
+        return this.track((List<T>) query.list());
+    }
+
+    /**
+     * Busca as chaves primárias retornadas por uma condição HQL, como "select p.id from Pessoa p where ...".
+     * As linhas são lidas com um cursor direto para um LongIdSet, sem montar uma List de Long
+     * @param condition Condição HQL com uma única coluna numérica no select
+     * @return Chaves encontradas, em ordem crescente e sem repetições
+     * @throws Exception 
+     */
+    protected LongIdSet getIdsByHQLCondition(String condition) throws Exception {
+        return this.readIds(prepare(session.createQuery(condition)));
+    }
+
+    /**
+     * Busca as chaves primárias retornadas por uma condição HQL com uma lista de parametros
+     * @param condition Condição HQL com uma única coluna numérica no select
+     * @param paramList Lista de parametros passada para a Query HQL, podendo ser um LongIdSet
+     * @param paramListName Nome da lista de parametros
+     * @return Chaves encontradas, em ordem crescente e sem repetições
+     * @throws Exception 
+     */
+    protected LongIdSet getIdsByHQLCondition(String condition, List paramList, String paramListName) throws Exception {
+        return this.getIdsByHQLCondition(condition, paramList, paramListName, false);
+    }
+
+    /**
+     * Busca as chaves primárias retornadas por uma condição HQL com uma lista de parametros, dividindo
+     * em várias consultas as listas maiores que o limite do IN do dialeto
+     * @param condition Condição HQL com uma única coluna numérica no select
+     * @param paramList Lista de parametros passada para a Query HQL, podendo ser um LongIdSet
+     * @param paramListName Nome da lista de parametros
+     * @param parallel true para executar as partes em paralelo, em outras sessões somente leitura
+     * @return Chaves encontradas, em ordem crescente e sem repetições
+     * @throws Exception 
+     */
+    protected LongIdSet getIdsByHQLCondition(final String condition, List paramList, final String paramListName, boolean parallel) throws Exception {
+        List<LongIdSet> results = this.inChunks(this.chunk(paramList), parallel, new ChunkQuery<T, LongIdSet>() {
+            public LongIdSet execute(Dao<T> dao, Object chunk) {
+                return dao.readIds(dao.prepare(dao.session.createQuery(condition)).setParameterList(paramListName, (List) chunk));
+            }
+        });
+        return mergeIds(results);
+    }
+
+    private LongIdSet readIds(Query query) {
+        LongIdSet.Builder builder = new LongIdSet.Builder();
+        ScrollableResults results = query.setFetchSize(SCAN_CLEAR_INTERVAL).scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                Object id = results.get(0);
+                if (id != null) {
+                    builder.add(((Number) id).longValue());
+                }
+            }
+        } finally {
+            results.close();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Busca as chaves primárias retornadas por uma consulta SQL nativa com uma lista de chaves como
+     * parametro, como "select id from pessoa where cidade_id in (:cidades)". As chaves são passadas
+     * ao JDBC com setLong e lidas com getLong, sem conversão para Long. Gravações pendentes na
+     * sessão não são enviadas ao banco antes da consulta
+     * @param sql Consulta SQL com uma única coluna numérica no select
+     * @param paramList Chaves passadas no lugar do parametro, não pode ser vazia
+     * @param paramListName Nome do parametro, usado na consulta como :nome
+     * @return Chaves encontradas, em ordem crescente e sem repetições
+     * @throws Exception 
+     */
+    protected LongIdSet getIdsBySQLCondition(String sql, LongIdSet paramList, String paramListName) throws Exception {
+        return this.getIdsBySQLCondition(sql, paramList, paramListName, false);
+    }
+
+    /**
+     * Busca as chaves primárias retornadas por uma consulta SQL nativa com uma lista de chaves como
+     * parametro, dividindo em várias consultas as listas maiores que o limite do IN do dialeto
+     * @param sql Consulta SQL com uma única coluna numérica no select
+     * @param paramList Chaves passadas no lugar do parametro, não pode ser vazia
+     * @param paramListName Nome do parametro, usado na consulta como :nome
+     * @param parallel true para executar as partes em paralelo, em outras sessões
+     * @return Chaves encontradas, em ordem crescente e sem repetições
+     * @throws Exception 
+     */
+    protected LongIdSet getIdsBySQLCondition(String sql, LongIdSet paramList, String paramListName, boolean parallel) throws Exception {
+        if (paramList.isEmpty()) {
+            throw new IllegalArgumentException("A lista de parametros " + paramListName + " não pode ser vazia");
+        }
+        Matcher matcher = Pattern.compile(":" + Pattern.quote(paramListName) + "\\b").matcher(sql);
+        if (!matcher.find()) {
+            throw new IllegalArgumentException("O parametro :" + paramListName + " não foi encontrado na consulta");
+        }
+        final String before = sql.substring(0, matcher.start());
+        final String after = sql.substring(matcher.end());
+        if (matcher.find()) {
+            throw new IllegalArgumentException("O parametro :" + paramListName + " só pode aparecer uma vez na consulta");
+        }
+
+        final int limit = this.inListLimit();
+        int size = limit > 0 ? limit : paramList.size();
+        List<Object> chunks = new ArrayList<Object>();
+        for (int from = 0; from < paramList.size(); from += size) {
+            chunks.add(paramList.slice(from, Math.min(from + size, paramList.size())));
+        }
+        List<LongIdSet> results = this.inChunks(chunks, parallel, new ChunkQuery<T, LongIdSet>() {
+            public LongIdSet execute(Dao<T> dao, Object chunk) {
+                return dao.readIds(before, after, (LongIdSet) chunk, limit);
+            }
+        });
+        return mergeIds(results);
+    }
+
+    /**
+     * Executa a consulta SQL com as chaves, completando os parametros até o tamanho da faixa com a
+     * última chave, sem passar do limite do IN. As chaves são passadas com setLong e lidas com getLong
+     */
+    private LongIdSet readIds(String before, String after, final LongIdSet paramList, int limit) {
+        final int count = bucket(paramList.size(), limit);
+        StringBuilder expanded = new StringBuilder(before.length() + count * 2 + after.length()).append(before);
+        for (int i = 0; i < count; i++) {
+            expanded.append(i == 0 ? "?" : ",?");
+        }
+        final String query = expanded.append(after).toString();
+
+        final LongIdSet.Builder builder = new LongIdSet.Builder();
+        session.doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                PreparedStatement statement = connection.prepareStatement(query);
+                try {
+                    for (int i = 0; i < count; i++) {
+                        statement.setLong(i + 1, paramList.getLong(Math.min(i, paramList.size() - 1)));
+                    }
+                    statement.setFetchSize(SCAN_CLEAR_INTERVAL);
+                    ResultSet resultSet = statement.executeQuery();
+                    try {
+                        while (resultSet.next()) {
+                            long id = resultSet.getLong(1);
+                            if (!resultSet.wasNull()) {
+                                builder.add(id);
+                            }
+                        }
+                    } finally {
+                        resultSet.close();
+                    }
+                } finally {
+                    statement.close();
+                }
+            }
+        });
+        return builder.build();
+    }
+
+    private static LongIdSet mergeIds(List<LongIdSet> results) {
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        int size = 0;
+        for (LongIdSet result : results) {
+            size += result.size();
+        }
+        LongIdSet.Builder builder = new LongIdSet.Builder(size);
+        for (LongIdSet result : results) {
+            for (int i = 0; i < result.size(); i++) {
+                builder.add(result.getLong(i));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Consulta executada sobre uma parte da lista de parametros
+     */
+    private interface ChunkQuery<T, R> {
+        R execute(Dao<T> dao, Object chunk) throws Exception;
+    }
+
+    /**
+     * Divide a lista de parametros em partes do tamanho do limite do IN do dialeto, cada uma completada
+     * até o tamanho da sua faixa. Sem limite, ou com uma lista vazia ou nula, a lista é uma parte única
+     */
+    private List<Object> chunk(List paramList) {
+        List<Object> chunks = new ArrayList<Object>();
+        if (paramList == null || paramList.isEmpty()) {
+            chunks.add(paramList);
+            return chunks;
+        }
+        int limit = this.inListLimit();
+        int size = limit > 0 ? limit : paramList.size();
+        for (int from = 0; from < paramList.size(); from += size) {
+            chunks.add(pad(paramList.subList(from, Math.min(from + size, paramList.size())), limit));
+        }
+        return chunks;
+    }
+
+    /**
+     * Quantidade máxima de elementos de um IN, até IN_LIST_CHUNK, ou 0 quando o dialeto não limita o IN
+     */
+    private int inListLimit() {
+        int limit = ((SessionFactoryImplementor) session.getSessionFactory()).getDialect().getInExpressionCountLimit();
+        return limit > 0 ? Math.min(limit, IN_LIST_CHUNK) : 0;
+    }
+
+    /**
+     * Executa a consulta de cada parte da lista de parametros. Em paralelo as partes seguintes são
+     * enviadas ao executor das consultas paralelas, em sessões somente leitura, enquanto a primeira
+     * é consultada nesta sessão. Somente as consultas de chaves usam o paralelo, pois as entidades das
+     * outras sessões voltariam desligadas desta
+     * @return Resultado de cada parte, na ordem das partes
+     */
+    private <R> List<R> inChunks(List<Object> chunks, boolean parallel, ChunkQuery<T, R> query) throws Exception {
+        List<Future<R>> futures = new ArrayList<Future<R>>();
+        if (parallel) {
+            for (int i = 1; i < chunks.size(); i++) {
+                futures.add(this.submitChunk(chunks.get(i), query));
+            }
+        }
+        List<R> results = new ArrayList<R>(chunks.size());
+        try {
+            int local = parallel ? 1 : chunks.size();
+            for (int i = 0; i < local; i++) {
+                results.add(query.execute(this, chunks.get(i)));
+            }
+        } catch (Exception e) {
+            for (Future<R> future : futures) {
+                future.cancel(false);
+            }
+            throw e;
+        }
+        results.addAll(await(futures));
+        return results;
+    }
+
+    private <R> Future<R> submitChunk(final Object chunk, final ChunkQuery<T, R> query) {
+        return getExecutor().submit(new Callable<R>() {
+            public R call() throws Exception {
+                Session chunkSession = session.getSessionFactory().openSession();
+                try {
+                    chunkSession.setDefaultReadOnly(true);
+                    chunkSession.setFlushMode(FlushMode.MANUAL);
+                    Dao<T> dao = withSession(chunkSession);
+                    dao.setReadOnly(true);
+                    return query.execute(dao, chunk);
+                } finally {
+                    chunkSession.close();
+                }
+            }
+        });
+    }
+
+    private static <R> List<R> await(List<Future<R>> futures) throws Exception {
+        List<R> results = new ArrayList<R>(futures.size());
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            for (Future<R> future : futures) {
+                future.cancel(false);
+            }
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        return results;
+    }
+
+    /**
+     * Completa a parte da lista até o tamanho da sua faixa repetindo o último elemento, o que não
+     * altera o resultado de um IN
+     */
+    private static List pad(List chunk, int limit) {
+        int size = bucket(chunk.size(), limit);
+        if (size == chunk.size()) {
+            return chunk;
+        }
+        List padded = new ArrayList(size);
+        padded.addAll(chunk);
+        Object last = chunk.get(chunk.size() - 1);
+        while (padded.size() < size) {
+            padded.add(last);
+        }
+        return padded;
+    }
+
+    /**
+     * Tamanho da faixa da lista, sem passar do limite do IN, ou o próprio tamanho quando não houver faixa
+     */
+    private static int bucket(int size, int limit) {
+        for (int bucket : IN_LIST_BUCKETS) {
+            if (size <= bucket) {
+                return limit > 0 && bucket > limit ? size : bucket;
+            }
+        }
+        return size;
     }
 
     /**
@@ -229,8 +984,8 @@ public class Dao<T> implements Serializable {
      */
     @SuppressWarnings("unchecked")
     protected T getObjectByHQLCondition(String condition) throws Exception {
-        Query query = session.createQuery(condition);
-        return ((T) query.uniqueResult());
+        Query query = prepare(session.createQuery(condition));
+        return this.track((T) query.uniqueResult());
     }
 
     /**
@@ -242,7 +997,7 @@ public class Dao<T> implements Serializable {
      */
     @SuppressWarnings("unchecked")
     protected Object getValueByHQLCondition(String condition) throws Exception {
-        Query query = session.createQuery(condition);
+        Query query = prepare(session.createQuery(condition));
         return ((Object) query.uniqueResult());
     }
 
@@ -257,7 +1012,7 @@ public class Dao<T> implements Serializable {
      */
     @SuppressWarnings("unchecked")
     protected Object getValueByHQLCondition(String condition, List paramList, String paramListName) throws Exception {
-        Query query = session.createQuery(condition).setParameterList(paramListName, paramList);
+        Query query = prepare(session.createQuery(condition)).setParameterList(paramListName, paramList);
         return ((Object) query.uniqueResult());
     }
     
@@ -271,34 +1026,145 @@ public class Dao<T> implements Serializable {
      * @return Componente SearchPaginate contendo a lista páginada e a quantidade total de registros daquela tabela
      * @throws Exception 
      */
-    @SuppressWarnings("unchecked")
     protected SearchPaginate findPaginate(T filter, int firstResult, int maxResult, String sortField, boolean orderByType) throws Exception {
+        return this.findPaginate(filter, firstResult, maxResult, sortField, orderByType, this.fetchPlan);
+    }
+
+    /**
+     * Realiza uma consulta paginada com filtro passado por parametro, carregando as associações
+     * da página de acordo com o plano informado
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param firstResult Número da página que a consulta irá mostrar os resultados
+     * @param maxResult Número de registros por página
+     * @param sortField Nome do atributo da entidade que será ordenado
+     * @param orderByType Tipo de ordenação da Lista, os valores devem ser Controller.ORDER_ASC ou Controller.ORDER_DESC
+     * @param fetchPlan Plano de carga das associações, ou null para manter o mapeamento da entidade
+     * @return Componente SearchPaginate contendo a lista páginada e a quantidade total de registros daquela tabela
+     * @throws Exception 
+     */
+    protected SearchPaginate findPaginate(T filter, int firstResult, int maxResult, String sortField, boolean orderByType, FetchPlan fetchPlan) throws Exception {
+        return this.findPaginate(filter, firstResult, maxResult, sortField, orderByType, fetchPlan, false);
+    }
+
+    /**
+     * Realiza uma consulta paginada com filtro passado por parametro, podendo executar a consulta do total
+     * de registros em paralelo, em outra sessão, enquanto a página é consultada nesta sessão
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param firstResult Número da página que a consulta irá mostrar os resultados
+     * @param maxResult Número de registros por página
+     * @param sortField Nome do atributo da entidade que será ordenado
+     * @param orderByType Tipo de ordenação da Lista, os valores devem ser Controller.ORDER_ASC ou Controller.ORDER_DESC
+     * @param fetchPlan Plano de carga das associações, ou null para manter o mapeamento da entidade
+     * @param parallelCount true para consultar o total de registros em paralelo. Não deve ser usado dentro de
+     * uma transação com alterações, pois a outra sessão não enxerga os registros ainda não confirmados
+     * @return Componente SearchPaginate contendo a lista páginada e a quantidade total de registros daquela tabela
+     * @throws Exception 
+     */
+    protected SearchPaginate findPaginate(T filter, int firstResult, int maxResult, String sortField, boolean orderByType, FetchPlan fetchPlan, boolean parallelCount) throws Exception {
 
         SearchPaginate searchPaginate = new SearchPaginate();
 
+        if (!parallelCount) {
+            // Pega o total de registros da pesquisa
+            searchPaginate.setRowCount(this.rowCount(session, filter));
+
+            while (searchPaginate.getRowCount() < firstResult) {
+                firstResult = firstResult - maxResult;
+            }
+
+            searchPaginate.setListResult(this.findPage(filter, firstResult, maxResult, sortField, null, orderByType, fetchPlan));
+            return searchPaginate;
+        }
+
+        // Pega o total de registros em outra sessão enquanto a página é consultada
+        Future<Integer> count = this.submitRowCount(filter);
+        List<T> page;
+        try {
+            page = this.findPage(filter, firstResult, maxResult, sortField, null, orderByType, fetchPlan);
+        } catch (RuntimeException e) {
+            // A página falhou, a contagem não é mais necessária
+            count.cancel(false);
+            throw e;
+        }
+        try {
+            searchPaginate.setRowCount(count.get());
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+
+        // A página pedida passou do total de registros, consulta novamente a última página
+        if (searchPaginate.getRowCount() < firstResult) {
+            while (searchPaginate.getRowCount() < firstResult) {
+                firstResult = firstResult - maxResult;
+            }
+            page = this.findPage(filter, firstResult, maxResult, sortField, null, orderByType, fetchPlan);
+        }
+        searchPaginate.setListResult(page);
+
+        return searchPaginate;
+    }
+
+    /**
+     * Consulta o total de registros filtrados na sessão informada
+     * @param session Sessão hibernate usada na consulta
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @return Quantidade de registros
+     */
+    private int rowCount(Session session, T filter) {
         Example example = Example.create(filter).excludeZeroes() //exclude zero valued properties
                 .ignoreCase().enableLike(MatchMode.ANYWHERE);   //use like for string comparisons
 
-
-        // Pega o total de registros da pesquisa
-        Criteria criteriaCount = BuildCriteria.createCriteria(filter, session, Controller.SEARCH_LIKE_STRING).add(example).setProjection(Projections.rowCount());
+        Criteria criteriaCount = prepare(BuildCriteria.createCriteria(filter, session, Controller.SEARCH_LIKE_STRING)).add(example).setProjection(Projections.rowCount());
 
         Object count = criteriaCount.uniqueResult();
-        if (count != null) {
-            if (count instanceof Long){
-                int countInt = ((Long) count).intValue();
-                searchPaginate.setRowCount(countInt);
-            }else{
-                searchPaginate.setRowCount((Integer) count);
+        return count == null ? 0 : ((Number) count).intValue();
+    }
+
+    /**
+     * Consulta o total de registros filtrados em uma nova sessão, somente leitura, executada em outra thread
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @return Future com a quantidade de registros
+     */
+    private Future<Integer> submitRowCount(final T filter) {
+        return getExecutor().submit(new Callable<Integer>() {
+            public Integer call() throws Exception {
+                Session countSession = session.getSessionFactory().openSession();
+                try {
+                    countSession.setDefaultReadOnly(true);
+                    countSession.setFlushMode(FlushMode.MANUAL);
+                    return rowCount(countSession, filter);
+                } finally {
+                    countSession.close();
+                }
             }
-        }
+        });
+    }
 
-        while (searchPaginate.getRowCount() < firstResult) {
-            firstResult = firstResult - maxResult;
-        }
+    /**
+     * Consulta os primeiros registros filtrados ordenados pelo atributo informado e, nos valores
+     * repetidos, pela chave primária, para que consultas com limites diferentes concordem na ordem.
+     * Usado por ShardedController para unir as páginas dos shards
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param maxResult Quantidade de registros
+     * @param sortField Nome do atributo da entidade que será ordenado
+     * @param idName Nome do atributo da chave primária
+     * @param orderByType Tipo de ordenação da Lista, os valores devem ser Controller.ORDER_ASC ou Controller.ORDER_DESC
+     * @return Lista de objetos encontrados na consulta
+     */
+    List<T> findFirst(T filter, int maxResult, String sortField, String idName, boolean orderByType) {
+        return this.findPage(filter, 0, maxResult, sortField, sortField.equals(idName) ? null : idName, orderByType, this.fetchPlan);
+    }
+
+    /**
+     * Consulta uma página dos registros filtrados nesta sessão
+     */
+    @SuppressWarnings("unchecked")
+    private List<T> findPage(T filter, int firstResult, int maxResult, String sortField, String thenField, boolean orderByType, FetchPlan fetchPlan) {
+        Example example = Example.create(filter).excludeZeroes() //exclude zero valued properties
+                .ignoreCase().enableLike(MatchMode.ANYWHERE);   //use like for string comparisons
 
         //Efetua a pesquisa parametrizada e paginada
-        Criteria criteria = BuildCriteria.createCriteria(filter, session, Controller.SEARCH_LIKE_STRING).
+        Criteria criteria = prepare(BuildCriteria.createCriteria(filter, session, Controller.SEARCH_LIKE_STRING)).
                                         setFirstResult(firstResult).
                                         setMaxResults(maxResult).
                                         add(example);
@@ -306,10 +1172,79 @@ public class Dao<T> implements Serializable {
         if (sortField != null && !sortField.equals("")) {
             criteria.addOrder(orderByType ? Order.asc(sortField) : Order.desc(sortField));
         }
+        if (thenField != null) {
+            criteria.addOrder(orderByType ? Order.asc(thenField) : Order.desc(thenField));
+        }
 
-        searchPaginate.setListResult(criteria.list());
+        if (fetchPlan == null) {
+            return this.track((List<T>) criteria.list());
+        }
+        List<T> list = fetchPlan.apply(criteria).list();
+        fetchPlan.initialize(session, filter.getClass(), list, this.readOnly);
+        return this.track(list);
+    }
 
-        return searchPaginate;
+    /**
+     * Retorna o executor das consultas paralelas, criado no primeiro uso com no máximo PARALLEL_THREADS
+     * threads daemon, encerradas quando ficam sem uso
+     * @return ExecutorService
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(PARALLEL_THREADS, PARALLEL_THREADS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger sequence = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "jbc-query-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+
+    /**
+     * Percorre com um cursor os registros filtrados cuja chave primária está na faixa informada,
+     * acumulando cada entidade no combiner. A sessão é limpa periodicamente para que a memória
+     * não cresça com a quantidade de registros
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param idName Nome do atributo da chave primária
+     * @param lo Menor chave primária da faixa
+     * @param hi Maior chave primária da faixa
+     * @param combiner Acumulador das entidades
+     * @return Resultado acumulado da faixa
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    protected <R> R scanRange(T filter, String idName, Number lo, Number hi, ScanCombiner<T, R> combiner) throws Exception {
+        Example example = Example.create(filter).excludeZeroes() //exclude zero valued properties
+                .ignoreCase().enableLike(MatchMode.ANYWHERE);   //use like for string comparisons
+
+        Criteria criteria = prepare(BuildCriteria.createCriteria(filter, session, Controller.SEARCH_LIKE_STRING))
+                .add(example)
+                .add(Restrictions.ge(idName, lo))
+                .add(Restrictions.le(idName, hi))
+                .addOrder(Order.asc(idName))
+                .setFetchSize(SCAN_CLEAR_INTERVAL);
+
+        R result = combiner.initial();
+        ScrollableResults results = criteria.scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            int count = 0;
+            while (results.next()) {
+                result = combiner.accumulate(result, (T) results.get(0));
+                if (++count % SCAN_CLEAR_INTERVAL == 0) {
+                    session.clear();
+                }
+            }
+        } finally {
+            results.close();
+        }
+        return result;
     }
 
     /**
@@ -320,11 +1255,31 @@ public class Dao<T> implements Serializable {
      */
     protected Number getMax(T filter, String field) {
 
-        Criteria c = session.createCriteria(filter.getClass());
+        Criteria c = prepare(session.createCriteria(filter.getClass()));
         c.setProjection(Projections.max(field));
         return (Number) c.uniqueResult();
     }
 
+    /**
+     * Menor e maior chave primária dos registros filtrados, com os mesmos critérios de scanRange,
+     * em uma única consulta
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param idName Nome do atributo da chave primária
+     * @return Vetor com a menor e a maior chave, ou com nulos quando nenhum registro atender ao filtro
+     */
+    protected Number[] getIdBounds(T filter, String idName) {
+        Example example = Example.create(filter).excludeZeroes() //exclude zero valued properties
+                .ignoreCase().enableLike(MatchMode.ANYWHERE);   //use like for string comparisons
+
+        Criteria criteria = prepare(BuildCriteria.createCriteria(filter, session, Controller.SEARCH_LIKE_STRING))
+                .add(example)
+                .setProjection(Projections.projectionList()
+                        .add(Projections.min(idName))
+                        .add(Projections.max(idName)));
+        Object[] row = (Object[]) criteria.uniqueResult();
+        return row == null ? new Number[2] : new Number[]{(Number) row[0], (Number) row[1]};
+    }
+
     /**
      * metodo que retornar o valor minimo de acordo com o campo da tabela
      * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
@@ -333,7 +1288,7 @@ public class Dao<T> implements Serializable {
      */
     protected Number getMin(T filter, String field) {
 
-        Criteria c = session.createCriteria(filter.getClass());
+        Criteria c = prepare(session.createCriteria(filter.getClass()));
         c.setProjection(Projections.min(field));
         return (Number) c.uniqueResult();
     }
@@ -351,11 +1306,11 @@ public class Dao<T> implements Serializable {
                 .ignoreCase().enableLike(MatchMode.ANYWHERE);   //use like for string comparisons
 
         // Pega o total de registros da pesquisa
-        Criteria criteriaCount = BuildCriteria.createCriteria(filter, session, Controller.SEARCH_LIKE_STRING).add(example).setProjection(Projections.rowCount());
+        Criteria criteriaCount = prepare(BuildCriteria.createCriteria(filter, session, Controller.SEARCH_LIKE_STRING)).add(example).setProjection(Projections.rowCount());
 
         List resultCount = criteriaCount.list();
         if (!resultCount.isEmpty()) {
-            return (Integer) resultCount.get(0);
+            return ((Number) resultCount.get(0)).intValue();
         } else {
             return 0;
         }
@@ -1,12 +1,21 @@
 package br.com.jbc.controller;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.hibernate.exception.ConstraintViolationException;
 
 import br.com.jbc.util.SearchPaginate;
+import br.com.jbc.db.FetchPlan;
+import br.com.jbc.db.HibernateUtil;
 import br.com.jbc.db.Transaction;
 import br.com.jbc.util.JBCException;
+import br.com.jbc.util.LongIdSet;
+import br.com.jbc.util.RowEncoder;
+import java.nio.channels.WritableByteChannel;
 import java.io.Serializable;
 
 /**
@@ -16,14 +25,236 @@ import java.io.Serializable;
  */
 public class Facade<T> implements Serializable{
 
+    /**
+     * Transação da thread que criou o Facade. Com clientes (tenants) configurados ela pode não ser
+     * a do cliente da operação atual, use getTransaction
+     * @deprecated Use getTransaction, resolvida a cada operação
+     */
+    @Deprecated
     protected final Transaction factory;
+    
+    /**
+     * Dao com a configuração deste Facade. Cada operação usa getDao, que o copia para a sessão
+     * do cliente atual quando ela for outra
+     */
     protected Dao<T> dao;
+    
+    /**
+     * Indica se as consultas devem ser executadas em modo somente leitura
+     */
+    private boolean readOnly;
+    
+    /**
+     * Modo somente leitura definido por Controller.withReadOnly para as consultas da thread atual,
+     * que prevalece sobre o modo de cada Facade, ou null quando não houver
+     */
+    private static final ThreadLocal<Boolean> readOnlyScope = new ThreadLocal<Boolean>();
+    
+    /**
+     * Indica se findPaginate consulta o total de registros em paralelo com a página
+     */
+    private boolean parallelPaginate;
+    
+    /**
+     * Indica se as partes de uma lista de parametros grande são consultadas em paralelo
+     */
+    private boolean parallelInList;
 
     protected Facade() {
         factory = Transaction.getInstance();
         dao = new Dao<T>(factory.getSession());
     }
 
+    /**
+     * Retorna a transação do cliente da operação atual. Com clientes (tenants) configurados a
+     * transação muda conforme o TenantResolver e é recriada quando o cliente fica sem uso, por
+     * isso é obtida a cada operação e não guardada no Facade
+     * @return Transaction
+     */
+    protected Transaction getTransaction() {
+        return Transaction.getInstance();
+    }
+
+    /**
+     * Retorna o Dao deste Facade na sessão da transação informada
+     * @param transaction Transação da operação atual
+     * @return Dao
+     */
+    protected Dao<T> getDao(Transaction transaction) {
+        Session session = transaction.getSession();
+        return this.dao.getSession() == session ? this.dao : this.dao.withSession(session);
+    }
+
+    /**
+     * Define se as consultas devem ser executadas em modo somente leitura
+     * @param readOnly true para consultas somente leitura
+     */
+    protected void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+        this.dao.setReadOnly(readOnly);
+    }
+
+    /**
+     * Modo somente leitura da thread atual definido por Controller.withReadOnly
+     * @return Modo da thread, ou null quando não houver
+     */
+    static Boolean getReadOnlyScope() {
+        return readOnlyScope.get();
+    }
+
+    /**
+     * Define o modo somente leitura das consultas da thread atual
+     * @param readOnly Modo da thread, ou null para voltar ao modo de cada Facade
+     */
+    static void setReadOnlyScope(Boolean readOnly) {
+        if (readOnly == null) {
+            readOnlyScope.remove();
+        } else {
+            readOnlyScope.set(readOnly);
+        }
+    }
+
+    /**
+     * Modo somente leitura da consulta atual, o da thread quando houver, ou o deste Facade
+     * @return true para consultas somente leitura
+     */
+    private boolean isReadOnly() {
+        Boolean scoped = readOnlyScope.get();
+        return scoped != null ? scoped.booleanValue() : this.readOnly;
+    }
+
+    /**
+     * Dao da leitura na sessão informada, com o modo somente leitura da consulta atual
+     */
+    private Dao<T> readDao(Dao<T> dao, Session session) {
+        boolean readOnly = this.isReadOnly();
+        if (dao.isReadOnly() == readOnly && dao.getSession() == session) {
+            return dao;
+        }
+        Dao<T> readDao = dao.withSession(session);
+        readDao.setReadOnly(readOnly);
+        return readDao;
+    }
+
+    /**
+     * Define se findPaginate consulta o total de registros em paralelo com a página
+     * @param parallelPaginate true para consultas em paralelo
+     */
+    protected void setParallelPaginate(boolean parallelPaginate) {
+        this.parallelPaginate = parallelPaginate;
+    }
+
+    /**
+     * Define se as partes de uma lista de parametros grande são consultadas em paralelo
+     * @param parallelInList true para consultas em paralelo
+     */
+    protected void setParallelInList(boolean parallelInList) {
+        this.parallelInList = parallelInList;
+    }
+
+    /**
+     * Define se insertOrUpdate grava com o upsert nativo do banco de dados em vez de merge
+     * @param nativeUpsert true para gravar com upsert
+     */
+    protected void setNativeUpsert(boolean nativeUpsert) {
+        this.dao.setNativeUpsert(nativeUpsert);
+    }
+
+    /**
+     * Define se insert inclui as entidades com persist, deixando o flush para o commit
+     * @param fastInsert true para a inclusão rápida
+     */
+    protected void setFastInsert(boolean fastInsert) {
+        this.dao.setFastInsert(fastInsert);
+    }
+
+    /**
+     * Define se as entidades lidas são acompanhadas para que update grave somente os atributos alterados
+     * @param changeTracking true para acompanhar as alterações
+     */
+    protected void setChangeTracking(boolean changeTracking) {
+        this.dao.setChangeTracking(changeTracking);
+    }
+
+    /**
+     * Define o plano de carga padrão das associações em findList e findPaginate
+     * @param fetchPlan Plano de carga, ou null para manter o mapeamento da entidade
+     */
+    protected void setFetchPlan(FetchPlan fetchPlan) {
+        this.dao.setFetchPlan(fetchPlan);
+    }
+
+    /**
+     * Inicia uma transação somente leitura para a consulta quando o modo estiver ativo e
+     * não houver uma transação em andamento
+     * @return true se a transação foi iniciada por este método
+     */
+    private boolean beginReadOnly(Transaction transaction) {
+        if (this.isReadOnly() && !transaction.hasTransaction()) {
+            transaction.beginReadOnlyTransaction();
+            return transaction.hasTransaction();
+        }
+        return false;
+    }
+
+    /**
+     * Encerra a transação somente leitura iniciada por beginReadOnly
+     * @param transaction Transação informada em beginReadOnly
+     * @param started Valor retornado por beginReadOnly
+     */
+    private void endReadOnly(Transaction transaction, boolean started) {
+        if (started) {
+            transaction.endReadOnlyTransaction();
+        }
+    }
+
+    /**
+     * Inicia uma leitura. Fora de uma transação a leitura é feita em uma réplica, quando houver
+     * réplicas configuradas em HibernateUtil, e senão na sessão principal com a transação somente
+     * leitura quando o modo estiver ativo. Dentro de uma transação ou unidade de trabalho a leitura
+     * é sempre feita no banco principal. A sessão da réplica é aberta para a leitura e fechada por
+     * endRead, portanto as entidades lidas em uma réplica voltam desligadas da sessão e as suas
+     * associações lazy que não foram carregadas na consulta não podem mais ser lidas
+     * @param clear true para limpar a sessão antes da leitura
+     * @return Leitura com o Dao que deve ser usado
+     */
+    private Read<T> beginRead(boolean clear) {
+        Transaction transaction = this.getTransaction();
+        if (!transaction.hasTransaction()) {
+            int replica = HibernateUtil.getInstance().beginReplicaRead();
+            if (replica >= 0) {
+                Session session;
+                try {
+                    session = HibernateUtil.getInstance().openReplicaSession(replica);
+                } catch (RuntimeException e) {
+                    HibernateUtil.getInstance().endReplicaRead(replica);
+                    throw e;
+                }
+                return new Read<T>(this.readDao(this.dao, session), transaction, session, replica, false);
+            }
+        }
+        if (clear) {
+            transaction.getSession().clear();
+        }
+        return new Read<T>(this.readDao(this.dao, transaction.getSession()), transaction, null, -1, this.beginReadOnly(transaction));
+    }
+
+    /**
+     * Encerra a leitura iniciada por beginRead
+     * @param read Leitura
+     */
+    private void endRead(Read<T> read) {
+        if (read.replica >= 0) {
+            try {
+                read.replicaSession.close();
+            } finally {
+                HibernateUtil.getInstance().endReplicaRead(read.replica);
+            }
+        } else {
+            this.endReadOnly(read.transaction, read.readOnlyTransaction);
+        }
+    }
+
     /**
      * Insere um registro em uma determinada tabela
      * @param obj Objeto VO de persistência
@@ -32,8 +263,24 @@ public class Facade<T> implements Serializable{
      * @throws ConstraintViolationException
      */
     protected Boolean insert(T obj) throws Exception, ConstraintViolationException {
-        if (factory.hasTransaction()) {
-            return dao.insert(obj);
+        Transaction transaction = this.getTransaction();
+        if (transaction.hasTransaction()) {
+            return this.getDao(transaction).insert(obj);
+        } else {
+            throw new JBCException(JBCException.SEM_TRANSACAO);
+        }
+    }
+
+    /**
+     * Insere uma lista de registros novos com persist
+     * @param objList Lista de Objetos VO de persistência
+     * @return Boolean.True para transação com sucesso e Boolean.False para transação com Rollback
+     * @throws Exception
+     */
+    protected Boolean insert(List<T> objList) throws Exception {
+        Transaction transaction = this.getTransaction();
+        if (transaction.hasTransaction()) {
+            return this.getDao(transaction).insert(objList);
         } else {
             throw new JBCException(JBCException.SEM_TRANSACAO);
         }
@@ -46,8 +293,24 @@ public class Facade<T> implements Serializable{
      * @throws Exception
      */
     protected Boolean insertOrUpdate(T obj) throws Exception {
-        if (factory.hasTransaction()) {
-            return dao.insertOrUpdate(obj);
+        Transaction transaction = this.getTransaction();
+        if (transaction.hasTransaction()) {
+            return this.getDao(transaction).insertOrUpdate(obj);
+        } else {
+            throw new JBCException(JBCException.SEM_TRANSACAO);
+        }
+    }
+
+    /**
+     * Insere ou atualiza uma lista de registros em uma única gravação
+     * @param objList Lista de Objetos VO de persistência
+     * @return Boolean.True para transação com sucesso e Boolean.False para transação com Rollback
+     * @throws Exception
+     */
+    protected Boolean insertOrUpdate(List<T> objList) throws Exception {
+        Transaction transaction = this.getTransaction();
+        if (transaction.hasTransaction()) {
+            return this.getDao(transaction).insertOrUpdate(objList);
         } else {
             throw new JBCException(JBCException.SEM_TRANSACAO);
         }
@@ -60,8 +323,9 @@ public class Facade<T> implements Serializable{
      * @throws Exception
      */
     protected T insertReturnId(T obj) throws Exception, ConstraintViolationException {
-        if (factory.hasTransaction()) {
-            return dao.insertReturnId(obj);
+        Transaction transaction = this.getTransaction();
+        if (transaction.hasTransaction()) {
+            return this.getDao(transaction).insertReturnId(obj);
         } else {
             throw new JBCException(JBCException.SEM_TRANSACAO);
         }
@@ -74,8 +338,9 @@ public class Facade<T> implements Serializable{
      * @throws Exception
      */
     protected Boolean update(T obj) throws Exception {
-        if (factory.hasTransaction()) {
-            return dao.update(obj);
+        Transaction transaction = this.getTransaction();
+        if (transaction.hasTransaction()) {
+            return this.getDao(transaction).update(obj);
         } else {
             throw new JBCException(JBCException.SEM_TRANSACAO);
         }
@@ -88,8 +353,9 @@ public class Facade<T> implements Serializable{
      * @throws Exception
      */
     protected Boolean delete(T obj) throws Exception {
-        if (factory.hasTransaction()) {
-            dao.delete(obj);
+        Transaction transaction = this.getTransaction();
+        if (transaction.hasTransaction()) {
+            this.getDao(transaction).delete(obj);
             return true;
         } else {
             throw new JBCException(JBCException.SEM_TRANSACAO);
@@ -103,8 +369,12 @@ public class Facade<T> implements Serializable{
      * @throws Exception 
      */
     protected List<T> findList(T filter) throws Exception {
-        this.factory.getSession().clear();
-        return dao.findList(filter);
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.findList(filter);
+        } finally {
+            this.endRead(read);
+        }
     }
 
     /**
@@ -115,8 +385,82 @@ public class Facade<T> implements Serializable{
      * @throws Exception 
      */
     protected List<T> findList(T filter, int searchType) throws Exception {
-        this.factory.getSession().clear();
-        return dao.findList(filter, searchType);
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.findList(filter, searchType);
+        } finally {
+            this.endRead(read);
+        }
+    }
+
+    /**
+     * Lista os registro de uma determinada tabela carregando as associações de acordo com o plano informado
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param fetchPlan Plano de carga das associações
+     * @return Lista de objetos encontrados na consulta
+     * @throws Exception 
+     */
+    protected List<T> findList(T filter, FetchPlan fetchPlan) throws Exception {
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.findList(filter, Controller.SEARCH_LIKE_STRING, fetchPlan);
+        } finally {
+            this.endRead(read);
+        }
+    }
+
+    /**
+     * Lista somente os atributos informados dos registros de uma determinada tabela,
+     * convertendo cada linha em um objeto DTO através do seu construtor
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param dto Classe que receberá os valores, com um construtor na mesma ordem dos atributos
+     * @param properties Atributos da entidade que serão consultados, podendo ser de associações como "cidade.nome"
+     * @return Lista de objetos DTO encontrados na consulta
+     * @throws Exception 
+     */
+    protected <R> List<R> findProjected(T filter, Class<R> dto, String... properties) throws Exception {
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.findProjected(filter, dto, properties);
+        } finally {
+            this.endRead(read);
+        }
+    }
+
+    /**
+     * Exporta somente os atributos informados dos registros filtrados, escrevendo cada linha no canal à medida que é lida
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param encoder Codificador das linhas, como CsvEncoder ou JsonEncoder
+     * @param channel Canal de destino, que continua aberto
+     * @param properties Atributos da entidade que serão exportados, podendo ser de associações como "cidade.nome"
+     * @return Quantidade de linhas exportadas
+     * @throws Exception 
+     */
+    protected long export(T filter, RowEncoder encoder, WritableByteChannel channel, String... properties) throws Exception {
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.export(filter, encoder, channel, properties);
+        } finally {
+            this.endRead(read);
+        }
+    }
+
+    /**
+     * Exporta o resultado de uma consulta HQL, escrevendo cada linha no canal à medida que é lida
+     * @param condition Consulta HQL, normalmente com select dos atributos exportados
+     * @param encoder Codificador das linhas, como CsvEncoder ou JsonEncoder
+     * @param channel Canal de destino, que continua aberto
+     * @param columns Nomes das colunas, na ordem do select
+     * @return Quantidade de linhas exportadas
+     * @throws Exception 
+     */
+    protected long exportHQL(String condition, RowEncoder encoder, WritableByteChannel channel, String... columns) throws Exception {
+        Read<T> read = this.beginRead(false);
+        try {
+            return read.dao.exportHQL(condition, encoder, channel, columns);
+        } finally {
+            this.endRead(read);
+        }
     }
 
     /**
@@ -126,8 +470,12 @@ public class Facade<T> implements Serializable{
      * @throws Exception 
      */
     protected T find(T filter) throws Exception {
-        this.factory.getSession().clear();
-        return dao.find(filter);
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.find(filter);
+        } finally {
+            this.endRead(read);
+        }
     }
 
     /**
@@ -138,20 +486,35 @@ public class Facade<T> implements Serializable{
      * @throws Exception 
      */
     protected T find(T filter, int searchType) throws Exception {
-        this.factory.getSession().clear();
-        return dao.find(filter, searchType);
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.find(filter, searchType);
+        } finally {
+            this.endRead(read);
+        }
     }
 
     /**
-     * Procura um registro por um ID
+     * Procura um registro por um ID. Na sessão principal o registro é carregado no primeiro acesso;
+     * em uma réplica ele é carregado antes de a sessão ser fechada, e um ID inexistente lança
+     * ObjectNotFoundException já nesta chamada
      * @param id Chave primária da entidade
      * @return Objeto encontrado na consulta
      * @throws Exception
      */
     protected T findById(Class clazz, Number id) throws Exception {
 
-        T t = (T) dao.findById(clazz, id);
-        return t;
+        Read<T> read = this.beginRead(false);
+        try {
+            T t = (T) read.dao.findById(clazz, id);
+            if (read.replica >= 0) {
+                // O proxy de load não poderia ser carregado depois que endRead fechar a sessão da réplica
+                Hibernate.initialize(t);
+            }
+            return t;
+        } finally {
+            this.endRead(read);
+        }
     }
 
     /**
@@ -161,8 +524,12 @@ public class Facade<T> implements Serializable{
      * @throws Exception
      */
     protected List<T> getListByHQLCondition(String condition) throws Exception {
-        this.factory.getSession().clear();
-        return dao.getListByHQLCondition(condition);
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.getListByHQLCondition(condition);
+        } finally {
+            this.endRead(read);
+        }
     }
 
     /**
@@ -174,8 +541,12 @@ public class Facade<T> implements Serializable{
      * @throws Exception 
      */
     protected List<T> getListByHQLCondition(String condition, List paramList, String paramListName) throws Exception {
-        this.factory.getSession().clear();
-        return dao.getListByHQLCondition(condition, paramList, paramListName);
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.getListByHQLCondition(condition, paramList, paramListName);
+        } finally {
+            this.endRead(read);
+        }
     }
 
     /**
@@ -187,8 +558,12 @@ public class Facade<T> implements Serializable{
      * @throws Exception 
      */
     protected List<T> getListByHQLCondition(String condition, int firstResult, int maxResult) throws Exception {
-        this.factory.getSession().clear();
-        return dao.getListByHQLCondition(condition, firstResult, maxResult);
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.getListByHQLCondition(condition, firstResult, maxResult);
+        } finally {
+            this.endRead(read);
+        }
     }
 
     /**
@@ -202,8 +577,68 @@ public class Facade<T> implements Serializable{
      * @throws Exception 
      */
     protected List<T> getListByHQLCondition(String condition, List paramList, String paramListName, int firstResult, int maxResult) throws Exception {
-        this.factory.getSession().clear();
-        return dao.getListByHQLCondition(condition, paramList, paramListName, firstResult, maxResult);
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.getListByHQLCondition(condition, paramList, paramListName, firstResult, maxResult);
+        } finally {
+            this.endRead(read);
+        }
+    }
+
+    /**
+     * Busca as chaves primárias retornadas por uma condição HQL, como "select p.id from Pessoa p where ...",
+     * sem montar uma List de Long
+     * @param condition Condição HQL com uma única coluna numérica no select
+     * @return Chaves encontradas, em ordem crescente e sem repetições
+     * @throws Exception
+     */
+    protected LongIdSet getIdsByHQLCondition(String condition) throws Exception {
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.getIdsByHQLCondition(condition);
+        } finally {
+            this.endRead(read);
+        }
+    }
+
+    /**
+     * Busca as chaves primárias retornadas por uma condição HQL com uma lista de parametros
+     * @param condition Condição HQL com uma única coluna numérica no select
+     * @param paramList Lista de parametros passada para a Query HQL, podendo ser um LongIdSet
+     * @param paramListName Nome da lista de parametros
+     * @return Chaves encontradas, em ordem crescente e sem repetições
+     * @throws Exception 
+     */
+    protected LongIdSet getIdsByHQLCondition(String condition, List paramList, String paramListName) throws Exception {
+        // Uma transação com alterações não é visível para as sessões das outras partes
+        boolean parallel = this.parallelInList && !this.getTransaction().hasTransaction();
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.getIdsByHQLCondition(condition, paramList, paramListName, parallel);
+        } finally {
+            this.endRead(read);
+        }
+    }
+
+    /**
+     * Busca as chaves primárias retornadas por uma consulta SQL nativa com uma lista de chaves como
+     * parametro, como "select id from pessoa where cidade_id in (:cidades)". As chaves são passadas
+     * ao JDBC com setLong e lidas com getLong, sem conversão para Long
+     * @param sql Consulta SQL com uma única coluna numérica no select
+     * @param paramList Chaves passadas no lugar do parametro, não pode ser vazia
+     * @param paramListName Nome do parametro, usado na consulta como :nome
+     * @return Chaves encontradas, em ordem crescente e sem repetições
+     * @throws Exception 
+     */
+    protected LongIdSet getIdsBySQLCondition(String sql, LongIdSet paramList, String paramListName) throws Exception {
+        // Uma transação com alterações não é visível para as sessões das outras partes
+        boolean parallel = this.parallelInList && !this.getTransaction().hasTransaction();
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.getIdsBySQLCondition(sql, paramList, paramListName, parallel);
+        } finally {
+            this.endRead(read);
+        }
     }
 
     /**
@@ -213,8 +648,12 @@ public class Facade<T> implements Serializable{
      * @throws Exception
      */
     protected T getObjectByHQLCondition(String condition) throws Exception {
-        this.factory.getSession().clear();
-        return dao.getObjectByHQLCondition(condition);
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.getObjectByHQLCondition(condition);
+        } finally {
+            this.endRead(read);
+        }
     }
 
     /**
@@ -225,8 +664,12 @@ public class Facade<T> implements Serializable{
      * @throws Exception
      */
     protected Object getValueByHQLCondition(String condition) throws Exception {
-        this.factory.getSession().clear();
-        return dao.getValueByHQLCondition(condition);
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.getValueByHQLCondition(condition);
+        } finally {
+            this.endRead(read);
+        }
     }
 
      /**
@@ -239,8 +682,12 @@ public class Facade<T> implements Serializable{
      * @throws Exception
      */
     protected Object getValueByHQLCondition(String condition, List paramList, String paramListName) throws Exception {
-        this.factory.getSession().clear();
-        return dao.getValueByHQLCondition(condition, paramList, paramListName);
+        Read<T> read = this.beginRead(true);
+        try {
+            return read.dao.getValueByHQLCondition(condition, paramList, paramListName);
+        } finally {
+            this.endRead(read);
+        }
     }
 
     /**
@@ -255,7 +702,86 @@ public class Facade<T> implements Serializable{
      */
     protected SearchPaginate findPaginate(T filter, int firstResult, int maxResult, String sortField, boolean orderByType) throws Exception {
 
-        return dao.findPaginate(filter, firstResult, maxResult, sortField, orderByType);
+        // Uma transação com alterações não é visível para a sessão da contagem
+        boolean parallelCount = this.parallelPaginate && !this.getTransaction().hasTransaction();
+        Read<T> read = this.beginRead(false);
+        try {
+            return read.dao.findPaginate(filter, firstResult, maxResult, sortField, orderByType, read.dao.getFetchPlan(), parallelCount);
+        } finally {
+            this.endRead(read);
+        }
+    }
+
+    /**
+     * Realiza uma consulta paginada com filtro passado por parametro, carregando as associações
+     * da página de acordo com o plano informado
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param firstResult Número da página que a consulta irá mostrar os resultados
+     * @param maxResult Número de registros por página
+     * @param sortField Nome do atributo da entidade que será ordenado
+     * @param orderByType Tipo de ordenação da Lista, os valores devem ser Controller.ORDER_ASC ou Controller.ORDER_DESC
+     * @param fetchPlan Plano de carga das associações
+     * @return Componente SearchPaginate contendo a lista páginada e a quantidade total de registros daquela tabela
+     * @throws Exception 
+     */
+    protected SearchPaginate findPaginate(T filter, int firstResult, int maxResult, String sortField, boolean orderByType, FetchPlan fetchPlan) throws Exception {
+
+        // Uma transação com alterações não é visível para a sessão da contagem
+        boolean parallelCount = this.parallelPaginate && !this.getTransaction().hasTransaction();
+        Read<T> read = this.beginRead(false);
+        try {
+            return read.dao.findPaginate(filter, firstResult, maxResult, sortField, orderByType, fetchPlan, parallelCount);
+        } finally {
+            this.endRead(read);
+        }
+    }
+
+    /**
+     * Consulta os registros filtrados dividindo a chave primária em faixas, cada uma lida em
+     * paralelo por uma sessão própria, e acumula o resultado com o combiner
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param partitions Quantidade de partições, e de sessões, usadas na consulta
+     * @param combiner Acumulador das entidades de cada partição
+     * @return Resultado unido de todas as partições
+     * @throws Exception
+     */
+    protected <R> R findPartitioned(T filter, int partitions, ScanCombiner<T, R> combiner) throws Exception {
+        SessionFactory sessionFactory = this.getTransaction().getSession().getSessionFactory();
+        String idName = sessionFactory.getClassMetadata(filter.getClass()).getIdentifierPropertyName();
+        Number[] bounds;
+        Read<T> read = this.beginRead(true);
+        try {
+            bounds = read.dao.getIdBounds(filter, idName);
+        } finally {
+            this.endRead(read);
+        }
+        return new PartitionedScan<T>(sessionFactory, filter, idName, combiner).<R>execute(bounds[0], bounds[1], partitions);
+    }
+
+    /**
+     * Lista os registros filtrados dividindo a chave primária em faixas lidas em paralelo,
+     * retornando as entidades na ordem da chave primária
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param partitions Quantidade de partições, e de sessões, usadas na consulta
+     * @return Lista de objetos encontrados na consulta, desanexados da sessão
+     * @throws Exception
+     */
+    protected List<T> findListPartitioned(T filter, int partitions) throws Exception {
+        return this.findPartitioned(filter, partitions, new ScanCombiner<T, List<T>>() {
+            public List<T> initial() {
+                return new ArrayList<T>();
+            }
+
+            public List<T> accumulate(List<T> result, T entity) {
+                result.add(entity);
+                return result;
+            }
+
+            public List<T> combine(List<T> left, List<T> right) {
+                left.addAll(right);
+                return left;
+            }
+        });
     }
 
     /**
@@ -266,7 +792,12 @@ public class Facade<T> implements Serializable{
      */
     protected Number getMax(T filter, String field){
 
-        return dao.getMax(filter, field);
+        Read<T> read = this.beginRead(false);
+        try {
+            return read.dao.getMax(filter, field);
+        } finally {
+            this.endRead(read);
+        }
     }
 
     /**
@@ -277,7 +808,12 @@ public class Facade<T> implements Serializable{
      */
     protected Number getMin(T filter, String field){
 
-        return dao.getMin(filter, field);
+        Read<T> read = this.beginRead(false);
+        try {
+            return read.dao.getMin(filter, field);
+        } finally {
+            this.endRead(read);
+        }
     }
 
     /**
@@ -288,6 +824,31 @@ public class Facade<T> implements Serializable{
      */
     protected Integer getCountRecords(T filter) throws Exception {
 
-        return dao.getCountRecords(filter);
+        Read<T> read = this.beginRead(false);
+        try {
+            return read.dao.getCountRecords(filter);
+        } finally {
+            this.endRead(read);
+        }
+    }
+
+    /**
+     * Leitura em andamento
+     */
+    private static class Read<T> {
+
+        private final Dao<T> dao;
+        private final Transaction transaction;
+        private final Session replicaSession;
+        private final int replica;
+        private final boolean readOnlyTransaction;
+
+        Read(Dao<T> dao, Transaction transaction, Session replicaSession, int replica, boolean readOnlyTransaction) {
+            this.dao = dao;
+            this.transaction = transaction;
+            this.replicaSession = replicaSession;
+            this.replica = replica;
+            this.readOnlyTransaction = readOnlyTransaction;
+        }
     }
 }
@@ -0,0 +1,291 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.db.ChangeEventBus;
+import br.com.jbc.db.HibernateUtil;
+import br.com.jbc.util.JBCException;
+import br.com.jbc.util.ResultFuture;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+
+/**
+ * Executor de commit em grupo. Reúne as gravações de uma entidade feitas ao mesmo tempo por
+ * várias threads durante alguns milissegundos e as executa em uma única transação, com um
+ * único commit no banco de dados. Cada gravação é feita dentro de um savepoint próprio, assim
+ * a falha de uma gravação desfaz somente ela e cada chamador recebe o seu resultado.
+ *
+ * O executor pode ser compartilhado por controllers de qualquer entidade através de
+ * Controller.setGroupCommit. A gravação é feita por uma thread e uma sessão próprias,
+ * independentes de Transaction.getInstance(). O banco de dados precisa suportar savepoints.
+ * @author Rodrigo Marconato
+ */
+public class GroupCommitExecutor {
+
+    private static final int INSERT = 0;
+    private static final int INSERT_OR_UPDATE = 1;
+    private static final int UPDATE = 2;
+    private static final int DELETE = 3;
+
+    private final int batchSize;
+    private final long windowNanos;
+    private final BlockingQueue<Pending> queue;
+
+    private final Session session;
+    private final Dao<Object> dao;
+    private final Thread worker;
+    private volatile boolean closed;
+
+    /**
+     * Cria o executor e inicia a thread de gravação
+     * @param capacity Quantidade máxima de gravações aguardando antes de bloquear quem grava
+     * @param batchSize Quantidade máxima de gravações por transação
+     * @param windowMillis Tempo que a primeira gravação de um grupo espera pelas demais
+     */
+    public GroupCommitExecutor(int capacity, int batchSize, long windowMillis) {
+        if (capacity <= 0 || batchSize <= 0 || windowMillis < 0) {
+            throw new IllegalArgumentException("capacity e batchSize devem ser maiores que zero e windowMillis não pode ser negativo");
+        }
+        this.batchSize = batchSize;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.queue = new ArrayBlockingQueue<Pending>(capacity);
+        this.session = HibernateUtil.getInstance().getSession();
+        this.dao = new Dao<Object>(this.session);
+        this.worker = new Thread(new Runnable() {
+            public void run() {
+                work();
+            }
+        }, "jbc-group-commit");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Agenda a inclusão do registro
+     * @param obj Objeto VO de persistência
+     * @return Future concluído com true quando o grupo for confirmado, ou com o erro da gravação
+     * @throws Exception Quando o executor estiver fechado ou a espera for interrompida
+     */
+    public Future<Boolean> insert(Object obj) throws Exception {
+        return this.submit(INSERT, obj);
+    }
+
+    /**
+     * Agenda a inclusão ou atualização do registro
+     * @param obj Objeto VO de persistência
+     * @return Future concluído com true quando o grupo for confirmado, ou com o erro da gravação
+     * @throws Exception Quando o executor estiver fechado ou a espera for interrompida
+     */
+    public Future<Boolean> insertOrUpdate(Object obj) throws Exception {
+        return this.submit(INSERT_OR_UPDATE, obj);
+    }
+
+    /**
+     * Agenda a atualização do registro
+     * @param obj Objeto VO de persistência
+     * @return Future concluído com true quando o grupo for confirmado, ou com o erro da gravação
+     * @throws Exception Quando o executor estiver fechado ou a espera for interrompida
+     */
+    public Future<Boolean> update(Object obj) throws Exception {
+        return this.submit(UPDATE, obj);
+    }
+
+    /**
+     * Agenda a eliminação do registro
+     * @param obj Objeto VO a ser eliminado contendo a sua chave primária
+     * @return Future concluído com true quando o grupo for confirmado, ou com o erro da gravação
+     * @throws Exception Quando o executor estiver fechado ou a espera for interrompida
+     */
+    public Future<Boolean> delete(Object obj) throws Exception {
+        return this.submit(DELETE, obj);
+    }
+
+    /**
+     * Aguarda o resultado de uma gravação, lançando a exceção original quando a gravação falhar.
+     * Uma gravação confirmada é registrada em HibernateUtil.markWrite para a thread que aguardou,
+     * que é a que deve ler o que gravou
+     * @param future Future retornado por insert, insertOrUpdate, update ou delete
+     * @return Resultado da gravação
+     * @throws Exception Exceção da gravação
+     */
+    public static Boolean await(Future<Boolean> future) throws Exception {
+        try {
+            Boolean result = future.get();
+            HibernateUtil.getInstance().markWrite();
+            return result;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Grava as operações pendentes, encerra a thread de gravação e fecha a sessão
+     * @throws InterruptedException
+     */
+    public void close() throws InterruptedException {
+        this.closed = true;
+        this.worker.join();
+        this.session.close();
+    }
+
+    private Future<Boolean> submit(int operation, Object obj) throws Exception {
+        if (this.closed) {
+            throw new JBCException(JBCException.FILA_FECHADA);
+        }
+        Pending pending = new Pending(operation, obj);
+        this.queue.put(pending);
+        if (this.closed && !this.worker.isAlive()) {
+            this.failPending();
+        }
+        return pending.future;
+    }
+
+    private void work() {
+        try {
+            while (!this.closed || !this.queue.isEmpty()) {
+                Pending first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Pending> group = new ArrayList<Pending>(this.batchSize);
+                group.add(first);
+                long deadline = System.nanoTime() + this.windowNanos;
+                while (group.size() < this.batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? this.queue.poll(remaining, TimeUnit.NANOSECONDS) : this.queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+                this.write(group);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.failPending();
+        }
+    }
+
+    /**
+     * Conclui com erro as gravações que chegaram depois do fechamento do executor
+     */
+    private void failPending() {
+        Pending pending;
+        while ((pending = this.queue.poll()) != null) {
+            pending.future.fail(new JBCException(JBCException.FILA_FECHADA));
+        }
+    }
+
+    /**
+     * Executa o grupo em uma transação, cada gravação em um savepoint próprio
+     */
+    private void write(List<Pending> group) {
+        List<Pending> written = new ArrayList<Pending>(group.size());
+        org.hibernate.Transaction transaction = null;
+        try {
+            transaction = this.session.beginTransaction();
+            for (Pending pending : group) {
+                Savepoint savepoint = this.setSavepoint();
+                int mark = ChangeEventBus.mark(this.session);
+                try {
+                    this.apply(pending);
+                    this.session.flush();
+                    this.releaseSavepoint(savepoint);
+                    written.add(pending);
+                } catch (Exception e) {
+                    this.rollbackSavepoint(savepoint);
+                    ChangeEventBus.rollbackTo(this.session, mark);
+                    this.session.clear();
+                    pending.future.fail(e);
+                }
+            }
+            transaction.commit();
+            ChangeEventBus.publish(this.session);
+            for (Pending pending : written) {
+                pending.future.complete(true);
+            }
+        } catch (Exception e) {
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+            ChangeEventBus.discard(this.session);
+            for (Pending pending : group) {
+                pending.future.fail(e);
+            }
+        } finally {
+            this.session.clear();
+        }
+    }
+
+    private void apply(Pending pending) throws Exception {
+        switch (pending.operation) {
+            case INSERT:
+                this.dao.insert(pending.entity);
+                break;
+            case INSERT_OR_UPDATE:
+                this.dao.insertOrUpdate(pending.entity);
+                break;
+            case UPDATE:
+                this.dao.update(pending.entity);
+                break;
+            default:
+                this.dao.delete(pending.entity);
+        }
+    }
+
+    private Savepoint setSavepoint() {
+        final Savepoint[] savepoint = new Savepoint[1];
+        this.session.doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                savepoint[0] = connection.setSavepoint();
+            }
+        });
+        return savepoint[0];
+    }
+
+    private void releaseSavepoint(final Savepoint savepoint) {
+        this.session.doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                connection.releaseSavepoint(savepoint);
+            }
+        });
+    }
+
+    private void rollbackSavepoint(final Savepoint savepoint) {
+        this.session.doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                connection.rollback(savepoint);
+            }
+        });
+    }
+
+    /**
+     * Gravação aguardando o grupo
+     */
+    private static class Pending {
+
+        private final int operation;
+        private final Object entity;
+        private final ResultFuture<Boolean> future = new ResultFuture<Boolean>();
+
+        Pending(int operation, Object entity) {
+            this.operation = operation;
+            this.entity = entity;
+        }
+    }
+}
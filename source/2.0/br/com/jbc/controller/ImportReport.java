@@ -0,0 +1,90 @@
+package br.com.jbc.controller;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de uma importação: quantidades de registros, tempo, vazão e registros rejeitados
+ * @author Rodrigo Marconato
+ */
+public class ImportReport {
+
+    private final long records;
+    private final long inserted;
+    private final long rejected;
+    private final long bytes;
+    private final long elapsedMillis;
+    private final List<String> rejections;
+
+    ImportReport(long records, long inserted, long rejected, long bytes, long elapsedMillis, List<String> rejections) {
+        this.records = records;
+        this.inserted = inserted;
+        this.rejected = rejected;
+        this.bytes = bytes;
+        this.elapsedMillis = elapsedMillis;
+        this.rejections = Collections.unmodifiableList(rejections);
+    }
+
+    /**
+     * Quantidade de registros lidos do arquivo, sem o cabeçalho e as linhas vazias
+     * @return Registros lidos
+     */
+    public long getRecords() {
+        return this.records;
+    }
+
+    /**
+     * Quantidade de registros incluídos no banco de dados
+     * @return Registros incluídos
+     */
+    public long getInserted() {
+        return this.inserted;
+    }
+
+    /**
+     * Quantidade de registros rejeitados na conversão ou na inclusão
+     * @return Registros rejeitados
+     */
+    public long getRejected() {
+        return this.rejected;
+    }
+
+    /**
+     * Quantidade de bytes lidos do arquivo
+     * @return Bytes lidos
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Tempo total da importação
+     * @return Tempo em milissegundos
+     */
+    public long getElapsedMillis() {
+        return this.elapsedMillis;
+    }
+
+    /**
+     * Vazão da importação
+     * @return Registros lidos por segundo
+     */
+    public double getRecordsPerSecond() {
+        return this.elapsedMillis == 0 ? this.records : this.records * 1000.0 / this.elapsedMillis;
+    }
+
+    /**
+     * Registros rejeitados com a linha do arquivo e o motivo, limitados a CsvImport.setMaxRejections
+     * @return Lista no formato "linha N: motivo"
+     */
+    public List<String> getRejections() {
+        return this.rejections;
+    }
+
+    @Override
+    public String toString() {
+        return "registros=" + this.records + ", incluídos=" + this.inserted + ", rejeitados=" + this.rejected
+                + ", bytes=" + this.bytes + ", tempo=" + this.elapsedMillis + "ms"
+                + ", registros/s=" + Math.round(this.getRecordsPerSecond());
+    }
+}
@@ -0,0 +1,152 @@
+package br.com.jbc.controller;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+/**
+ * Executa uma consulta dividida em faixas da chave primária, cada faixa em uma sessão
+ * e conexão próprias, em paralelo através de um ForkJoinPool compartilhado por todas as
+ * consultas. No máximo uma partição por processador é lida ao mesmo tempo, as demais
+ * aguardam no pool, e o pool de conexões do hibernate precisa ter uma conexão para cada.
+ * @author Rodrigo Marconato
+ * @param <T> Value Object consultado
+ */
+class PartitionedScan<T> {
+
+    /**
+     * Pool das partições, compartilhado para que consultas simultâneas não criem threads sem limite
+     */
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final SessionFactory sessionFactory;
+    private final T filter;
+    private final String idName;
+    private final ScanCombiner<T, ?> combiner;
+    private long min;
+    private long size;
+    private Number sample;
+
+    /**
+     * @param sessionFactory Fábrica das sessões das partições, a do cliente que pediu a consulta,
+     * pois as threads do pool não conhecem o cliente da operação
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param idName Nome do atributo da chave primária
+     * @param combiner Acumulador das entidades de cada partição
+     */
+    PartitionedScan(SessionFactory sessionFactory, T filter, String idName, ScanCombiner<T, ?> combiner) {
+        this.sessionFactory = sessionFactory;
+        this.filter = filter;
+        this.idName = idName;
+        this.combiner = combiner;
+    }
+
+    /**
+     * Divide as chaves entre as partições e executa a consulta
+     * @param min Menor chave primária dos registros filtrados
+     * @param max Maior chave primária dos registros filtrados
+     * @param partitions Quantidade de partições
+     * @return Resultado unido de todas as partições
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    <R> R execute(Number min, Number max, int partitions) throws Exception {
+        ScanCombiner<T, R> typedCombiner = (ScanCombiner<T, R>) this.combiner;
+        if (min == null || max == null) {
+            return typedCombiner.initial();
+        }
+        long range = max.longValue() - min.longValue() + 1;
+        partitions = (int) Math.max(1, Math.min(partitions, range));
+        this.min = min.longValue();
+        this.size = (range + partitions - 1) / partitions;
+        this.sample = min;
+
+        try {
+            return pool.invoke(new PartitionTask<R>(typedCombiner, 0, partitions, max.longValue()));
+        } catch (PartitionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof PartitionException) {
+                cause = cause.getCause();
+            }
+            throw (Exception) cause;
+        }
+    }
+
+    /**
+     * Converte o limite da faixa para o tipo da chave primária
+     */
+    private Number toIdType(long value) {
+        if (this.sample instanceof Integer) {
+            return Integer.valueOf((int) value);
+        } else if (this.sample instanceof Short) {
+            return Short.valueOf((short) value);
+        } else {
+            return Long.valueOf(value);
+        }
+    }
+
+    /**
+     * Consulta uma partição em uma sessão própria, somente leitura
+     */
+    private <R> R scan(ScanCombiner<T, R> combiner, int partition, long max) throws Exception {
+        long lo = this.min + partition * this.size;
+        long hi = Math.min(max, lo + this.size - 1);
+        Session session = this.sessionFactory.openSession();
+        try {
+            session.setDefaultReadOnly(true);
+            session.setFlushMode(FlushMode.MANUAL);
+            Dao<T> dao = new Dao<T>(session);
+            dao.setReadOnly(true);
+            return dao.scanRange(this.filter, this.idName, toIdType(lo), toIdType(hi), combiner);
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Tarefa que divide as partições ao meio até chegar em uma única partição
+     */
+    private class PartitionTask<R> extends RecursiveTask<R> {
+
+        private final ScanCombiner<T, R> combiner;
+        private final int from;
+        private final int to;
+        private final long max;
+
+        PartitionTask(ScanCombiner<T, R> combiner, int from, int to, long max) {
+            this.combiner = combiner;
+            this.from = from;
+            this.to = to;
+            this.max = max;
+        }
+
+        @Override
+        protected R compute() {
+            if (this.to - this.from == 1) {
+                try {
+                    return scan(this.combiner, this.from, this.max);
+                } catch (Exception e) {
+                    throw new PartitionException(e);
+                }
+            }
+            int middle = (this.from + this.to) >>> 1;
+            PartitionTask<R> left = new PartitionTask<R>(this.combiner, this.from, middle, this.max);
+            PartitionTask<R> right = new PartitionTask<R>(this.combiner, middle, this.to, this.max);
+            left.fork();
+            R rightResult = right.compute();
+            return this.combiner.combine(left.join(), rightResult);
+        }
+    }
+
+    /**
+     * Transporta a exceção de uma partição até a thread que chamou a consulta
+     */
+    private static class PartitionException extends RuntimeException {
+
+        PartitionException(Exception cause) {
+            super(cause);
+        }
+    }
+}
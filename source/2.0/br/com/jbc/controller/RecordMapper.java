@@ -0,0 +1,18 @@
+package br.com.jbc.controller;
+
+/**
+ * Converte os campos de um registro de arquivo em uma entidade. É chamado por várias threads
+ * ao mesmo tempo pela importação, portanto não deve guardar estado entre as chamadas
+ * @author Rodrigo Marconato
+ * @param <T> Value Object importado
+ */
+public interface RecordMapper<T> {
+
+    /**
+     * Converte os campos em uma entidade
+     * @param fields Campos do registro, já sem as aspas do CSV
+     * @return Entidade a ser incluída
+     * @throws Exception Quando o registro for inválido, o registro é rejeitado com a mensagem da exceção
+     */
+    T map(String[] fields) throws Exception;
+}
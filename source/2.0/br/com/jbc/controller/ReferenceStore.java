@@ -0,0 +1,318 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.db.ChangeEvent;
+import br.com.jbc.db.ChangeEventBus;
+import br.com.jbc.db.ChangeListener;
+import br.com.jbc.db.HibernateUtil;
+import br.com.jbc.db.ReferenceData;
+import br.com.jbc.db.ReferenceKey;
+import br.com.jbc.util.JBCException;
+import java.lang.reflect.Field;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.Criteria;
+import org.hibernate.Session;
+import org.hibernate.criterion.Order;
+import org.hibernate.metadata.ClassMetadata;
+
+/**
+ * Cache em memória das entidades anotadas com @ReferenceData. Em start todas as entidades
+ * mapeadas com a anotação são lidas inteiras e indexadas pela chave primária e pelos atributos
+ * @ReferenceKey. Cada carga gera mapas imutáveis que substituem os anteriores de uma vez, assim
+ * as consultas não usam bloqueio e nunca veem uma carga pela metade.
+ *
+ * A tabela é recarregada no intervalo de refreshSeconds e sempre que o framework gravar a
+ * entidade, através do ChangeEventBus. Controller.findById passa a ser atendido pelo cache para
+ * as entidades carregadas.
+ *
+ * Exemplo:
+ *
+ * ReferenceStore.start();
+ * Pais brasil = ReferenceStore.findByKey(Pais.class, "sigla", "BR");
+ *
+ * As instâncias retornadas são compartilhadas entre as threads e não podem ser alteradas; para
+ * gravar use uma cópia. Associações lazy não podem ser acessadas, pois a sessão da carga já foi
+ * fechada. As entidades são lidas do banco configurado no hibernate.cfg.xml.
+ * @author Rodrigo Marconato
+ */
+public class ReferenceStore {
+
+    /**
+     * Quantidade máxima de alterações recebidas de uma vez do ChangeEventBus
+     */
+    private static final int CHANGE_BATCH = 1024;
+
+    private static final Map<Class, Holder> holders = new ConcurrentHashMap<Class, Holder>();
+
+    /**
+     * Entidade de cada nome de entidade do hibernate, usado nas alterações publicadas
+     */
+    private static final Map<String, Holder> entityNames = new ConcurrentHashMap<String, Holder>();
+
+    private static ScheduledExecutorService scheduler;
+    private static ChangeListener listener;
+
+    /**
+     * Carrega todas as entidades mapeadas anotadas com @ReferenceData e inicia as recargas
+     * @throws Exception Erro na carga de alguma entidade
+     */
+    public static synchronized void start() throws Exception {
+        if (listener != null) {
+            return;
+        }
+        List<Holder> loaded = new ArrayList<Holder>();
+        Session session = HibernateUtil.getInstance().openSession(null);
+        try {
+            for (ClassMetadata metadata : session.getSessionFactory().getAllClassMetadata().values()) {
+                Class type = metadata.getMappedClass();
+                if (type == null || type.getAnnotation(ReferenceData.class) == null) {
+                    continue;
+                }
+                Holder holder = new Holder(type, metadata.getEntityName());
+                holder.snapshot = load(session, holder);
+                loaded.add(holder);
+            }
+        } finally {
+            session.close();
+        }
+
+        for (Holder holder : loaded) {
+            holders.put(holder.type, holder);
+            entityNames.put(holder.entityName, holder);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "jbc-reference-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (final Holder holder : loaded) {
+            long seconds = ((ReferenceData) holder.type.getAnnotation(ReferenceData.class)).refreshSeconds();
+            if (seconds > 0) {
+                scheduler.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        reload(holder);
+                    }
+                }, seconds, seconds, TimeUnit.SECONDS);
+            }
+        }
+        listener = new ChangeListener() {
+            public void onChanges(List<ChangeEvent> events) {
+                Set<Holder> changed = new LinkedHashSet<Holder>();
+                for (ChangeEvent event : events) {
+                    Holder holder = entityNames.get(event.getEntityName());
+                    if (holder != null) {
+                        changed.add(holder);
+                    }
+                }
+                for (Holder holder : changed) {
+                    reload(holder);
+                }
+            }
+
+            public void onOverflow(long lost) {
+                for (Holder holder : holders.values()) {
+                    reload(holder);
+                }
+            }
+        };
+        ChangeEventBus.register(listener, CHANGE_BATCH);
+    }
+
+    /**
+     * Encerra as recargas e descarta as entidades carregadas
+     */
+    public static synchronized void stop() {
+        if (listener == null) {
+            return;
+        }
+        ChangeEventBus.unregister(listener);
+        listener = null;
+        scheduler.shutdownNow();
+        scheduler = null;
+        holders.clear();
+        entityNames.clear();
+    }
+
+    /**
+     * Verifica se a entidade está carregada no cache
+     * @param type Classe da entidade
+     * @return true quando a entidade for atendida pelo cache
+     */
+    public static boolean isLoaded(Class type) {
+        return type != null && holders.containsKey(type);
+    }
+
+    /**
+     * Procura um registro pela chave primária
+     * @param type Classe da entidade
+     * @param id Chave primária
+     * @return Objeto encontrado, ou null
+     * @throws JBCException Quando a entidade não estiver carregada
+     */
+    public static <E> E findById(Class<E> type, Object id) throws JBCException {
+        return (E) snapshot(type).byId.get(normalize(id));
+    }
+
+    /**
+     * Procura um registro por um atributo @ReferenceKey
+     * @param type Classe da entidade
+     * @param property Nome do atributo anotado com @ReferenceKey
+     * @param value Valor procurado
+     * @return Objeto encontrado, ou null
+     * @throws JBCException Quando a entidade não estiver carregada
+     */
+    public static <E> E findByKey(Class<E> type, String property, Object value) throws JBCException {
+        Map<Object, Object> index = snapshot(type).byKey.get(property);
+        if (index == null) {
+            throw new IllegalArgumentException("O atributo " + property + " de " + type.getName() + " não está anotado com @ReferenceKey");
+        }
+        return (E) index.get(normalize(value));
+    }
+
+    /**
+     * Lista todos os registros carregados, na ordem da chave primária
+     * @param type Classe da entidade
+     * @return Lista imutável
+     * @throws JBCException Quando a entidade não estiver carregada
+     */
+    public static <E> List<E> findAll(Class<E> type) throws JBCException {
+        return (List<E>) snapshot(type).all;
+    }
+
+    /**
+     * Recarrega a entidade imediatamente, para alterações feitas fora do framework
+     * @param type Classe da entidade
+     * @throws Exception Erro na carga, mantendo os registros anteriores
+     */
+    public static void refresh(Class type) throws Exception {
+        Holder holder = holders.get(type);
+        if (holder == null) {
+            throw new JBCException(JBCException.REFERENCIA_NAO_CARREGADA + " " + type.getName());
+        }
+        synchronized (holder) {
+            Session session = HibernateUtil.getInstance().openSession(null);
+            try {
+                holder.snapshot = load(session, holder);
+            } finally {
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Recarga em segundo plano, mantendo os registros anteriores quando falhar
+     */
+    private static void reload(Holder holder) {
+        try {
+            refresh(holder.type);
+        } catch (Exception e) {
+            System.err.println("Não foi possível recarregar " + holder.entityName + ", os registros anteriores continuam em uso: " + e);
+        }
+    }
+
+    private static Snapshot snapshot(Class type) throws JBCException {
+        Holder holder = holders.get(type);
+        if (holder == null) {
+            throw new JBCException(JBCException.REFERENCIA_NAO_CARREGADA + " " + (type == null ? null : type.getName()));
+        }
+        return holder.snapshot;
+    }
+
+    /**
+     * Lê todos os registros da entidade e monta os índices
+     */
+    private static Snapshot load(Session session, Holder holder) throws Exception {
+        List<Field> keys = new ArrayList<Field>();
+        for (Class current = holder.type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (field.getAnnotation(ReferenceKey.class) != null) {
+                    field.setAccessible(true);
+                    keys.add(field);
+                }
+            }
+        }
+
+        session.setDefaultReadOnly(true);
+        Criteria criteria = session.createCriteria(holder.type);
+        String idProperty = session.getSessionFactory().getClassMetadata(holder.type).getIdentifierPropertyName();
+        if (idProperty != null) {
+            criteria.addOrder(Order.asc(idProperty));
+        }
+        List<Object> all = new ArrayList<Object>(criteria.list());
+        Map<Object, Object> byId = new HashMap<Object, Object>(all.size() * 2);
+        for (Object entity : all) {
+            byId.put(normalize(session.getIdentifier(entity)), entity);
+        }
+        session.clear();
+
+        Map<String, Map<Object, Object>> byKey = new HashMap<String, Map<Object, Object>>();
+        for (Field field : keys) {
+            Map<Object, Object> index = new HashMap<Object, Object>(all.size() * 2);
+            for (Object entity : all) {
+                Object value = field.get(entity);
+                if (value != null && index.put(normalize(value), entity) != null) {
+                    throw new JBCException(JBCException.CHAVE_REFERENCIA_DUPLICADA + " " + holder.entityName + "." + field.getName() + "=" + value);
+                }
+            }
+            byKey.put(field.getName(), Collections.unmodifiableMap(index));
+        }
+        return new Snapshot(Collections.unmodifiableList(all), Collections.unmodifiableMap(byId), Collections.unmodifiableMap(byKey));
+    }
+
+    /**
+     * Converte números inteiros para Long, assim findById(Pais.class, 10) encontra a chave Long 10
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return Long.valueOf(((Number) value).longValue());
+        }
+        if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+            return Long.valueOf(((BigInteger) value).longValue());
+        }
+        return value;
+    }
+
+    /**
+     * Entidade carregada, com a sua carga atual
+     */
+    private static class Holder {
+
+        private final Class type;
+        private final String entityName;
+        private volatile Snapshot snapshot;
+
+        Holder(Class type, String entityName) {
+            this.type = type;
+            this.entityName = entityName;
+        }
+    }
+
+    /**
+     * Registros e índices imutáveis de uma carga
+     */
+    private static class Snapshot {
+
+        private final List<Object> all;
+        private final Map<Object, Object> byId;
+        private final Map<String, Map<Object, Object>> byKey;
+
+        Snapshot(List<Object> all, Map<Object, Object> byId, Map<String, Map<Object, Object>> byKey) {
+            this.all = all;
+            this.byId = byId;
+            this.byKey = byKey;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package br.com.jbc.controller;
+
+/**
+ * Acumula o resultado de uma consulta particionada. Cada partição começa com initial(),
+ * recebe as suas entidades em accumulate() na ordem da chave primária e no final os
+ * resultados das partições são unidos em combine(), também na ordem da chave primária.
+ * Cada partição roda em uma thread própria, portanto accumulate() só deve alterar o
+ * resultado recebido.
+ * @author Rodrigo Marconato
+ * @param <T> Value Object consultado
+ * @param <R> Tipo do resultado acumulado
+ */
+public interface ScanCombiner<T, R> {
+
+    /**
+     * Cria o resultado inicial de uma partição
+     * @return Resultado vazio
+     */
+    R initial();
+
+    /**
+     * Acumula uma entidade no resultado da partição
+     * @param result Resultado da partição
+     * @param entity Entidade lida, já desanexada quando a sessão da partição for limpa ou fechada
+     * @return Resultado atualizado
+     */
+    R accumulate(R result, T entity);
+
+    /**
+     * Une os resultados de duas partições vizinhas
+     * @param left Resultado das chaves menores
+     * @param right Resultado das chaves maiores
+     * @return Resultado unido
+     */
+    R combine(R left, R right);
+}
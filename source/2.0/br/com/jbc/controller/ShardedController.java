@@ -0,0 +1,521 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.db.BuildCriteria;
+import br.com.jbc.db.ChangeEventBus;
+import br.com.jbc.db.HibernateUtil;
+import br.com.jbc.db.ShardKey;
+import br.com.jbc.util.JBCException;
+import br.com.jbc.util.SearchPaginate;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hibernate.Session;
+
+/**
+ * Controller de entidades distribuídas em vários bancos de dados (shards), configurados em
+ * jbc.shard.urls no hibernate.properties. O shard de cada registro é escolhido pelo hash do
+ * atributo anotado com @ShardKey.
+ *
+ * As gravações vão para o shard do registro, em uma transação por shard; a gravação de uma lista
+ * com registros de vários shards não é atômica entre os shards. As consultas cujo filtro informa
+ * a chave do shard vão somente para aquele shard; as demais são executadas em paralelo em todos
+ * os shards e os resultados são unidos, ordenados e paginados. Cada operação usa uma sessão
+ * própria do shard, fechada ao final, portanto as entidades consultadas são sempre retornadas
+ * desanexadas, sem carga lazy.
+ *
+ * A chave primária deve ser única entre os shards, por exemplo gerada a partir da chave do shard,
+ * pois cada banco possui as suas próprias sequences e colunas IDENTITY. A quantidade de shards
+ * não pode ser alterada sem redistribuir os registros.
+ * @author Rodrigo Leandro Marconato
+ * @param <T> Value Object de controle
+ */
+public class ShardedController<T> {
+
+    private static final int INSERT = 0;
+    private static final int INSERT_OR_UPDATE = 1;
+    private static final int UPDATE = 2;
+    private static final int DELETE = 3;
+
+    /**
+     * Atributo @ShardKey de cada classe de entidade
+     */
+    private static final ConcurrentHashMap<Class, Field> shardKeys = new ConcurrentHashMap<Class, Field>();
+
+    /**
+     * Quantidade de threads do executor das consultas em todos os shards; os shards além deste
+     * número aguardam na fila do executor
+     */
+    private static final int PARALLEL_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Executor das consultas executadas em todos os shards
+     */
+    private static ExecutorService executor;
+
+    /**
+     * Insere um registro no seu shard
+     * @param obj Objeto VO de persistência
+     * @return Boolean.True para transação com sucesso e Boolean.False para transação com Rollback
+     * @throws Exception
+     */
+    public Boolean insert(T obj) throws Exception {
+        return this.write(INSERT, obj);
+    }
+
+    /**
+     * Insere uma lista de registros, com uma transação por shard
+     * @param objList Lista de Objetos VO de persistência
+     * @return Boolean.True para transação com sucesso e Boolean.False para transação com Rollback
+     * @throws Exception
+     */
+    public Boolean insert(List<T> objList) throws Exception {
+        return this.write(INSERT, objList);
+    }
+
+    /**
+     * Insere ou atualiza um registro no seu shard
+     * @param obj Objeto VO de persistência
+     * @return Boolean.True para transação com sucesso e Boolean.False para transação com Rollback
+     * @throws Exception
+     */
+    public Boolean insertOrUpdate(T obj) throws Exception {
+        return this.write(INSERT_OR_UPDATE, obj);
+    }
+
+    /**
+     * Insere ou atualiza uma lista de registros, com uma transação por shard
+     * @param objList Lista de Objetos VO de persistência
+     * @return Boolean.True para transação com sucesso e Boolean.False para transação com Rollback
+     * @throws Exception
+     */
+    public Boolean insertOrUpdate(List<T> objList) throws Exception {
+        return this.write(INSERT_OR_UPDATE, objList);
+    }
+
+    /**
+     * Atualiza um registro no seu shard
+     * @param obj Objeto VO de persistência
+     * @return Boolean.True para transação com sucesso e Boolean.False para transação com Rollback
+     * @throws Exception
+     */
+    public Boolean update(T obj) throws Exception {
+        return this.write(UPDATE, obj);
+    }
+
+    /**
+     * Elimina um registro do seu shard
+     * @param obj Objeto VO a ser eliminado contendo a sua chave primária e a chave do shard
+     * @return Boolean.True para transação com sucesso e Boolean.False para transação com Rollback
+     * @throws Exception
+     */
+    public Boolean delete(T obj) throws Exception {
+        return this.write(DELETE, obj);
+    }
+
+    /**
+     * Lista os registros, no shard da chave informada no filtro ou em todos os shards
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @return Lista de objetos encontrados na consulta
+     * @throws Exception
+     */
+    public List<T> findList(final T filter) throws Exception {
+        ShardQuery<T, List<T>> query = new ShardQuery<T, List<T>>() {
+            public List<T> execute(Dao<T> dao) throws Exception {
+                return dao.findList(filter);
+            }
+        };
+        int shard = this.shardOfFilter(filter);
+        if (shard >= 0) {
+            return this.queryShard(shard, query);
+        }
+        List<T> result = new ArrayList<T>();
+        for (List<T> list : this.scatter(query)) {
+            result.addAll(list);
+        }
+        return result;
+    }
+
+    /**
+     * Retorna um registro, do shard da chave informada no filtro ou do primeiro shard que o encontrar
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @return Objeto encontrado na consulta
+     * @throws Exception
+     */
+    public T find(final T filter) throws Exception {
+        ShardQuery<T, T> query = new ShardQuery<T, T>() {
+            public T execute(Dao<T> dao) throws Exception {
+                return dao.find(filter);
+            }
+        };
+        int shard = this.shardOfFilter(filter);
+        if (shard >= 0) {
+            return this.queryShard(shard, query);
+        }
+        for (T obj : this.scatter(query)) {
+            if (obj != null) {
+                return obj;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Realiza uma consulta paginada. Sem a chave do shard no filtro cada shard retorna os
+     * firstResult + maxResult primeiros registros, que são unidos, ordenados e cortados na página,
+     * portanto o custo cresce com o número da página. Sem o atributo de ordenação os registros são
+     * ordenados pela chave primária, e os registros com o mesmo valor do atributo de ordenação são
+     * desempatados por ela, para que as páginas não repitam nem pulem registros
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @param firstResult Número da página que a consulta irá mostrar os resultados
+     * @param maxResult Número de registros por página
+     * @param sortField Nome do atributo da entidade que será ordenado, ou null para ordenar pela chave primária
+     * @param orderByType Tipo de ordenação da Lista, os valores devem ser Controller.ORDER_ASC ou Controller.ORDER_DESC
+     * @return Componente SearchPaginate contendo a lista páginada e a quantidade total de registros
+     * @throws Exception
+     */
+    public SearchPaginate findPaginate(final T filter, final int firstResult, final int maxResult, final String sortField, final boolean orderByType) throws Exception {
+        int shard = this.shardOfFilter(filter);
+        if (shard >= 0) {
+            return this.queryShard(shard, new ShardQuery<T, SearchPaginate>() {
+                public SearchPaginate execute(Dao<T> dao) throws Exception {
+                    return dao.findPaginate(filter, firstResult, maxResult, sortField, orderByType);
+                }
+            });
+        }
+
+        final String idName = this.idName(filter);
+        final String order = sortField == null || sortField.equals("") ? idName : sortField;
+        final int top = firstResult + maxResult;
+        List<SearchPaginate> pages = this.scatter(new ShardQuery<T, SearchPaginate>() {
+            public SearchPaginate execute(Dao<T> dao) throws Exception {
+                SearchPaginate page = new SearchPaginate();
+                page.setRowCount(dao.getCountRecords(filter));
+                page.setListResult(dao.findFirst(filter, top, order, idName, orderByType));
+                return page;
+            }
+        });
+
+        SearchPaginate searchPaginate = new SearchPaginate();
+        List<T> merged = new ArrayList<T>();
+        int rowCount = 0;
+        for (SearchPaginate page : pages) {
+            rowCount += page.getRowCount();
+            merged.addAll(page.getListResult());
+        }
+        searchPaginate.setRowCount(rowCount);
+
+        int first = firstResult;
+        while (rowCount < first) {
+            first = first - maxResult;
+        }
+        Comparator<T> comparator = new PropertyComparator<T>(idName, orderByType);
+        if (!order.equals(idName)) {
+            comparator = new ThenComparator<T>(new PropertyComparator<T>(order, orderByType), comparator);
+        }
+        Collections.sort(merged, comparator);
+        int from = Math.max(0, Math.min(first, merged.size()));
+        searchPaginate.setListResult(new ArrayList<T>(merged.subList(from, Math.min(from + maxResult, merged.size()))));
+        return searchPaginate;
+    }
+
+    /**
+     * Busca o total de registros, somando os totais de todos os shards quando o filtro não informar a chave do shard
+     * @param filter Objeto VO contendo os filtros de consulta populados em seus atributos
+     * @return Quantidade de registros
+     * @throws Exception
+     */
+    public Integer getCountRecords(final T filter) throws Exception {
+        ShardQuery<T, Integer> query = new ShardQuery<T, Integer>() {
+            public Integer execute(Dao<T> dao) throws Exception {
+                return dao.getCountRecords(filter);
+            }
+        };
+        int shard = this.shardOfFilter(filter);
+        if (shard >= 0) {
+            return this.queryShard(shard, query);
+        }
+        int count = 0;
+        for (Integer shardCount : this.scatter(query)) {
+            count += shardCount;
+        }
+        return count;
+    }
+
+    /**
+     * Retorna o shard de um registro
+     * @param obj Objeto VO com o atributo @ShardKey preenchido
+     * @return Índice do shard
+     * @throws JBCException Quando não houver shards ou a chave não for informada
+     */
+    public int shardOf(T obj) throws JBCException {
+        Object key = this.shardKeyValue(obj);
+        if (key == null) {
+            throw new JBCException(JBCException.CHAVE_SHARD_VAZIA + " " + obj.getClass().getName());
+        }
+        return this.shardOfKey(key);
+    }
+
+    private int shardOfKey(Object key) throws JBCException {
+        int shards = HibernateUtil.getInstance().getShardCount();
+        if (shards == 0) {
+            throw new JBCException(JBCException.SEM_SHARDS);
+        }
+        return (key.hashCode() & Integer.MAX_VALUE) % shards;
+    }
+
+    /**
+     * Shard da chave informada no filtro, ou -1 quando a consulta deve ir para todos os shards
+     */
+    private int shardOfFilter(T filter) throws JBCException {
+        Object key = this.shardKeyValue(filter);
+        return key == null ? -1 : this.shardOfKey(key);
+    }
+
+    /**
+     * Valor do atributo @ShardKey, sendo null quando vazio ou zero, como nos filtros de BuildCriteria
+     */
+    private Object shardKeyValue(Object obj) throws JBCException {
+        Field field = shardKeys.get(obj.getClass());
+        if (field == null) {
+            for (Field candidate : BuildCriteria.loadAnnotationFields(obj)) {
+                if (candidate.getAnnotation(ShardKey.class) != null) {
+                    field = candidate;
+                    break;
+                }
+            }
+            if (field == null) {
+                throw new JBCException(JBCException.SEM_CHAVE_SHARD + " " + obj.getClass().getName());
+            }
+            field.setAccessible(true);
+            shardKeys.put(obj.getClass(), field);
+        }
+        Object key;
+        try {
+            key = field.get(obj);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        if (key == null || key.toString().isEmpty() || (key instanceof Number && ((Number) key).longValue() == 0)) {
+            return null;
+        }
+        return key;
+    }
+
+    /**
+     * Nome do atributo da chave primária da entidade do filtro
+     */
+    private String idName(T filter) throws JBCException {
+        if (HibernateUtil.getInstance().getShardCount() == 0) {
+            throw new JBCException(JBCException.SEM_SHARDS);
+        }
+        return HibernateUtil.getInstance().getShardFactory(0)
+                .getClassMetadata(filter.getClass()).getIdentifierPropertyName();
+    }
+
+    private Boolean write(int operation, T obj) throws Exception {
+        List<T> objList = new ArrayList<T>(1);
+        objList.add(obj);
+        return this.write(operation, objList);
+    }
+
+    /**
+     * Executa a operação do Dao em cada registro, agrupando os registros por shard, com uma transação por shard
+     */
+    private Boolean write(int operation, List<T> objList) throws Exception {
+        if (objList == null) {
+            return false;
+        }
+        LinkedHashMap<Integer, List<T>> groups = new LinkedHashMap<Integer, List<T>>();
+        for (T obj : objList) {
+            int shard = this.shardOf(obj);
+            List<T> group = groups.get(shard);
+            if (group == null) {
+                group = new ArrayList<T>();
+                groups.put(shard, group);
+            }
+            group.add(obj);
+        }
+        for (Entry<Integer, List<T>> group : groups.entrySet()) {
+            Session session = HibernateUtil.getInstance().openShardSession(group.getKey());
+            try {
+                Dao<T> dao = new Dao<T>(session);
+                org.hibernate.Transaction transaction = session.beginTransaction();
+                try {
+                    for (T obj : group.getValue()) {
+                        this.apply(dao, operation, obj);
+                    }
+                    transaction.commit();
+                    ChangeEventBus.publish(session);
+                } catch (Exception e) {
+                    transaction.rollback();
+                    ChangeEventBus.discard(session);
+                    throw e;
+                }
+            } finally {
+                session.close();
+            }
+        }
+        return true;
+    }
+
+    private void apply(Dao<T> dao, int operation, T obj) throws Exception {
+        switch (operation) {
+            case INSERT:
+                dao.insert(obj);
+                break;
+            case INSERT_OR_UPDATE:
+                dao.insertOrUpdate(obj);
+                break;
+            case UPDATE:
+                dao.update(obj);
+                break;
+            default:
+                dao.delete(obj);
+        }
+    }
+
+    /**
+     * Executa a consulta em todos os shards em paralelo, cada shard em uma sessão própria
+     * @return Resultados na ordem dos shards
+     */
+    private <R> List<R> scatter(final ShardQuery<T, R> query) throws Exception {
+        int shards = HibernateUtil.getInstance().getShardCount();
+        if (shards == 0) {
+            throw new JBCException(JBCException.SEM_SHARDS);
+        }
+        List<Future<R>> futures = new ArrayList<Future<R>>(shards);
+        for (int i = 0; i < shards; i++) {
+            final int shard = i;
+            futures.add(getExecutor().submit(new Callable<R>() {
+                public R call() throws Exception {
+                    return queryShard(shard, query);
+                }
+            }));
+        }
+        List<R> results = new ArrayList<R>(shards);
+        for (Future<R> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Executa a consulta em uma sessão própria do shard, fechada ao final
+     */
+    private <R> R queryShard(int shard, ShardQuery<T, R> query) throws Exception {
+        Session session = HibernateUtil.getInstance().openShardSession(shard);
+        try {
+            return query.execute(new Dao<T>(session));
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Retorna o executor das consultas em todos os shards, criado no primeiro uso com no máximo
+     * PARALLEL_THREADS threads daemon, encerradas quando ficam sem uso
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(PARALLEL_THREADS, PARALLEL_THREADS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger sequence = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "jbc-shard-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+
+    /**
+     * Consulta executada em cada shard
+     */
+    private interface ShardQuery<T, R> {
+
+        R execute(Dao<T> dao) throws Exception;
+    }
+
+    /**
+     * Ordena pelo primeiro comparador e desempata pelo segundo
+     */
+    private static class ThenComparator<T> implements Comparator<T> {
+
+        private final Comparator<T> first;
+        private final Comparator<T> second;
+
+        ThenComparator(Comparator<T> first, Comparator<T> second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        public int compare(T left, T right) {
+            int result = this.first.compare(left, right);
+            return result != 0 ? result : this.second.compare(left, right);
+        }
+    }
+
+    /**
+     * Ordena as entidades pelo valor de um atributo, que pode ser de uma associação como "cidade.nome"
+     */
+    private static class PropertyComparator<T> implements Comparator<T> {
+
+        private final String[] path;
+        private final boolean ascending;
+
+        PropertyComparator(String property, boolean ascending) {
+            this.path = property.split("\\.");
+            this.ascending = ascending;
+        }
+
+        @SuppressWarnings("unchecked")
+        public int compare(T left, T right) {
+            Comparable a = this.value(left);
+            Comparable b = this.value(right);
+            int result;
+            if (a == null || b == null) {
+                result = a == b ? 0 : (a == null ? -1 : 1);
+            } else {
+                result = a.compareTo(b);
+            }
+            return this.ascending ? result : -result;
+        }
+
+        private Comparable value(Object obj) {
+            try {
+                for (String property : this.path) {
+                    if (obj == null) {
+                        return null;
+                    }
+                    obj = obj.getClass().getMethod(BuildCriteria.generateNameGetMethod(property)).invoke(obj);
+                }
+                return (Comparable) obj;
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Atributo de ordenação inválido: " + this.path[this.path.length - 1], e);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package br.com.jbc.controller;
+
+/**
+ * Unidade de trabalho executada por Controller.inTransaction. As operações de qualquer
+ * Controller executadas em execute() participam de uma única transação, confirmada no
+ * final com um único commit, ou desfeita se alguma operação falhar.
+ * @author Rodrigo Marconato
+ * @param <R> Tipo do resultado da unidade de trabalho
+ */
+public interface UnitOfWork<R> {
+
+    /**
+     * Executa as operações da unidade de trabalho
+     * @return Resultado da unidade de trabalho
+     * @throws Exception Qualquer exceção desfaz a transação
+     */
+    R execute() throws Exception;
+}
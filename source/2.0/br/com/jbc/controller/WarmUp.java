@@ -0,0 +1,255 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.db.HibernateUtil;
+import br.com.jbc.db.Transaction;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+
+/**
+ * Aquecimento da aplicação em segundo plano. Cria a fábrica de sessões do HibernateUtil, abre
+ * as conexões do pool, abre a sessão de Transaction, compila as consultas HQL informadas,
+ * guardando os seus planos no cache de planos do hibernate, e executa uma vez as consultas por
+ * filtro (criteria) informadas. Assim a primeira requisição não paga pela inicialização.
+ *
+ * Exemplo:
+ *
+ * WarmUp warmUp = new WarmUp().setConnections(10)
+ *     .addHql("from Pessoa p where p.nome like :nome")
+ *     .addCriteria(new Pessoa());
+ * warmUp.start();
+ * ...
+ * boolean healthy = warmUp.isReady();
+ *
+ * A aplicação fica pronta quando a fábrica e as conexões forem criadas. Consultas que falharem
+ * não impedem que a aplicação fique pronta e são listadas em getFailures e getReport.
+ * @author Rodrigo Marconato
+ */
+public class WarmUp {
+
+    private final List<String> hqlList = new ArrayList<String>();
+    private final List<Object> criteriaList = new ArrayList<Object>();
+    private int connections = 1;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+    private volatile boolean ready;
+    private volatile Throwable error;
+    private Thread thread;
+
+    /**
+     * Define a quantidade de conexões abertas ao mesmo tempo, para que o pool já as tenha criadas
+     * @param connections Quantidade de conexões, padrão 1
+     * @return WarmUp
+     */
+    public WarmUp setConnections(int connections) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections deve ser maior que zero");
+        }
+        this.connections = connections;
+        return this;
+    }
+
+    /**
+     * Inclui uma consulta HQL a ser compilada. A consulta não é executada
+     * @param hql Consulta HQL, igual à usada pela aplicação
+     * @return WarmUp
+     */
+    public WarmUp addHql(String hql) {
+        this.hqlList.add(hql);
+        return this;
+    }
+
+    /**
+     * Inclui uma consulta por filtro a ser executada uma vez, como em findPaginate, com um registro por página
+     * @param filter Objeto VO contendo os filtros populados nos mesmos atributos usados pela aplicação
+     * @return WarmUp
+     */
+    public WarmUp addCriteria(Object filter) {
+        this.criteriaList.add(filter);
+        return this;
+    }
+
+    /**
+     * Inicia o aquecimento em uma thread de segundo plano
+     */
+    public synchronized void start() {
+        if (this.thread != null) {
+            throw new IllegalStateException("O aquecimento já foi iniciado");
+        }
+        this.thread = new Thread(new Runnable() {
+            public void run() {
+                warmUp();
+            }
+        }, "jbc-warm-up");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Verifica se a fábrica de sessões e as conexões estão prontas
+     * @return true quando a aplicação estiver pronta para atender
+     */
+    public boolean isReady() {
+        return this.ready;
+    }
+
+    /**
+     * Verifica se o aquecimento terminou, com ou sem sucesso
+     * @return true quando o aquecimento terminou
+     */
+    public boolean isDone() {
+        return this.done.getCount() == 0;
+    }
+
+    /**
+     * Aguarda o fim do aquecimento
+     * @param timeoutMillis Tempo máximo de espera em milissegundos
+     * @return true se a aplicação ficou pronta dentro do tempo
+     * @throws InterruptedException
+     */
+    public boolean await(long timeoutMillis) throws InterruptedException {
+        this.done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        return this.ready;
+    }
+
+    /**
+     * Erro que impediu a criação da fábrica de sessões ou das conexões
+     * @return Erro, ou null
+     */
+    public Throwable getError() {
+        return this.error;
+    }
+
+    /**
+     * Consultas que não puderam ser compiladas ou executadas, com o seu erro
+     * @return Lista de falhas
+     */
+    public List<String> getFailures() {
+        synchronized (this.failures) {
+            return new ArrayList<String>(this.failures);
+        }
+    }
+
+    /**
+     * Relatório do aquecimento com a situação, o tempo de cada etapa em milissegundos e as falhas
+     * @return Relatório em texto
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(this.ready ? "pronto" : (this.isDone() ? "falhou" : "aquecendo"));
+        synchronized (this.timings) {
+            for (Entry<String, Long> timing : this.timings.entrySet()) {
+                report.append(", ").append(timing.getKey()).append("=").append(timing.getValue()).append("ms");
+            }
+        }
+        if (this.error != null) {
+            report.append("\nerro: ").append(this.error);
+        }
+        for (String failure : this.getFailures()) {
+            report.append("\nfalha: ").append(failure);
+        }
+        return report.toString();
+    }
+
+    private void warmUp() {
+        try {
+            long start = System.nanoTime();
+            HibernateUtil.getInstance();
+            start = this.timing("fabrica", start);
+
+            this.openConnections();
+            Transaction.getInstance();
+            this.timing("conexoes", start);
+            this.ready = true;
+
+            this.compileHql();
+            this.runCriteria();
+        } catch (Throwable e) {
+            this.error = e;
+        } finally {
+            this.done.countDown();
+        }
+    }
+
+    /**
+     * Abre as conexões ao mesmo tempo e as devolve ao pool
+     */
+    private void openConnections() {
+        List<Session> sessions = new ArrayList<Session>(this.connections);
+        try {
+            for (int i = 0; i < this.connections; i++) {
+                Session session = HibernateUtil.getInstance().getSession();
+                sessions.add(session);
+                session.doWork(new Work() {
+                    public void execute(Connection connection) throws SQLException {
+                        connection.getMetaData();
+                    }
+                });
+            }
+        } finally {
+            for (Session session : sessions) {
+                session.close();
+            }
+        }
+    }
+
+    private void compileHql() {
+        if (this.hqlList.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Session session = HibernateUtil.getInstance().getSession();
+        try {
+            for (String hql : this.hqlList) {
+                try {
+                    session.createQuery(hql);
+                } catch (RuntimeException e) {
+                    this.failures.add(hql + ": " + e);
+                }
+            }
+        } finally {
+            session.close();
+        }
+        this.timing("hql", start);
+    }
+
+    private void runCriteria() {
+        if (this.criteriaList.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Session session = HibernateUtil.getInstance().getSession();
+        try {
+            Dao<Object> dao = new Dao<Object>(session);
+            for (Object filter : this.criteriaList) {
+                try {
+                    dao.findPaginate(filter, 0, 1, null, Controller.ORDER_ASC);
+                } catch (Exception e) {
+                    this.failures.add(filter.getClass().getName() + ": " + e);
+                } finally {
+                    session.clear();
+                }
+            }
+        } finally {
+            session.close();
+        }
+        this.timing("criteria", start);
+    }
+
+    private long timing(String step, long start) {
+        long now = System.nanoTime();
+        this.timings.put(step, TimeUnit.NANOSECONDS.toMillis(now - start));
+        return now;
+    }
+}
@@ -0,0 +1,255 @@
+package br.com.jbc.controller;
+
+import br.com.jbc.db.ChangeEventBus;
+import br.com.jbc.db.HibernateUtil;
+import br.com.jbc.util.JBCException;
+import br.com.jbc.util.ResultFuture;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+
+/**
+ * Fila de gravação posterior (write-behind) para insertOrUpdate. As gravações pendentes de uma
+ * mesma entidade são unidas pela chave primária, prevalecendo a última, e gravadas em lotes,
+ * cada lote em uma única transação, quando a fila atinge o tamanho do lote ou quando a gravação
+ * mais antiga espera pelo intervalo informado. Quando a fila está cheia quem grava aguarda.
+ *
+ * A gravação é feita por uma thread e uma sessão próprias, independentes de Transaction.getInstance().
+ * O objeto informado é gravado no estado em que estiver no momento da gravação do lote.
+ * As leituras em réplicas de quem gravou não esperam pela gravação posterior; para ler o que
+ * foi gravado aguarde o future com GroupCommitExecutor.await.
+ * @author Rodrigo Marconato
+ * @param <T> Value Object de controle
+ */
+public class WriteBehindBuffer<T> {
+
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+
+    private final LinkedHashMap<Object, Pending<T>> pending = new LinkedHashMap<Object, Pending<T>>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushNeeded = lock.newCondition();
+
+    private final Session session;
+    private final Dao<T> dao;
+    private final Thread flusher;
+    private boolean closed;
+
+    /**
+     * Cria a fila e inicia a thread de gravação
+     * @param capacity Quantidade máxima de entidades pendentes antes de bloquear quem grava
+     * @param batchSize Quantidade máxima de entidades gravadas por transação
+     * @param flushIntervalMillis Tempo máximo que uma gravação espera na fila
+     */
+    public WriteBehindBuffer(int capacity, int batchSize, long flushIntervalMillis) {
+        if (capacity <= 0 || batchSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("capacity, batchSize e flushIntervalMillis devem ser maiores que zero");
+        }
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.session = HibernateUtil.getInstance().getSession();
+        this.dao = new Dao<T>(this.session);
+        this.flusher = new Thread(new Runnable() {
+            public void run() {
+                flushLoop();
+            }
+        }, "jbc-write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Agenda a inclusão ou atualização do registro. Se já houver uma gravação pendente da mesma
+     * entidade ela é substituída e o mesmo future é retornado
+     * @param obj Objeto VO de persistência
+     * @return Future concluído com true quando o lote for confirmado, ou com o erro da gravação
+     * @throws Exception Quando a fila estiver fechada ou a espera for interrompida
+     */
+    public Future<Boolean> insertOrUpdate(T obj) throws Exception {
+        Object key = this.keyOf(obj);
+        this.lock.lockInterruptibly();
+        try {
+            if (this.closed) {
+                throw new JBCException(JBCException.FILA_FECHADA);
+            }
+            Pending<T> entry = this.pending.get(key);
+            if (entry != null) {
+                entry.entity = obj;
+                return entry.future;
+            }
+            while (this.pending.size() >= this.capacity) {
+                this.notFull.await();
+                if (this.closed) {
+                    throw new JBCException(JBCException.FILA_FECHADA);
+                }
+            }
+            entry = new Pending<T>(obj);
+            this.pending.put(key, entry);
+            if (this.pending.size() == 1 || this.pending.size() >= this.batchSize) {
+                this.flushNeeded.signal();
+            }
+            return entry.future;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Quantidade de entidades aguardando gravação
+     * @return Quantidade de entidades pendentes
+     */
+    public int size() {
+        this.lock.lock();
+        try {
+            return this.pending.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Grava as entidades pendentes, encerra a thread de gravação e fecha a sessão
+     * @throws InterruptedException
+     */
+    public void close() throws InterruptedException {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            this.flushNeeded.signal();
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+        this.flusher.join();
+        this.session.close();
+    }
+
+    /**
+     * Chave usada para unir as gravações: a chave primária, ou o próprio objeto quando ainda não
+     * tiver chave primária
+     */
+    private Object keyOf(T obj) {
+        ClassMetadata metadata = this.session.getSessionFactory().getClassMetadata(obj.getClass());
+        Serializable id = metadata == null ? null : metadata.getIdentifier(obj, (SessionImplementor) this.session);
+        if (id == null || (id instanceof Number && ((Number) id).longValue() == 0)) {
+            return new Object();
+        }
+        return id;
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<Pending<T>> batch;
+            this.lock.lock();
+            try {
+                while (!this.closed && !this.isFlushDue()) {
+                    if (this.pending.isEmpty()) {
+                        this.flushNeeded.await();
+                    } else {
+                        long waited = System.nanoTime() - this.pending.values().iterator().next().enqueued;
+                        this.flushNeeded.awaitNanos(this.flushIntervalNanos - waited);
+                    }
+                }
+                if (this.closed && this.pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<Pending<T>>(Math.min(this.batchSize, this.pending.size()));
+                Iterator<Pending<T>> it = this.pending.values().iterator();
+                while (it.hasNext() && batch.size() < this.batchSize) {
+                    batch.add(it.next());
+                    it.remove();
+                }
+                this.notFull.signalAll();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                this.lock.unlock();
+            }
+            this.write(batch);
+        }
+    }
+
+    private boolean isFlushDue() {
+        if (this.pending.isEmpty()) {
+            return false;
+        }
+        if (this.pending.size() >= this.batchSize) {
+            return true;
+        }
+        return System.nanoTime() - this.pending.values().iterator().next().enqueued >= this.flushIntervalNanos;
+    }
+
+    /**
+     * Grava o lote em uma transação. Se o lote falhar cada entidade é gravada em uma transação
+     * própria, assim cada future recebe o resultado da sua gravação
+     */
+    private void write(List<Pending<T>> batch) {
+        List<T> entities = new ArrayList<T>(batch.size());
+        for (Pending<T> entry : batch) {
+            entities.add(entry.entity);
+        }
+        try {
+            this.writeTransaction(entities);
+            for (Pending<T> entry : batch) {
+                entry.future.complete(true);
+            }
+            return;
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                batch.get(0).future.fail(e);
+                return;
+            }
+        }
+        for (Pending<T> entry : batch) {
+            try {
+                List<T> single = new ArrayList<T>(1);
+                single.add(entry.entity);
+                this.writeTransaction(single);
+                entry.future.complete(true);
+            } catch (Exception e) {
+                entry.future.fail(e);
+            }
+        }
+    }
+
+    private void writeTransaction(List<T> entities) throws Exception {
+        org.hibernate.Transaction transaction = this.session.beginTransaction();
+        try {
+            this.dao.insertOrUpdate(entities);
+            transaction.commit();
+            ChangeEventBus.publish(this.session);
+        } catch (Exception e) {
+            transaction.rollback();
+            ChangeEventBus.discard(this.session);
+            throw e;
+        } finally {
+            this.session.clear();
+        }
+    }
+
+    /**
+     * Gravação pendente de uma entidade
+     */
+    private static class Pending<T> {
+
+        private T entity;
+        private final long enqueued = System.nanoTime();
+        private final ResultFuture<Boolean> future = new ResultFuture<Boolean>();
+
+        Pending(T entity) {
+            this.entity = entity;
+        }
+    }
+}
@@ -34,6 +34,19 @@ public class BuildCriteria {
      * @return Objeto Criteria com restrições e álias
      */
     public static Criteria createCriteria(Object entity, org.hibernate.Session session, int searchType){
+        return createCriteria(entity, session, searchType, new String[0]);
+    }
+    
+    /**
+     * Criar um objeto org.hibernate.Criteria com restrições e álias necessários
+     * para realização da consulta, incluindo os álias das associações usadas pelos atributos informados
+     * @param entity Entidade VO
+     * @param session Sessão hibernate usada para Criar o Criteria
+     * @param searchType Tipo de pesquisa, sendo Controller.SEARCH_LIKE_STRING E Controller.SEARCH_EQUALS_STRING
+     * @param properties Atributos que serão usados na consulta, por exemplo "cidade.nome"
+     * @return Objeto Criteria com restrições e álias
+     */
+    public static Criteria createCriteria(Object entity, org.hibernate.Session session, int searchType, String... properties){
         
         Criteria criteria = session.createCriteria(entity.getClass());
         
@@ -44,12 +57,7 @@ public class BuildCriteria {
         for (Entry<String, Object> entry : restrictions.entrySet()) {
             
             alias.putAll(parseAlias(entry.getKey()));
-            if (entry.getKey().contains(".")){
-                rest = entry.getKey().substring(0, entry.getKey().lastIndexOf("."));
-                rest = entry.getKey().replace(rest, alias.get(rest));
-            }else{
-                rest = entry.getKey();
-            }
+            rest = parsePropertyAlias(entry.getKey());
             
             if (entry.getValue() instanceof String && searchType == Controller.SEARCH_LIKE_STRING){
                 criteria.add(Restrictions.ilike(rest, entry.getValue().toString(), MatchMode.ANYWHERE));
@@ -57,6 +65,10 @@ public class BuildCriteria {
                 criteria.add(Restrictions.eq(rest, entry.getValue()));
             }
         }
+        
+        for (String property : properties) {
+            alias.putAll(parseAlias(property));
+        }
             
         String key;
         for (Iterator it = alias.keySet().iterator(); it.hasNext();) {
@@ -132,6 +144,19 @@ public class BuildCriteria {
         return alias;
     }
     
+    /**
+     * Gera o nome do atributo usando o álias da associação, por exemplo
+     * "pessoa.cidade.nome" é consultado como "cidade.nome"
+     * @param key Caminho do atributo a partir da entidade
+     * @return Nome do atributo com o álias da associação
+     */
+    public static String parsePropertyAlias(String key) {
+        if (!key.contains(".")) {
+            return key;
+        }
+        String path = key.substring(0, key.lastIndexOf("."));
+        return parseAlias(key).get(path) + key.substring(key.lastIndexOf("."));
+    }
     
     /**
      * Carrega os campos do objeto e super classes que tiverem anotações hibernate
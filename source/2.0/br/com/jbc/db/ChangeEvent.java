@@ -0,0 +1,69 @@
+package br.com.jbc.db;
+
+import java.io.Serializable;
+
+/**
+ * Alteração de uma entidade confirmada no banco de dados
+ * @author Rodrigo Marconato
+ */
+public class ChangeEvent implements Serializable {
+
+    public static final int INSERT = 0;
+    public static final int UPDATE = 1;
+    public static final int DELETE = 2;
+
+    /**
+     * Gravação por insertOrUpdate, que pode ter incluído ou atualizado o registro
+     */
+    public static final int INSERT_OR_UPDATE = 3;
+
+    private final String entityName;
+    private final Serializable id;
+    private final int operation;
+    private final long commitTime;
+
+    ChangeEvent(String entityName, Serializable id, int operation, long commitTime) {
+        this.entityName = entityName;
+        this.id = id;
+        this.operation = operation;
+        this.commitTime = commitTime;
+    }
+
+    /**
+     * Nome da entidade alterada, normalmente o nome completo da sua classe
+     * @return Nome da entidade
+     */
+    public String getEntityName() {
+        return this.entityName;
+    }
+
+    /**
+     * Chave primária do registro alterado
+     * @return Chave primária
+     */
+    public Serializable getId() {
+        return this.id;
+    }
+
+    /**
+     * Operação feita no registro
+     * @return ChangeEvent.INSERT, UPDATE, DELETE ou INSERT_OR_UPDATE
+     */
+    public int getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * Momento do commit
+     * @return Milissegundos desde 01/01/1970
+     */
+    public long getCommitTime() {
+        return this.commitTime;
+    }
+
+    @Override
+    public String toString() {
+        String[] names = {"INSERT", "UPDATE", "DELETE", "INSERT_OR_UPDATE"};
+        return names[this.operation] + " " + this.entityName + "#" + this.id;
+    }
+}
@@ -0,0 +1,294 @@
+package br.com.jbc.db;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+
+/**
+ * Publicação das alterações de entidades gravadas pelo framework. O Dao registra cada gravação
+ * na sessão e, depois do commit, as alterações são publicadas em um buffer circular sem bloqueio,
+ * de onde cada listener as lê em lotes por uma thread própria. Quem grava nunca espera pelos
+ * listeners: um listener que fica mais de RING_SIZE alterações atrasado perde as mais antigas
+ * e é avisado por onOverflow.
+ *
+ * Sem listeners registrados as gravações não são registradas. Gravações feitas fora do Dao, como
+ * consultas HQL de update, não são publicadas.
+ * @author Rodrigo Marconato
+ */
+public class ChangeEventBus {
+
+    /**
+     * Tamanho do buffer circular, potência de 2
+     */
+    public static final int RING_SIZE = 65536;
+
+    private static final int MASK = RING_SIZE - 1;
+
+    /**
+     * Tempo máximo que a thread do listener espera sem ser acordada
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<Entry>(RING_SIZE);
+
+    /**
+     * Próxima posição a ser ocupada no buffer
+     */
+    private static final AtomicLong head = new AtomicLong();
+
+    private static final CopyOnWriteArrayList<Consumer> consumers = new CopyOnWriteArrayList<Consumer>();
+
+    private static final AtomicInteger threadSequence = new AtomicInteger();
+
+    /**
+     * Gravações de cada sessão aguardando o commit
+     */
+    private static final Map<Session, List<Pending>> pending = Collections.synchronizedMap(new WeakHashMap<Session, List<Pending>>());
+
+    private static volatile boolean active;
+
+    /**
+     * Registra um listener, que passa a receber as alterações confirmadas a partir deste momento
+     * @param listener Listener
+     * @param maxBatch Quantidade máxima de alterações entregues de uma vez
+     */
+    public static synchronized void register(ChangeListener listener, int maxBatch) {
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("maxBatch deve ser maior que zero");
+        }
+        Consumer consumer = new Consumer(listener, maxBatch, head.get());
+        consumers.add(consumer);
+        active = true;
+        consumer.thread.start();
+    }
+
+    /**
+     * Remove um listener e encerra a sua thread
+     * @param listener Listener registrado
+     */
+    public static synchronized void unregister(ChangeListener listener) {
+        for (Consumer consumer : consumers) {
+            if (consumer.listener == listener) {
+                consumers.remove(consumer);
+                consumer.running = false;
+                LockSupport.unpark(consumer.thread);
+            }
+        }
+        active = !consumers.isEmpty();
+        if (!active) {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Registra a gravação de uma entidade na sessão, para ser publicada no commit
+     * @param session Sessão que gravou a entidade
+     * @param entity Entidade gravada, a instância que ficará com a chave primária
+     * @param operation ChangeEvent.INSERT, UPDATE, DELETE ou INSERT_OR_UPDATE
+     */
+    public static void record(Session session, Object entity, int operation) {
+        if (!active || entity == null) {
+            return;
+        }
+        synchronized (pending) {
+            List<Pending> list = pending.get(session);
+            if (list == null) {
+                list = new ArrayList<Pending>();
+                pending.put(session, list);
+            }
+            list.add(new Pending(entity, operation));
+        }
+    }
+
+    /**
+     * Quantidade de gravações da sessão aguardando o commit, usada com rollbackTo ao desfazer um savepoint
+     * @param session Sessão
+     * @return Marca das gravações registradas até agora
+     */
+    public static int mark(Session session) {
+        if (!active) {
+            return 0;
+        }
+        List<Pending> list = pending.get(session);
+        return list == null ? 0 : list.size();
+    }
+
+    /**
+     * Descarta as gravações registradas depois da marca
+     * @param session Sessão
+     * @param mark Valor retornado por mark
+     */
+    public static void rollbackTo(Session session, int mark) {
+        synchronized (pending) {
+            List<Pending> list = pending.get(session);
+            if (list != null && list.size() > mark) {
+                list.subList(mark, list.size()).clear();
+            }
+        }
+    }
+
+    /**
+     * Descarta as gravações da sessão, chamado no rollback
+     * @param session Sessão
+     */
+    public static void discard(Session session) {
+        if (active) {
+            pending.remove(session);
+        }
+    }
+
+    /**
+     * Publica as gravações da sessão, chamado depois do commit e antes da limpeza da sessão
+     * @param session Sessão
+     */
+    public static void publish(Session session) {
+        if (!active) {
+            return;
+        }
+        List<Pending> list = pending.remove(session);
+        if (list == null || list.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Pending entry : list) {
+            ClassMetadata metadata = metadata(session, entry.entity.getClass());
+            if (metadata == null) {
+                continue;
+            }
+            Serializable id = metadata.getIdentifier(entry.entity, (SessionImplementor) session);
+            ChangeEvent event = new ChangeEvent(metadata.getEntityName(), id, entry.operation, now);
+            long sequence = head.getAndIncrement();
+            ring.set((int) (sequence & MASK), new Entry(sequence, event));
+        }
+        for (Consumer consumer : consumers) {
+            LockSupport.unpark(consumer.thread);
+        }
+    }
+
+    /**
+     * Mapeamento da entidade, procurando nas superclasses quando a instância for um proxy
+     */
+    private static ClassMetadata metadata(Session session, Class type) {
+        for (Class current = type; current != null; current = current.getSuperclass()) {
+            ClassMetadata metadata = session.getSessionFactory().getClassMetadata(current);
+            if (metadata != null) {
+                return metadata;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Posição do buffer com a sequência da alteração, que identifica se a posição já foi
+     * preenchida ou sobrescrita
+     */
+    private static class Entry {
+
+        private final long sequence;
+        private final ChangeEvent event;
+
+        Entry(long sequence, ChangeEvent event) {
+            this.sequence = sequence;
+            this.event = event;
+        }
+    }
+
+    /**
+     * Gravação aguardando o commit
+     */
+    private static class Pending {
+
+        private final Object entity;
+        private final int operation;
+
+        Pending(Object entity, int operation) {
+            this.entity = entity;
+            this.operation = operation;
+        }
+    }
+
+    /**
+     * Leitura do buffer por um listener, com a posição da próxima alteração a ser entregue
+     */
+    private static class Consumer implements Runnable {
+
+        private final ChangeListener listener;
+        private final int maxBatch;
+        private final Thread thread;
+        private long cursor;
+        private volatile boolean running = true;
+
+        Consumer(ChangeListener listener, int maxBatch, long cursor) {
+            this.listener = listener;
+            this.maxBatch = maxBatch;
+            this.cursor = cursor;
+            this.thread = new Thread(this, "jbc-change-" + threadSequence.incrementAndGet());
+            this.thread.setDaemon(true);
+        }
+
+        public void run() {
+            List<ChangeEvent> batch = new ArrayList<ChangeEvent>(this.maxBatch);
+            while (this.running) {
+                long available = head.get();
+                if (available - this.cursor > RING_SIZE) {
+                    long lost = available - RING_SIZE - this.cursor;
+                    this.cursor += lost;
+                    this.deliver(batch);
+                    this.overflow(lost);
+                    continue;
+                }
+                if (this.cursor < available) {
+                    Entry entry = ring.get((int) (this.cursor & MASK));
+                    if (entry != null && entry.sequence == this.cursor) {
+                        batch.add(entry.event);
+                        this.cursor++;
+                        if (batch.size() == this.maxBatch) {
+                            this.deliver(batch);
+                        }
+                    } else if (entry != null && entry.sequence > this.cursor) {
+                        //Sobrescrita depois da verificação, a próxima volta descarta as perdidas
+                        continue;
+                    } else {
+                        //Posição reservada e ainda não preenchida por quem publica
+                        Thread.yield();
+                    }
+                    continue;
+                }
+                this.deliver(batch);
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+
+        private void deliver(List<ChangeEvent> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                this.listener.onChanges(new ArrayList<ChangeEvent>(batch));
+            } catch (RuntimeException e) {
+                System.err.println("Erro no listener de alterações " + this.listener + ": " + e);
+            }
+            batch.clear();
+        }
+
+        private void overflow(long lost) {
+            try {
+                this.listener.onOverflow(lost);
+            } catch (RuntimeException e) {
+                System.err.println("Erro no listener de alterações " + this.listener + ": " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package br.com.jbc.db;
+
+import java.util.List;
+
+/**
+ * Recebe as alterações de entidades confirmadas, registrado em ChangeEventBus.register.
+ * Cada listener é chamado por uma thread própria, na ordem dos commits
+ * @author Rodrigo Marconato
+ */
+public interface ChangeListener {
+
+    /**
+     * Recebe um lote de alterações
+     * @param events Alterações na ordem em que foram publicadas
+     */
+    void onChanges(List<ChangeEvent> events);
+
+    /**
+     * Informa que o listener ficou tão atrasado que alterações foram sobrescritas no buffer antes
+     * de serem entregues. Um cache, por exemplo, deve ser limpo por completo
+     * @param lost Quantidade de alterações perdidas
+     */
+    void onOverflow(long lost);
+}
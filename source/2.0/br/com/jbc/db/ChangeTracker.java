@@ -0,0 +1,250 @@
+package br.com.jbc.db;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxyHelper;
+import org.hibernate.type.Type;
+
+/**
+ * Controle de alterações das entidades por atributo. Guarda uma cópia dos valores de cada
+ * entidade lida e, na atualização, compara os valores atuais com a cópia, gravando somente
+ * os atributos alterados com um UPDATE sem SELECT prévio. Entidades sem alteração não são gravadas.
+ *
+ * As cópias são mantidas enquanto a entidade estiver sendo usada pela aplicação, pois a
+ * referência à entidade é fraca. Entidades que usam equals e hashCode pela chave primária
+ * compartilham a cópia da última leitura do mesmo registro.
+ *
+ * O UPDATE parcial é registrado no ChangeEventBus; entidades sem alteração não geram evento.
+ *
+ * Retorna false em update quando a entidade precisar ser gravada com merge: sem cópia, versionada,
+ * com herança, com chave composta, com componente ou coleção alterados ou com registro inexistente.
+ *
+ * A cópia de uma entidade gravada só passa a valer depois do commit da transação, informado por
+ * commit(Session); até lá ela vale somente para a própria sessão, e discard(Session) a descarta
+ * no rollback, para que uma nova tentativa grave novamente os atributos alterados.
+ * @author Rodrigo Marconato
+ */
+public class ChangeTracker {
+
+    /**
+     * Valores das entidades no momento da leitura ou da última gravação
+     */
+    private final Map<Object, Object[]> snapshots = Collections.synchronizedMap(new WeakHashMap<Object, Object[]>());
+
+    /**
+     * Cópias das entidades gravadas em cada sessão, de cada ChangeTracker, aguardando o commit
+     */
+    private static final Map<Session, Map<ChangeTracker, Map<Object, Object[]>>> written =
+            Collections.synchronizedMap(new WeakHashMap<Session, Map<ChangeTracker, Map<Object, Object[]>>>());
+
+    /**
+     * Guarda a cópia dos valores da entidade. Objetos que não são entidades mapeadas são ignorados
+     * @param session Sessão hibernate que leu a entidade
+     * @param entity Entidade lida
+     */
+    public void track(Session session, Object entity) {
+        if (entity == null) {
+            return;
+        }
+        SessionFactoryImplementor factory = ((SessionImplementor) session).getFactory();
+        if (factory.getClassMetadata(entity.getClass()) == null) {
+            return;
+        }
+        EntityPersister persister = factory.getEntityPersister(session.getEntityName(entity));
+        this.snapshots.put(entity, this.copy(persister, persister.getPropertyValues(entity), factory));
+    }
+
+    /**
+     * Guarda a cópia dos valores da entidade gravada pela sessão, que passa a valer no commit
+     * @param session Sessão hibernate com a transação que gravou a entidade
+     * @param entity Entidade gravada
+     */
+    public void trackWritten(Session session, Object entity) {
+        if (entity == null) {
+            return;
+        }
+        SessionFactoryImplementor factory = ((SessionImplementor) session).getFactory();
+        if (factory.getClassMetadata(entity.getClass()) == null) {
+            return;
+        }
+        EntityPersister persister = factory.getEntityPersister(session.getEntityName(entity));
+        this.write(session, entity, this.copy(persister, persister.getPropertyValues(entity), factory));
+    }
+
+    /**
+     * Guarda a cópia dos valores de cada entidade da lista
+     * @param session Sessão hibernate que leu as entidades
+     * @param entities Entidades lidas
+     */
+    public void trackAll(Session session, List<?> entities) {
+        if (entities == null) {
+            return;
+        }
+        for (Object entity : entities) {
+            this.track(session, entity);
+        }
+    }
+
+    /**
+     * Descarta a cópia dos valores da entidade
+     * @param entity Entidade
+     */
+    public void untrack(Object entity) {
+        this.snapshots.remove(entity);
+        synchronized (written) {
+            for (Map<ChangeTracker, Map<Object, Object[]>> trackers : written.values()) {
+                Map<Object, Object[]> entities = trackers.get(this);
+                if (entities != null) {
+                    entities.remove(entity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Confirma as cópias das entidades gravadas pela sessão, depois do commit da transação
+     * @param session Sessão hibernate
+     */
+    public static void commit(Session session) {
+        Map<ChangeTracker, Map<Object, Object[]>> trackers = written.remove(session);
+        if (trackers == null) {
+            return;
+        }
+        for (Map.Entry<ChangeTracker, Map<Object, Object[]>> tracker : trackers.entrySet()) {
+            tracker.getKey().snapshots.putAll(tracker.getValue());
+        }
+    }
+
+    /**
+     * Descarta as cópias das entidades gravadas pela sessão, depois do rollback da transação
+     * @param session Sessão hibernate
+     */
+    public static void discard(Session session) {
+        written.remove(session);
+    }
+
+    /**
+     * Grava somente os atributos alterados desde a leitura da entidade
+     * @param session Sessão hibernate com a transação ativa
+     * @param entity Entidade alterada
+     * @return true se a entidade foi gravada ou não tinha alterações, false se precisar ser gravada com merge
+     */
+    public boolean update(Session session, Object entity) {
+
+        Object[] snapshot = this.snapshot(session, entity);
+        if (snapshot == null) {
+            return false;
+        }
+        SessionImplementor implementor = (SessionImplementor) session;
+        SessionFactoryImplementor factory = implementor.getFactory();
+        //O nome da entidade vem da classe, pois session.getEntityName só aceita objetos da sessão
+        EntityPersister persister = factory.getEntityPersister(HibernateProxyHelper.getClassWithoutInitializingProxy(entity).getName());
+        String idName = persister.getIdentifierPropertyName();
+        Serializable id = persister.getIdentifier(entity, implementor);
+        if (persister.isVersioned() || persister.isInherited() || idName == null || id == null) {
+            return false;
+        }
+
+        String[] names = persister.getPropertyNames();
+        Type[] types = persister.getPropertyTypes();
+        boolean[] updatable = persister.getPropertyUpdateability();
+        Object[] values = persister.getPropertyValues(entity);
+        List<Integer> dirty = new ArrayList<Integer>();
+
+        for (int i = 0; i < values.length; i++) {
+            if (types[i].isCollectionType()) {
+                if (values[i] != snapshot[i] || (values[i] instanceof PersistentCollection && ((PersistentCollection) values[i]).isDirty())) {
+                    return false;
+                }
+            } else if (updatable[i] && !types[i].isEqual(snapshot[i], values[i], factory)) {
+                if (types[i].isComponentType()) {
+                    return false;
+                }
+                dirty.add(i);
+            }
+        }
+
+        if (dirty.isEmpty()) {
+            return true;
+        }
+
+        //O UPDATE não passa pela sessão, então a cópia gerenciada da entidade ficaria desatualizada.
+        //Ela é removida antes do flush, senão o flush gravaria a linha inteira antes do UPDATE parcial
+        Object managed = implementor.getPersistenceContext().getEntity(implementor.generateEntityKey(id, persister));
+        if (managed != null) {
+            session.evict(managed);
+        }
+        session.flush();
+
+        StringBuilder hql = new StringBuilder("update ").append(persister.getEntityName()).append(" set ");
+        for (int i = 0; i < dirty.size(); i++) {
+            hql.append(i > 0 ? ", " : "").append(names[dirty.get(i)]).append(" = :p").append(i);
+        }
+        hql.append(" where ").append(idName).append(" = :id");
+
+        Query query = session.createQuery(hql.toString());
+        for (int i = 0; i < dirty.size(); i++) {
+            query.setParameter("p" + i, values[dirty.get(i)], types[dirty.get(i)]);
+        }
+        query.setParameter("id", id, persister.getIdentifierType());
+        if (query.executeUpdate() == 0) {
+            return false;
+        }
+
+        ChangeEventBus.record(session, entity, ChangeEvent.UPDATE);
+        this.write(session, entity, this.copy(persister, values, factory));
+        return true;
+    }
+
+    /**
+     * Cópia gravada pela sessão e ainda não confirmada, ou a última cópia confirmada
+     */
+    private Object[] snapshot(Session session, Object entity) {
+        synchronized (written) {
+            Map<ChangeTracker, Map<Object, Object[]>> trackers = written.get(session);
+            Map<Object, Object[]> entities = trackers == null ? null : trackers.get(this);
+            Object[] snapshot = entities == null ? null : entities.get(entity);
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+        return this.snapshots.get(entity);
+    }
+
+    private void write(Session session, Object entity, Object[] snapshot) {
+        synchronized (written) {
+            Map<ChangeTracker, Map<Object, Object[]>> trackers = written.get(session);
+            if (trackers == null) {
+                trackers = new HashMap<ChangeTracker, Map<Object, Object[]>>();
+                written.put(session, trackers);
+            }
+            Map<Object, Object[]> entities = trackers.get(this);
+            if (entities == null) {
+                entities = new HashMap<Object, Object[]>();
+                trackers.put(this, entities);
+            }
+            entities.put(entity, snapshot);
+        }
+    }
+
+    private Object[] copy(EntityPersister persister, Object[] values, SessionFactoryImplementor factory) {
+        Type[] types = persister.getPropertyTypes();
+        Object[] snapshot = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            //Coleções são comparadas pela referência e pela marcação de alteração do hibernate
+            snapshot[i] = types[i].isCollectionType() ? values[i] : types[i].deepCopy(values[i], factory);
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,134 @@
+package br.com.jbc.db;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.FlushMode;
+import org.hibernate.Query;
+import org.hibernate.Session;
+
+/**
+ * Plano de carga das associações de uma consulta. As associações ManyToOne informadas em
+ * join são carregadas na mesma consulta através de JOIN; as coleções informadas em batch
+ * são inicializadas depois da consulta, com uma consulta para cada lote de entidades, em vez
+ * de uma consulta por entidade no momento do acesso.
+ * @author Rodrigo Marconato
+ */
+public class FetchPlan implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Caminhos das associações carregadas com JOIN, por exemplo "cliente" ou "cliente.cidade"
+     */
+    private final List<String> joins = new ArrayList<String>();
+
+    /**
+     * Coleções da entidade e a quantidade de entidades inicializadas por consulta
+     */
+    private final Map<String, Integer> batches = new LinkedHashMap<String, Integer>();
+
+    /**
+     * Adiciona associações ManyToOne ou OneToOne que serão carregadas com JOIN
+     * @param paths Caminhos das associações a partir da entidade consultada
+     * @return O próprio plano
+     */
+    public FetchPlan join(String... paths) {
+        for (String path : paths) {
+            this.joins.add(path);
+        }
+        return this;
+    }
+
+    /**
+     * Adiciona uma coleção da entidade que será inicializada em lotes depois da consulta
+     * @param collection Nome da coleção na entidade consultada, por exemplo "itens"
+     * @param batchSize Quantidade de entidades que terão a coleção inicializada por consulta
+     * @return O próprio plano
+     */
+    public FetchPlan batch(String collection, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize deve ser maior que zero");
+        }
+        this.batches.put(collection, batchSize);
+        return this;
+    }
+
+    /**
+     * @return Caminhos das associações carregadas com JOIN
+     */
+    public List<String> getJoins() {
+        return joins;
+    }
+
+    /**
+     * @return Coleções inicializadas em lotes e o tamanho do lote de cada uma
+     */
+    public Map<String, Integer> getBatches() {
+        return batches;
+    }
+
+    /**
+     * Aplica os JOINs do plano ao Criteria
+     * @param criteria Criteria da consulta
+     * @return O mesmo Criteria
+     */
+    public Criteria apply(Criteria criteria) {
+        for (String path : this.joins) {
+            criteria.setFetchMode(path, FetchMode.JOIN);
+        }
+        return criteria;
+    }
+
+    /**
+     * Inicializa as coleções do plano nas entidades retornadas pela consulta. As entidades
+     * precisam estar na sessão informada, que recebe as coleções carregadas
+     * @param session Sessão hibernate onde as entidades foram carregadas
+     * @param entityClass Classe da entidade consultada
+     * @param entities Entidades retornadas pela consulta
+     */
+    public void initialize(Session session, Class entityClass, List entities) {
+        this.initialize(session, entityClass, entities, false);
+    }
+
+    /**
+     * Inicializa as coleções do plano nas entidades retornadas pela consulta. No modo somente
+     * leitura as entidades das coleções também são carregadas somente leitura, sem dirty checking,
+     * e a sessão não executa flush antes das consultas dos lotes
+     * @param session Sessão hibernate onde as entidades foram carregadas
+     * @param entityClass Classe da entidade consultada
+     * @param entities Entidades retornadas pela consulta
+     * @param readOnly true quando a consulta principal foi feita em modo somente leitura
+     */
+    public void initialize(Session session, Class entityClass, List entities, boolean readOnly) {
+        if (this.batches.isEmpty() || entities == null || entities.isEmpty()) {
+            return;
+        }
+
+        String entityName = session.getSessionFactory().getClassMetadata(entityClass).getEntityName();
+        String idName = session.getSessionFactory().getClassMetadata(entityClass).getIdentifierPropertyName();
+
+        List<Serializable> ids = new ArrayList<Serializable>(entities.size());
+        for (Object entity : entities) {
+            ids.add(session.getIdentifier(entity));
+        }
+
+        for (Entry<String, Integer> batch : this.batches.entrySet()) {
+            String hql = "select e from " + entityName + " e left join fetch e." + batch.getKey()
+                    + " where e." + idName + " in (:ids)";
+            for (int i = 0; i < ids.size(); i += batch.getValue()) {
+                Query query = session.createQuery(hql)
+                        .setParameterList("ids", ids.subList(i, Math.min(ids.size(), i + batch.getValue())));
+                if (readOnly) {
+                    query.setReadOnly(true).setFlushMode(FlushMode.MANUAL);
+                }
+                query.list();
+            }
+        }
+    }
+}
@@ -3,7 +3,12 @@ package br.com.jbc.db;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
@@ -12,30 +17,115 @@ import org.hibernate.service.ServiceRegistryBuilder;
 
 /**
  * Fábrica de sessão hibernate que lê informações do arquivo hibernate.cfg que deverá 
- * estar na raiz do projeto que estiver usando este framework
+ * estar na raiz do projeto que estiver usando este framework. Réplicas de leitura podem
+ * ser configuradas no hibernate.properties com jbc.replica.urls, jbc.replica.policy e
+ * jbc.replica.read_your_writes, e os shards usados por ShardedController com jbc.shard.urls.
+ * Com jbc.tenant.url ou jbc.tenant.schema cada cliente (tenant) escolhido pelo TenantResolver
+ * usa a sua própria fábrica de sessões, criada e fechada por TenantFactoryCache
  * @author Rodrigo Marconato
  */
 public class HibernateUtil {
     
     private static final String HIBERNATE_PROPERTIES_FILE_NAME = "hibernate.properties";
 
+    /**
+     * Propriedade com as URLs de conexão das réplicas de leitura, separadas por vírgula
+     */
+    public static final String REPLICA_URLS = "jbc.replica.urls";
+    
+    /**
+     * Propriedade com a política de escolha da réplica: round-robin (padrão) ou least-loaded
+     */
+    public static final String REPLICA_POLICY = "jbc.replica.policy";
+    
+    /**
+     * Propriedade com o tempo, em milissegundos, que as leituras continuam no banco principal após um commit
+     */
+    public static final String REPLICA_READ_YOUR_WRITES = "jbc.replica.read_your_writes";
+    
+    /**
+     * Propriedade com as URLs de conexão dos shards, separadas por vírgula, na ordem dos shards
+     */
+    public static final String SHARD_URLS = "jbc.shard.urls";
+    
+    /**
+     * Propriedade com o modelo da URL de conexão de cada cliente, contendo {tenant}
+     */
+    public static final String TENANT_URL = "jbc.tenant.url";
+    
+    /**
+     * Propriedade com o modelo do schema padrão de cada cliente, contendo {tenant}
+     */
+    public static final String TENANT_SCHEMA = "jbc.tenant.schema";
+    
+    /**
+     * Propriedade com o nome da classe TenantResolver, padrão ThreadTenantResolver
+     */
+    public static final String TENANT_RESOLVER = "jbc.tenant.resolver";
+    
+    /**
+     * Propriedade com o tempo, em milissegundos, sem acesso após o qual a fábrica do cliente é fechada
+     */
+    public static final String TENANT_IDLE_TIMEOUT = "jbc.tenant.idle_timeout";
+    
+    public static final String REPLICA_POLICY_LEAST_LOADED = "least-loaded";
+    
+    private static final long DEFAULT_READ_YOUR_WRITES = 1000;
+    
+    private static final long DEFAULT_TENANT_IDLE_TIMEOUT = 600000;
+    
+    private static final String CONNECTION_URL = "hibernate.connection.url";
+
     private SessionFactory factory;
     
-    private static HibernateUtil hibernateUtil; 
+    /**
+     * Fábricas das réplicas de leitura, vazio quando não houver réplicas
+     */
+    private SessionFactory[] replicas = new SessionFactory[0];
+    
+    /**
+     * Fábricas dos shards, vazio quando não houver shards
+     */
+    private SessionFactory[] shards = new SessionFactory[0];
+    
+    /**
+     * Quantidade de leituras em andamento em cada réplica
+     */
+    private AtomicIntegerArray replicaLoad;
+    
+    /**
+     * Próxima réplica da política round-robin
+     */
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    
+    private boolean leastLoaded;
+    
+    private long readYourWritesNanos;
+    
+    /**
+     * Momento do último commit no banco principal feito pela thread, null quando ela ainda não gravou
+     */
+    private final ThreadLocal<Long> lastWriteNanos = new ThreadLocal<Long>();
+    
+    /**
+     * Fábricas dos clientes, null quando não houver clientes configurados
+     */
+    private TenantFactoryCache tenants;
+    
+    private volatile TenantResolver tenantResolver;
+    
+    private static volatile HibernateUtil hibernateUtil; 
 
     protected HibernateUtil(){      
             
         try {
-            Configuration configuration = new Configuration().configure();
             Properties hibernateProperties = this.initConfigFileProperty();
+            this.factory = this.buildFactory(hibernateProperties, null);
             if (hibernateProperties != null){
-                configuration.setProperties(hibernateProperties);
-            }       
-            ServiceRegistryBuilder registry = new ServiceRegistryBuilder();
-            registry.applySettings(configuration.getProperties());
-            
-            ServiceRegistry serviceRegistry = registry.buildServiceRegistry();                    
-            this.factory = configuration.buildSessionFactory(serviceRegistry);
+                this.initReplicas(hibernateProperties);
+                this.shards = this.buildFactories(hibernateProperties, hibernateProperties.getProperty(SHARD_URLS));
+                this.initTenants(hibernateProperties);
+            }
         } catch (Throwable e) {
             // Make sure you log the exception, as it might be swallowed
             System.err.println("Initial SessionFactory creation failed." + e);
@@ -43,11 +133,94 @@ public class HibernateUtil {
         }
     }
     
+    /**
+     * Cria uma fábrica de sessões a partir do hibernate.cfg.xml e das propriedades informadas
+     * @param hibernateProperties Propriedades do arquivo hibernate.properties, ou null
+     * @param url URL de conexão que substitui a configurada, ou null
+     * @return SessionFactory
+     */
+    private SessionFactory buildFactory(Properties hibernateProperties, String url){
+        Configuration configuration = new Configuration().configure();
+        if (hibernateProperties != null){
+            configuration.setProperties(hibernateProperties);
+        }
+        if (url != null){
+            configuration.setProperty(CONNECTION_URL, url);
+        }
+        ServiceRegistryBuilder registry = new ServiceRegistryBuilder();
+        registry.applySettings(configuration.getProperties());
+        
+        ServiceRegistry serviceRegistry = registry.buildServiceRegistry();                    
+        return configuration.buildSessionFactory(serviceRegistry);
+    }
+    
+    /**
+     * Cria as fábricas das réplicas de leitura configuradas em jbc.replica.urls
+     * @param hibernateProperties Propriedades do arquivo hibernate.properties
+     */
+    private void initReplicas(Properties hibernateProperties){
+        String urls = hibernateProperties.getProperty(REPLICA_URLS);
+        if (urls == null || urls.trim().isEmpty()){
+            return;
+        }
+        this.leastLoaded = REPLICA_POLICY_LEAST_LOADED.equals(hibernateProperties.getProperty(REPLICA_POLICY));
+        this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(
+                Long.parseLong(hibernateProperties.getProperty(REPLICA_READ_YOUR_WRITES, String.valueOf(DEFAULT_READ_YOUR_WRITES))));
+        
+        this.replicas = this.buildFactories(hibernateProperties, urls);
+        this.replicaLoad = new AtomicIntegerArray(this.replicas.length);
+    }
+    
+    /**
+     * Cria o cache das fábricas dos clientes quando jbc.tenant.url ou jbc.tenant.schema estiverem configurados
+     * @param hibernateProperties Propriedades do arquivo hibernate.properties
+     */
+    private void initTenants(Properties hibernateProperties) throws Exception{
+        String url = hibernateProperties.getProperty(TENANT_URL);
+        String schema = hibernateProperties.getProperty(TENANT_SCHEMA);
+        if (url == null && schema == null){
+            return;
+        }
+        this.tenants = new TenantFactoryCache(hibernateProperties, url, schema, 
+                Long.parseLong(hibernateProperties.getProperty(TENANT_IDLE_TIMEOUT, String.valueOf(DEFAULT_TENANT_IDLE_TIMEOUT))));
+        String resolver = hibernateProperties.getProperty(TENANT_RESOLVER);
+        this.tenantResolver = resolver == null ? new ThreadTenantResolver() : (TenantResolver) Class.forName(resolver).newInstance();
+    }
+    
+    /**
+     * Cria uma fábrica de sessões para cada URL de conexão
+     * @param hibernateProperties Propriedades do arquivo hibernate.properties
+     * @param urls URLs separadas por vírgula, ou null
+     * @return Fábricas na ordem das URLs
+     */
+    private SessionFactory[] buildFactories(Properties hibernateProperties, String urls){
+        List<SessionFactory> factories = new ArrayList<SessionFactory>();
+        if (urls != null){
+            for (String url : urls.split(",")) {
+                if (!url.trim().isEmpty()){
+                    factories.add(this.buildFactory(hibernateProperties, url.trim()));
+                }
+            }
+        }
+        return factories.toArray(new SessionFactory[factories.size()]);
+    }
+    
+    /**
+     * Retorna a instância única, criando-a na primeira chamada. A criação é sincronizada, pois
+     * pode ser feita pelo aquecimento de WarmUp ao mesmo tempo que a primeira requisição
+     * @return HibernateUtil
+     */
     public static HibernateUtil getInstance(){
-        if (hibernateUtil == null){
-            hibernateUtil = new HibernateUtil();
+        HibernateUtil instance = hibernateUtil;
+        if (instance == null){
+            synchronized (HibernateUtil.class){
+                if (hibernateUtil == null){
+                    hibernateUtil = new HibernateUtil();
+                }
+                instance = hibernateUtil;
+            }
         }
-        return hibernateUtil;        
+        return instance;        
     }
     
     private Properties initConfigFileProperty() throws Exception{
@@ -69,7 +242,136 @@ public class HibernateUtil {
      * @return Session
      */
     public Session getSession() {
-        return this.factory.openSession();
+        return this.openSession(this.getTenant());
+    }
+
+    /**
+     * Abre uma sessão no banco do cliente
+     * @param tenant Identificador do cliente, ou null para o banco configurado no hibernate.cfg.xml
+     * @return Session
+     */
+    public Session openSession(String tenant) {
+        if (tenant == null) {
+            return this.factory.openSession();
+        }
+        return this.tenants.openSession(tenant);
+    }
+
+    /**
+     * Retorna o cliente da operação atual escolhido pelo TenantResolver
+     * @return Identificador do cliente, ou null quando não houver clientes configurados
+     */
+    public String getTenant() {
+        if (this.tenants == null || this.tenantResolver == null) {
+            return null;
+        }
+        return this.tenantResolver.resolveTenant();
+    }
+
+    /**
+     * Define o resolvedor que escolhe o cliente de cada operação
+     * @param tenantResolver Resolvedor de clientes
+     */
+    public void setTenantResolver(TenantResolver tenantResolver) {
+        this.tenantResolver = tenantResolver;
+    }
+
+    /**
+     * Retorna o cache das fábricas dos clientes
+     * @return TenantFactoryCache, ou null quando não houver clientes configurados
+     */
+    public TenantFactoryCache getTenantFactories() {
+        return this.tenants;
+    }
+
+    /**
+     * Quantidade de réplicas de leitura configuradas
+     * @return Quantidade de réplicas
+     */
+    public int getReplicaCount() {
+        return this.replicas.length;
+    }
+
+    /**
+     * Registra um commit no banco principal feito pela thread atual. Durante o tempo de
+     * jbc.replica.read_your_writes as leituras desta thread continuam no banco principal, para que
+     * vejam o que acabou de ser gravado; as das outras threads continuam nas réplicas
+     */
+    public void markWrite() {
+        this.lastWriteNanos.set(Long.valueOf(System.nanoTime()));
+    }
+
+    /**
+     * Escolhe a réplica da próxima leitura e a marca como em uso até endReplicaRead
+     * @return Índice da réplica, ou -1 quando a leitura deve ser feita no banco principal
+     */
+    public int beginReplicaRead() {
+        if (this.replicas.length == 0) {
+            return -1;
+        }
+        Long lastWrite = this.lastWriteNanos.get();
+        if (lastWrite != null) {
+            if (System.nanoTime() - lastWrite.longValue() < this.readYourWritesNanos) {
+                return -1;
+            }
+            this.lastWriteNanos.remove();
+        }
+        int replica;
+        if (this.leastLoaded) {
+            replica = 0;
+            for (int i = 1; i < this.replicas.length; i++) {
+                if (this.replicaLoad.get(i) < this.replicaLoad.get(replica)) {
+                    replica = i;
+                }
+            }
+        } else {
+            replica = (this.nextReplica.getAndIncrement() & Integer.MAX_VALUE) % this.replicas.length;
+        }
+        this.replicaLoad.incrementAndGet(replica);
+        return replica;
+    }
+
+    /**
+     * Encerra a leitura iniciada por beginReplicaRead
+     * @param replica Índice da réplica
+     */
+    public void endReplicaRead(int replica) {
+        this.replicaLoad.decrementAndGet(replica);
+    }
+
+    /**
+     * Abre uma nova sessão na réplica, que deve ser fechada por quem a abriu ao fim da leitura
+     * @param replica Índice da réplica
+     * @return Session
+     */
+    public Session openReplicaSession(int replica) {
+        return this.replicas[replica].openSession();
+    }
+
+    /**
+     * Quantidade de shards configurados
+     * @return Quantidade de shards
+     */
+    public int getShardCount() {
+        return this.shards.length;
+    }
+
+    /**
+     * Fábrica de sessões do shard, para consultar os metadados das entidades
+     * @param shard Índice do shard
+     * @return SessionFactory
+     */
+    public SessionFactory getShardFactory(int shard) {
+        return this.shards[shard];
+    }
+
+    /**
+     * Abre uma nova sessão no shard, que deve ser fechada por quem a abriu
+     * @param shard Índice do shard
+     * @return Session
+     */
+    public Session openShardSession(int shard) {
+        return this.shards[shard].openSession();
     }
     
 }
\ No newline at end of file
@@ -0,0 +1,290 @@
+package br.com.jbc.db;
+
+import br.com.jbc.util.JBCException;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.Oracle8iDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.dialect.SQLServerDialect;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.jdbc.Work;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.HibernateProxyHelper;
+import org.hibernate.proxy.LazyInitializer;
+import org.hibernate.type.Type;
+
+/**
+ * Grava entidades com um único comando de upsert do banco de dados, gerado a partir do
+ * mapeamento da entidade, evitando o SELECT que o merge executa antes de cada gravação.
+ * O comando é escolhido de acordo com o dialeto:
+ *
+ * H2: MERGE INTO ... KEY (...) VALUES (...)
+ * PostgreSQL (9.5 ou superior): INSERT ... ON CONFLICT (...) DO UPDATE
+ * MySQL: INSERT ... ON DUPLICATE KEY UPDATE
+ * Oracle e SQL Server: MERGE INTO ... USING ... ON (...)
+ *
+ * O comando segue o dialeto configurado: um H2 com MODE=MySQL e MySQL5Dialect recebe o
+ * INSERT ... ON DUPLICATE KEY UPDATE.
+ *
+ * Entidades sem chave primária, versionadas ou com herança não são gravadas pelo upsert
+ * e são devolvidas para que sejam gravadas com merge.
+ * @author Rodrigo Marconato
+ */
+public class NativeUpsert {
+
+    /**
+     * Comandos gerados por dialeto e entidade
+     */
+    private static final ConcurrentHashMap<String, String> statements = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Grava as entidades com upsert, agrupando os comandos de cada entidade em um batch JDBC
+     * @param session Sessão hibernate com a transação ativa
+     * @param entities Entidades a serem gravadas
+     * @return Entidades que não puderam ser gravadas pelo upsert
+     * @throws JBCException Quando o dialeto não possui upsert
+     */
+    public static List<Object> upsert(Session session, List<?> entities) throws JBCException {
+
+        final SessionImplementor implementor = (SessionImplementor) session;
+        final Dialect dialect = implementor.getFactory().getDialect();
+        if (!isSupported(dialect)) {
+            throw new JBCException(JBCException.UPSERT_NAO_SUPORTADO + " " + dialect.getClass().getName());
+        }
+
+        List<Object> unsupported = new ArrayList<Object>();
+        final LinkedHashMap<AbstractEntityPersister, List<Object>> groups = new LinkedHashMap<AbstractEntityPersister, List<Object>>();
+
+        for (Object entity : entities) {
+            //Proxies não inicializados não possuem alterações e são gravados com merge
+            if (entity instanceof HibernateProxy) {
+                LazyInitializer initializer = ((HibernateProxy) entity).getHibernateLazyInitializer();
+                if (initializer.isUninitialized()) {
+                    unsupported.add(entity);
+                    continue;
+                }
+                entity = initializer.getImplementation();
+            }
+            //O nome da entidade vem da classe, pois session.getEntityName só aceita objetos da sessão
+            Class type = HibernateProxyHelper.getClassWithoutInitializingProxy(entity);
+            EntityPersister persister = implementor.getFactory().getEntityPersister(type.getName());
+            Serializable id = persister.getIdentifier(entity, implementor);
+            if (!(persister instanceof AbstractEntityPersister) || persister.isVersioned() || persister.isInherited()
+                    || id == null || (id instanceof Number && ((Number) id).longValue() == 0)) {
+                unsupported.add(entity);
+                continue;
+            }
+            //Remove da sessão a cópia gerenciada antes do flush, senão o flush gravaria a linha
+            //inteira antes do upsert e a cópia ficaria desatualizada depois dele
+            Object managed = implementor.getPersistenceContext().getEntity(implementor.generateEntityKey(id, persister));
+            if (managed != null) {
+                session.evict(managed);
+            }
+            List<Object> group = groups.get((AbstractEntityPersister) persister);
+            if (group == null) {
+                group = new ArrayList<Object>();
+                groups.put((AbstractEntityPersister) persister, group);
+            }
+            group.add(entity);
+        }
+
+        if (groups.isEmpty()) {
+            return unsupported;
+        }
+
+        //Grava as demais alterações pendentes da sessão antes do upsert
+        session.flush();
+        session.doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                for (Entry<AbstractEntityPersister, List<Object>> group : groups.entrySet()) {
+                    AbstractEntityPersister persister = group.getKey();
+                    PreparedStatement statement = connection.prepareStatement(getStatement(dialect, persister));
+                    try {
+                        for (Object entity : group.getValue()) {
+                            bind(statement, persister, entity, implementor);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    } finally {
+                        statement.close();
+                    }
+                }
+            }
+        });
+
+        return unsupported;
+    }
+
+    /**
+     * Verifica se o dialeto possui um comando de upsert conhecido
+     * @param dialect Dialeto hibernate
+     * @return true se o upsert puder ser usado
+     */
+    public static boolean isSupported(Dialect dialect) {
+        return dialect instanceof H2Dialect
+                || dialect instanceof PostgreSQL81Dialect
+                || dialect instanceof MySQLDialect
+                || dialect instanceof Oracle8iDialect
+                || dialect instanceof SQLServerDialect;
+    }
+
+    /**
+     * Retorna o comando de upsert da entidade, gerando-o na primeira chamada
+     * @param dialect Dialeto hibernate
+     * @param persister Mapeamento da entidade
+     * @return Comando SQL com os parâmetros na ordem de bind
+     */
+    public static String getStatement(Dialect dialect, AbstractEntityPersister persister) {
+        String key = dialect.getClass().getName() + "|" + persister.getEntityName();
+        String sql = statements.get(key);
+        if (sql == null) {
+            sql = buildStatement(dialect, persister);
+            statements.putIfAbsent(key, sql);
+        }
+        return sql;
+    }
+
+    private static String buildStatement(Dialect dialect, AbstractEntityPersister persister) {
+
+        String table = persister.getTableName();
+        String[] keys = persister.getIdentifierColumnNames();
+        List<String> columns = new ArrayList<String>();
+        List<String> updates = new ArrayList<String>();
+
+        for (String key : keys) {
+            columns.add(key);
+        }
+        boolean[] insertable = persister.getPropertyInsertability();
+        boolean[] updatable = persister.getPropertyUpdateability();
+        for (int i = 0; i < insertable.length; i++) {
+            if (isWritable(persister, i)) {
+                for (String column : persister.getPropertyColumnNames(i)) {
+                    columns.add(column);
+                    if (updatable[i]) {
+                        updates.add(column);
+                    }
+                }
+            }
+        }
+
+        StringBuilder sql = new StringBuilder();
+        if (dialect instanceof H2Dialect) {
+            sql.append("merge into ").append(table).append(" (").append(join(columns, "", ", ")).append(") key (")
+                    .append(join(keys, "", ", ")).append(") values (").append(parameters(columns.size())).append(")");
+        } else if (dialect instanceof PostgreSQL81Dialect) {
+            sql.append("insert into ").append(table).append(" (").append(join(columns, "", ", ")).append(") values (")
+                    .append(parameters(columns.size())).append(") on conflict (").append(join(keys, "", ", ")).append(")");
+            if (updates.isEmpty()) {
+                sql.append(" do nothing");
+            } else {
+                sql.append(" do update set ").append(assignments(updates, "", "excluded.", ""));
+            }
+        } else if (dialect instanceof MySQLDialect) {
+            sql.append("insert into ").append(table).append(" (").append(join(columns, "", ", ")).append(") values (")
+                    .append(parameters(columns.size())).append(") on duplicate key update ");
+            if (updates.isEmpty()) {
+                sql.append(keys[0]).append(" = ").append(keys[0]);
+            } else {
+                sql.append(assignments(updates, "", "values(", ")"));
+            }
+        } else {
+            sql.append("merge into ").append(table).append(" d using (");
+            if (dialect instanceof Oracle8iDialect) {
+                sql.append("select ");
+                for (int i = 0; i < columns.size(); i++) {
+                    sql.append(i > 0 ? ", " : "").append("? ").append(columns.get(i));
+                }
+                sql.append(" from dual) o");
+            } else {
+                sql.append("values (").append(parameters(columns.size())).append(")) as o (").append(join(columns, "", ", ")).append(")");
+            }
+            sql.append(" on (");
+            for (int i = 0; i < keys.length; i++) {
+                sql.append(i > 0 ? " and " : "").append("d.").append(keys[i]).append(" = o.").append(keys[i]);
+            }
+            sql.append(")");
+            if (!updates.isEmpty()) {
+                sql.append(" when matched then update set ").append(assignments(updates, "d.", "o.", ""));
+            }
+            sql.append(" when not matched then insert (").append(join(columns, "", ", ")).append(") values (")
+                    .append(join(columns, "o.", ", ")).append(")");
+            if (dialect instanceof SQLServerDialect) {
+                sql.append(";");
+            }
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Atribui os parâmetros do comando: chave primária seguida dos atributos graváveis, na ordem do mapeamento
+     */
+    private static void bind(PreparedStatement statement, AbstractEntityPersister persister, Object entity, SessionImplementor session) throws SQLException {
+        int index = 1;
+        persister.getIdentifierType().nullSafeSet(statement, persister.getIdentifier(entity, session), index, session);
+        index += persister.getIdentifierColumnNames().length;
+
+        Object[] values = persister.getPropertyValues(entity);
+        Type[] types = persister.getPropertyTypes();
+        for (int i = 0; i < values.length; i++) {
+            if (isWritable(persister, i)) {
+                types[i].nullSafeSet(statement, values[i], index, session);
+                index += persister.getPropertyColumnNames(i).length;
+            }
+        }
+    }
+
+    /**
+     * Atributos com colunas na tabela da entidade e que podem ser incluídos
+     */
+    private static boolean isWritable(AbstractEntityPersister persister, int property) {
+        return persister.getPropertyInsertability()[property]
+                && !persister.getPropertyTypes()[property].isCollectionType()
+                && persister.getPropertyColumnNames(property).length > 0;
+    }
+
+    private static String parameters(int count) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sql.append(i > 0 ? ", " : "").append("?");
+        }
+        return sql.toString();
+    }
+
+    private static String join(String[] columns, String prefix, String separator) {
+        List<String> list = new ArrayList<String>();
+        for (String column : columns) {
+            list.add(column);
+        }
+        return join(list, prefix, separator);
+    }
+
+    private static String join(List<String> columns, String prefix, String separator) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append(i > 0 ? separator : "").append(prefix).append(columns.get(i));
+        }
+        return sql.toString();
+    }
+
+    private static String assignments(List<String> columns, String target, String prefix, String suffix) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append(i > 0 ? ", " : "").append(target).append(columns.get(i)).append(" = ")
+                    .append(prefix).append(columns.get(i)).append(suffix);
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,245 @@
+package br.com.jbc.db;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Properties;
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.jdbc.Work;
+import org.hibernate.type.Type;
+
+/**
+ * Gerador de chave primária que reserva blocos de chaves (hi/lo) em uma sequence ou em uma
+ * tabela e distribui as chaves do bloco em memória. Ao contrário de GenerationType.IDENTITY a
+ * chave é conhecida antes do INSERT, assim o hibernate pode agrupar as inclusões em batch JDBC
+ * quando hibernate.jdbc.batch_size estiver configurado.
+ *
+ * Cada valor hi lido do banco reserva as chaves de hi * block_size até hi * block_size + block_size - 1.
+ * A reserva é feita em uma sessão própria, fora da transação de quem inclui, e a distribuição é
+ * sincronizada, podendo ser usada por várias sessões ao mesmo tempo.
+ *
+ * Exemplo de mapeamento:
+ *
+ * {@literal @}Id
+ * {@literal @}GeneratedValue(generator = "pessoaId")
+ * {@literal @}GenericGenerator(name = "pessoaId", strategy = "br.com.jbc.db.PooledIdGenerator", parameters = {
+ *     {@literal @}Parameter(name = "strategy", value = "sequence"),
+ *     {@literal @}Parameter(name = "sequence_name", value = "pessoa_hi_seq"),
+ *     {@literal @}Parameter(name = "block_size", value = "100")})
+ * private Long id;
+ *
+ * Parâmetros:
+ * strategy: "sequence" (padrão quando o dialeto possuir sequences) ou "table"
+ * block_size: quantidade de chaves reservadas por acesso ao banco, padrão 100
+ * sequence_name: nome da sequence, padrão jbc_hi_seq
+ * table_name: nome da tabela de blocos, padrão jbc_hi_table, com as colunas segment_name e next_hi
+ * segment_value: linha da tabela de blocos usada, padrão nome da tabela da entidade
+ *
+ * Os blocos já reservados e não usados são descartados quando a aplicação é encerrada.
+ * @author Rodrigo Marconato
+ */
+public class PooledIdGenerator implements PersistentIdentifierGenerator, Configurable {
+
+    public static final String STRATEGY = "strategy";
+    public static final String BLOCK_SIZE = "block_size";
+    public static final String SEQUENCE_NAME = "sequence_name";
+    public static final String TABLE_NAME = "table_name";
+    public static final String SEGMENT_VALUE = "segment_value";
+
+    public static final String STRATEGY_SEQUENCE = "sequence";
+    public static final String STRATEGY_TABLE = "table";
+
+    public static final int DEFAULT_BLOCK_SIZE = 100;
+    public static final String DEFAULT_SEQUENCE_NAME = "jbc_hi_seq";
+    public static final String DEFAULT_TABLE_NAME = "jbc_hi_table";
+
+    private Class idType;
+    private String strategy;
+    private int blockSize;
+    private String sequenceName;
+    private String tableName;
+    private String segmentValue;
+    private String sequenceSql;
+
+    /**
+     * Próxima chave do bloco atual
+     */
+    private long next;
+
+    /**
+     * Limite exclusivo do bloco atual
+     */
+    private long limit;
+
+    public void configure(Type type, Properties params, Dialect dialect) throws MappingException {
+        this.idType = type.getReturnedClass();
+        if (this.idType != Long.class && this.idType != Integer.class && this.idType != Short.class
+                && this.idType != long.class && this.idType != int.class && this.idType != short.class) {
+            throw new MappingException("PooledIdGenerator suporta somente chaves Long, Integer ou Short: " + this.idType.getName());
+        }
+        this.strategy = params.getProperty(STRATEGY, dialect.supportsSequences() ? STRATEGY_SEQUENCE : STRATEGY_TABLE);
+        if (!STRATEGY_SEQUENCE.equals(this.strategy) && !STRATEGY_TABLE.equals(this.strategy)) {
+            throw new MappingException("Estratégia inválida para PooledIdGenerator: " + this.strategy);
+        }
+        if (STRATEGY_SEQUENCE.equals(this.strategy) && !dialect.supportsSequences()) {
+            throw new MappingException("O dialeto não possui sequences, utilize a estratégia table: " + dialect.getClass().getName());
+        }
+        this.blockSize = Integer.parseInt(params.getProperty(BLOCK_SIZE, String.valueOf(DEFAULT_BLOCK_SIZE)));
+        if (this.blockSize <= 0) {
+            throw new MappingException("block_size deve ser maior que zero");
+        }
+        this.sequenceName = params.getProperty(SEQUENCE_NAME, DEFAULT_SEQUENCE_NAME);
+        this.tableName = params.getProperty(TABLE_NAME, DEFAULT_TABLE_NAME);
+        this.segmentValue = params.getProperty(SEGMENT_VALUE, params.getProperty(TABLE, "default"));
+        if (STRATEGY_SEQUENCE.equals(this.strategy)) {
+            this.sequenceSql = dialect.getSequenceNextValString(this.sequenceName);
+        }
+    }
+
+    public synchronized Serializable generate(SessionImplementor session, Object object) throws HibernateException {
+        if (this.next >= this.limit) {
+            long hi = this.reserve(session);
+            this.next = hi * this.blockSize;
+            this.limit = this.next + this.blockSize;
+        }
+        return this.toIdType(this.next++);
+    }
+
+    /**
+     * Reserva o próximo valor hi, repetindo a reserva uma vez quando outra aplicação incluir
+     * a linha do segmento na tabela de blocos ao mesmo tempo
+     * @param session Sessão de quem está incluindo
+     * @return Valor hi reservado
+     */
+    private long reserve(SessionImplementor session) {
+        try {
+            return this.reserveOnce(session);
+        } catch (HibernateException e) {
+            if (STRATEGY_SEQUENCE.equals(this.strategy)) {
+                throw e;
+            }
+            return this.reserveOnce(session);
+        }
+    }
+
+    /**
+     * Reserva o próximo valor hi em uma sessão própria, confirmada antes da inclusão que pediu a chave
+     * @param session Sessão de quem está incluindo
+     * @return Valor hi reservado
+     */
+    private long reserveOnce(SessionImplementor session) {
+        final long[] hi = new long[1];
+        Session reserveSession = session.getFactory().openSession();
+        org.hibernate.Transaction transaction = null;
+        try {
+            transaction = reserveSession.beginTransaction();
+            reserveSession.doWork(new Work() {
+                public void execute(Connection connection) throws SQLException {
+                    hi[0] = STRATEGY_SEQUENCE.equals(strategy) ? nextSequenceValue(connection) : nextTableValue(connection);
+                }
+            });
+            transaction.commit();
+        } catch (RuntimeException e) {
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+            throw e;
+        } finally {
+            reserveSession.close();
+        }
+        return hi[0];
+    }
+
+    private long nextSequenceValue(Connection connection) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(this.sequenceSql);
+        try {
+            ResultSet rs = statement.executeQuery();
+            rs.next();
+            return rs.getLong(1);
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Lê e incrementa o valor hi do segmento com atualização otimista, repetindo enquanto
+     * outra aplicação alterar a linha entre a leitura e a atualização
+     */
+    private long nextTableValue(Connection connection) throws SQLException {
+        PreparedStatement select = connection.prepareStatement("select next_hi from " + this.tableName + " where segment_name = ?");
+        PreparedStatement update = connection.prepareStatement("update " + this.tableName + " set next_hi = ? where segment_name = ? and next_hi = ?");
+        try {
+            while (true) {
+                select.setString(1, this.segmentValue);
+                ResultSet rs = select.executeQuery();
+                boolean found = rs.next();
+                long hi = found ? rs.getLong(1) : 1;
+                rs.close();
+                if (!found) {
+                    PreparedStatement insert = connection.prepareStatement("insert into " + this.tableName + " (segment_name, next_hi) values (?, ?)");
+                    try {
+                        insert.setString(1, this.segmentValue);
+                        insert.setLong(2, hi + 1);
+                        insert.executeUpdate();
+                        return hi;
+                    } finally {
+                        insert.close();
+                    }
+                }
+                update.setLong(1, hi + 1);
+                update.setString(2, this.segmentValue);
+                update.setLong(3, hi);
+                if (update.executeUpdate() == 1) {
+                    return hi;
+                }
+            }
+        } finally {
+            select.close();
+            update.close();
+        }
+    }
+
+    private Serializable toIdType(long id) {
+        if (this.idType == Integer.class || this.idType == int.class) {
+            if (id > Integer.MAX_VALUE) {
+                throw new HibernateException("Chave gerada excede o limite de Integer: " + id);
+            }
+            return Integer.valueOf((int) id);
+        }
+        if (this.idType == Short.class || this.idType == short.class) {
+            if (id > Short.MAX_VALUE) {
+                throw new HibernateException("Chave gerada excede o limite de Short: " + id);
+            }
+            return Short.valueOf((short) id);
+        }
+        return Long.valueOf(id);
+    }
+
+    public String[] sqlCreateStrings(Dialect dialect) throws HibernateException {
+        if (STRATEGY_SEQUENCE.equals(this.strategy)) {
+            return dialect.getCreateSequenceStrings(this.sequenceName, 1, 1);
+        }
+        return new String[] {"create table " + this.tableName + " (segment_name varchar(255) not null, next_hi "
+                + dialect.getTypeName(Types.BIGINT) + " not null, primary key (segment_name))"};
+    }
+
+    public String[] sqlDropStrings(Dialect dialect) throws HibernateException {
+        if (STRATEGY_SEQUENCE.equals(this.strategy)) {
+            return dialect.getDropSequenceStrings(this.sequenceName);
+        }
+        return new String[] {"drop table " + this.tableName};
+    }
+
+    public Object generatorKey() {
+        return STRATEGY_SEQUENCE.equals(this.strategy) ? this.sequenceName : this.tableName;
+    }
+}
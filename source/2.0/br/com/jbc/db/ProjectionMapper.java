@@ -0,0 +1,146 @@
+package br.com.jbc.db;
+
+import br.com.jbc.util.JBCException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converte as linhas de uma consulta com projeção em objetos DTO, usando o construtor
+ * do DTO cujos parâmetros correspondem, em ordem, aos atributos projetados.
+ * O construtor encontrado é guardado em cache por entidade, DTO e atributos.
+ * @author Rodrigo Marconato
+ */
+public class ProjectionMapper {
+
+    /**
+     * Cache dos construtores já resolvidos
+     */
+    private static final ConcurrentHashMap<String, Constructor<?>> constructors = new ConcurrentHashMap<String, Constructor<?>>();
+
+    /**
+     * Converte as linhas retornadas pelo Criteria em objetos DTO
+     * @param rows Linhas retornadas pela consulta, Object[] ou um valor quando há um único atributo
+     * @param entityClass Classe da entidade consultada
+     * @param dto Classe do DTO que receberá os valores
+     * @param properties Atributos projetados na mesma ordem dos parâmetros do construtor
+     * @return Lista de objetos DTO
+     * @throws JBCException Quando nenhum construtor é compatível ou um valor nulo seria passado a um parâmetro primitivo
+     * @throws Exception Erro no construtor do DTO
+     */
+    public static <R> List<R> map(List<?> rows, Class<?> entityClass, Class<R> dto, String... properties) throws Exception {
+
+        Constructor<R> constructor = findConstructor(entityClass, dto, properties);
+        Class<?>[] parameters = constructor.getParameterTypes();
+        List<R> result = new ArrayList<R>(rows.size());
+        for (Object row : rows) {
+            Object[] values = row instanceof Object[] ? (Object[]) row : new Object[]{row};
+            for (int i = 0; i < parameters.length; i++) {
+                if (values[i] == null && parameters[i].isPrimitive()) {
+                    throw new JBCException(JBCException.PROJECAO_NULA_PRIMITIVO + " " + dto.getName()
+                            + ", parâmetro " + (i + 1) + " (" + parameters[i].getName() + ") recebe o atributo " + properties[i]);
+                }
+            }
+            result.add(constructor.newInstance(values));
+        }
+        return result;
+    }
+
+    /**
+     * Procura o construtor do DTO compatível com os tipos dos atributos projetados
+     * @param entityClass Classe da entidade consultada
+     * @param dto Classe do DTO
+     * @param properties Atributos projetados
+     * @return Construtor do DTO
+     * @throws JBCException Quando nenhum construtor é compatível
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> Constructor<R> findConstructor(Class<?> entityClass, Class<R> dto, String... properties) throws JBCException {
+
+        StringBuilder key = new StringBuilder(entityClass.getName()).append('|').append(dto.getName());
+        for (String property : properties) {
+            key.append('|').append(property);
+        }
+        Constructor<R> constructor = (Constructor<R>) constructors.get(key.toString());
+        if (constructor != null) {
+            return constructor;
+        }
+
+        Class<?>[] types = new Class<?>[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            types[i] = wrap(findPropertyType(entityClass, properties[i]));
+        }
+
+        for (Constructor<?> declared : dto.getDeclaredConstructors()) {
+            Constructor<R> candidate = (Constructor<R>) declared;
+            Class<?>[] parameters = candidate.getParameterTypes();
+            if (parameters.length != types.length) {
+                continue;
+            }
+            boolean compatible = true;
+            for (int i = 0; i < parameters.length && compatible; i++) {
+                compatible = types[i] == null || wrap(parameters[i]).isAssignableFrom(types[i]);
+            }
+            if (compatible) {
+                candidate.setAccessible(true);
+                constructors.putIfAbsent(key.toString(), candidate);
+                return candidate;
+            }
+        }
+        throw new JBCException(JBCException.CONSTRUTOR_NAO_ENCONTRADO + " " + dto.getName());
+    }
+
+    /**
+     * Descobre o tipo de um atributo percorrendo as associações, por exemplo "cidade.nome"
+     * @param entityClass Classe da entidade
+     * @param property Caminho do atributo
+     * @return Tipo do atributo ou null quando não for encontrado
+     */
+    private static Class<?> findPropertyType(Class<?> entityClass, String property) {
+        Class<?> type = entityClass;
+        for (String name : property.split("\\.")) {
+            Field field = null;
+            for (Class<?> clazz = type; clazz != null && field == null; clazz = clazz.getSuperclass()) {
+                try {
+                    field = clazz.getDeclaredField(name);
+                } catch (NoSuchFieldException e) {
+                    // Procura na super classe
+                }
+            }
+            if (field == null) {
+                return null;
+            }
+            type = field.getType();
+        }
+        return type;
+    }
+
+    /**
+     * Retorna a classe Wrapper de um tipo primitivo
+     * @param type Tipo do atributo
+     * @return Classe Wrapper ou o próprio tipo
+     */
+    private static Class<?> wrap(Class<?> type) {
+        if (type == null || !type.isPrimitive()) {
+            return type;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        } else {
+            return Character.class;
+        }
+    }
+}
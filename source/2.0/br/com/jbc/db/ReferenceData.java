@@ -0,0 +1,23 @@
+package br.com.jbc.db;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marca uma entidade de referência, como países, situações e categorias, que é carregada inteira
+ * em memória por ReferenceStore.start e passa a ser consultada sem acessar o banco de dados.
+ * Use somente em tabelas pequenas e raramente alteradas.
+ * @author Rodrigo Marconato
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ReferenceData {
+
+    /**
+     * Intervalo em segundos entre as recargas da tabela, 0 para recarregar somente quando
+     * o framework gravar a entidade
+     */
+    long refreshSeconds() default 0;
+}
@@ -0,0 +1,17 @@
+package br.com.jbc.db;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marca um atributo único de uma entidade @ReferenceData, como a sigla de um país, que passa a ser
+ * indexado por ReferenceStore para consultas com findByKey. Registros com o atributo vazio não
+ * são indexados.
+ * @author Rodrigo Marconato
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface ReferenceKey {
+}
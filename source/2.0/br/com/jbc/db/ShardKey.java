@@ -0,0 +1,16 @@
+package br.com.jbc.db;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marca o atributo da entidade usado por ShardedController para escolher o shard do registro.
+ * O valor não pode ser alterado depois da inclusão, pois o registro não é movido de shard.
+ * @author Rodrigo Marconato
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface ShardKey {
+}
@@ -0,0 +1,208 @@
+package br.com.jbc.db;
+
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.service.ServiceRegistryBuilder;
+
+/**
+ * Fábricas de sessão dos clientes (tenants), uma por cliente, criadas somente no primeiro acesso
+ * do cliente. O hibernate.cfg.xml e os mapeamentos são lidos uma única vez e compartilhados por
+ * todas as fábricas, que diferem somente na URL de conexão ou no schema padrão, gerados a partir
+ * de um modelo com {tenant}, por exemplo:
+ *
+ * jbc.tenant.url=jdbc:postgresql://localhost/erp?currentSchema={tenant}
+ * jbc.tenant.schema={tenant}
+ *
+ * A fábrica, e com ela o seu pool de conexões, é fechada quando o cliente fica sem acesso pelo
+ * tempo de jbc.tenant.idle_timeout, desde que a sessão de Transaction do cliente não tenha uma
+ * transação em andamento. Sessões abertas por componentes com sessão própria, como
+ * WriteBehindBuffer e GroupCommitExecutor, não impedem o fechamento e devem ser fechadas antes
+ * desse tempo.
+ * @author Rodrigo Marconato
+ */
+public class TenantFactoryCache {
+
+    /**
+     * Marcador do identificador do cliente nos modelos de URL e schema
+     */
+    public static final String TENANT_PLACEHOLDER = "{tenant}";
+
+    /**
+     * Identificadores aceitos, pois são usados na URL de conexão e no nome do schema
+     */
+    private static final Pattern VALID_TENANT = Pattern.compile("[A-Za-z0-9_\\-]+");
+
+    private static final String CONNECTION_URL = "hibernate.connection.url";
+    private static final String DEFAULT_SCHEMA = "hibernate.default_schema";
+
+    private final Configuration configuration;
+    private final String urlTemplate;
+    private final String schemaTemplate;
+    private final long idleNanos;
+    private final ConcurrentHashMap<String, TenantFactory> factories = new ConcurrentHashMap<String, TenantFactory>();
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * Lê os mapeamentos e inicia a thread que fecha as fábricas sem uso
+     * @param hibernateProperties Propriedades do arquivo hibernate.properties
+     * @param urlTemplate Modelo da URL de conexão do cliente, ou null para manter a URL configurada
+     * @param schemaTemplate Modelo do schema padrão do cliente, ou null para manter o schema configurado
+     * @param idleMillis Tempo sem acesso, em milissegundos, após o qual a fábrica do cliente é fechada
+     */
+    public TenantFactoryCache(Properties hibernateProperties, String urlTemplate, String schemaTemplate, long idleMillis) {
+        if (idleMillis <= 0) {
+            throw new IllegalArgumentException("idleMillis deve ser maior que zero");
+        }
+        this.configuration = new Configuration().configure();
+        if (hibernateProperties != null) {
+            this.configuration.setProperties(hibernateProperties);
+        }
+        this.urlTemplate = urlTemplate;
+        this.schemaTemplate = schemaTemplate;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "jbc-tenant-evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1000, idleMillis / 4);
+        this.evictor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evictIdle();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Abre uma sessão na fábrica do cliente, criando a fábrica no primeiro acesso
+     * @param tenant Identificador do cliente
+     * @return Session
+     */
+    public Session openSession(String tenant) {
+        if (!VALID_TENANT.matcher(tenant).matches()) {
+            throw new IllegalArgumentException("Identificador de cliente inválido: " + tenant);
+        }
+        while (true) {
+            TenantFactory tenantFactory = this.factories.get(tenant);
+            if (tenantFactory == null) {
+                tenantFactory = new TenantFactory();
+                TenantFactory current = this.factories.putIfAbsent(tenant, tenantFactory);
+                if (current != null) {
+                    tenantFactory = current;
+                }
+            }
+            Session session = tenantFactory.openSession(tenant);
+            if (session != null) {
+                return session;
+            }
+            //A fábrica foi fechada enquanto era obtida, uma nova é criada na próxima volta
+            this.factories.remove(tenant, tenantFactory);
+        }
+    }
+
+    /**
+     * Quantidade de clientes com a fábrica aberta
+     * @return Quantidade de fábricas
+     */
+    public int size() {
+        int size = 0;
+        for (TenantFactory tenantFactory : this.factories.values()) {
+            if (tenantFactory.factory != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Fecha as fábricas dos clientes sem acesso pelo tempo configurado. É executado
+     * periodicamente pela thread do cache
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        for (Entry<String, TenantFactory> entry : this.factories.entrySet()) {
+            TenantFactory tenantFactory = entry.getValue();
+            synchronized (tenantFactory) {
+                if (tenantFactory.factory == null || tenantFactory.evicted || now - tenantFactory.lastUse < this.idleNanos) {
+                    continue;
+                }
+                if (!Transaction.closeIdleTenant(entry.getKey(), this.idleNanos)) {
+                    continue;
+                }
+                tenantFactory.evicted = true;
+                this.factories.remove(entry.getKey(), tenantFactory);
+                tenantFactory.factory.close();
+            }
+        }
+    }
+
+    /**
+     * Encerra a thread do cache e fecha as fábricas de todos os clientes
+     */
+    public void close() {
+        this.evictor.shutdownNow();
+        for (TenantFactory tenantFactory : this.factories.values()) {
+            synchronized (tenantFactory) {
+                tenantFactory.evicted = true;
+                if (tenantFactory.factory != null) {
+                    tenantFactory.factory.close();
+                }
+            }
+        }
+        this.factories.clear();
+    }
+
+    /**
+     * Cria a fábrica do cliente a partir dos mapeamentos compartilhados
+     */
+    private SessionFactory build(String tenant) {
+        synchronized (this.configuration) {
+            if (this.urlTemplate != null) {
+                this.configuration.setProperty(CONNECTION_URL, this.urlTemplate.replace(TENANT_PLACEHOLDER, tenant));
+            }
+            if (this.schemaTemplate != null) {
+                this.configuration.setProperty(DEFAULT_SCHEMA, this.schemaTemplate.replace(TENANT_PLACEHOLDER, tenant));
+            }
+            ServiceRegistryBuilder registry = new ServiceRegistryBuilder();
+            registry.applySettings(this.configuration.getProperties());
+            return this.configuration.buildSessionFactory(registry.buildServiceRegistry());
+        }
+    }
+
+    /**
+     * Fábrica de um cliente e o momento do seu último acesso
+     */
+    private class TenantFactory {
+
+        private volatile SessionFactory factory;
+        private boolean evicted;
+        private volatile long lastUse = System.nanoTime();
+
+        /**
+         * Abre uma sessão, criando a fábrica se necessário
+         * @return Session, ou null se a fábrica já foi fechada
+         */
+        synchronized Session openSession(String tenant) {
+            if (this.evicted) {
+                return null;
+            }
+            if (this.factory == null) {
+                this.factory = build(tenant);
+            }
+            this.lastUse = System.nanoTime();
+            return this.factory.openSession();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package br.com.jbc.db;
+
+/**
+ * Escolhe o cliente (tenant) de cada operação quando o hibernate.properties configura
+ * jbc.tenant.url ou jbc.tenant.schema. A implementação é informada em jbc.tenant.resolver
+ * ou em HibernateUtil.setTenantResolver
+ * @author Rodrigo Marconato
+ */
+public interface TenantResolver {
+
+    /**
+     * Retorna o identificador do cliente da operação atual
+     * @return Identificador do cliente, ou null para usar o banco configurado no hibernate.cfg.xml
+     */
+    String resolveTenant();
+}
@@ -0,0 +1,30 @@
+package br.com.jbc.db;
+
+/**
+ * Resolvedor de clientes padrão, que usa o cliente definido para a thread atual, por exemplo
+ * por um filtro da aplicação web no início de cada requisição
+ * @author Rodrigo Marconato
+ */
+public class ThreadTenantResolver implements TenantResolver {
+
+    private static final ThreadLocal<String> tenant = new ThreadLocal<String>();
+
+    /**
+     * Define o cliente das operações da thread atual
+     * @param tenantId Identificador do cliente
+     */
+    public static void setTenant(String tenantId) {
+        tenant.set(tenantId);
+    }
+
+    /**
+     * Remove o cliente da thread atual, que volta a usar o banco configurado no hibernate.cfg.xml
+     */
+    public static void clear() {
+        tenant.remove();
+    }
+
+    public String resolveTenant() {
+        return tenant.get();
+    }
+}
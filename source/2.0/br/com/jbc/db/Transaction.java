@@ -1,7 +1,12 @@
 package br.com.jbc.db;
 
 import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import org.hibernate.FlushMode;
 import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
 
 /**
  * Classe que faz o controle de transacao com o banco de dados
@@ -12,7 +17,12 @@ public class Transaction implements Serializable{
     /**
      * Fabrica de criação de transação
      */
-    private static Transaction daoFactory = null;
+    private static volatile Transaction daoFactory = null;
+    
+    /**
+     * Transações de cada cliente quando HibernateUtil estiver configurado com clientes (tenants)
+     */
+    private static final ConcurrentHashMap<String, Transaction> tenantTransactions = new ConcurrentHashMap<String, Transaction>();
     
     /**
      * Sessão Hibernate com o banco de dados
@@ -23,9 +33,35 @@ public class Transaction implements Serializable{
      * Transação hibernate
      */
     private org.hibernate.Transaction transaction;
+    
+    /**
+     * Modo de flush da sessão antes de uma transação somente leitura
+     */
+    private FlushMode previousFlushMode;
+    
+    /**
+     * Quantidade de unidades de trabalho abertas. Enquanto houver uma unidade aberta as
+     * transações dos controllers participam da transação da unidade
+     */
+    private int unitOfWorkDepth;
+    
+    /**
+     * Indica se alguma operação da unidade de trabalho pediu rollback
+     */
+    private boolean rollbackOnly;
+    
+    /**
+     * Momento do último uso, para o fechamento dos clientes sem acesso
+     */
+    private volatile long lastUse = System.nanoTime();
+    
+    /**
+     * Indica se a sessão do cliente foi fechada por TenantFactoryCache
+     */
+    private boolean closed;
 
-    private Transaction() {
-        this.session = HibernateUtil.getInstance().getSession();
+    private Transaction(String tenant) {
+        this.session = HibernateUtil.getInstance().openSession(tenant);
     }
 
     
@@ -33,27 +69,124 @@ public class Transaction implements Serializable{
         return this.session;
     }
 
+    /**
+     * Retorna a transação do cliente escolhido pelo TenantResolver de HibernateUtil, ou a
+     * transação única quando não houver clientes configurados
+     * @return Transaction
+     */
     public static Transaction getInstance() {
-        if (daoFactory == null) {
-            daoFactory = new Transaction();
+        String tenant = HibernateUtil.getInstance().getTenant();
+        if (tenant == null) {
+            Transaction instance = daoFactory;
+            if (instance == null) {
+                synchronized (Transaction.class) {
+                    if (daoFactory == null) {
+                        daoFactory = new Transaction(null);
+                    }
+                    instance = daoFactory;
+                }
+            }
+            return instance;
+        }
+        while (true) {
+            Transaction transaction = tenantTransactions.get(tenant);
+            if (transaction == null) {
+                transaction = new Transaction(tenant);
+                Transaction current = tenantTransactions.putIfAbsent(tenant, transaction);
+                if (current != null) {
+                    transaction.session.close();
+                    transaction = current;
+                }
+            }
+            synchronized (transaction) {
+                if (!transaction.closed) {
+                    transaction.lastUse = System.nanoTime();
+                    return transaction;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fecha a sessão do cliente se ela estiver sem uso e sem transação em andamento
+     * @param tenant Identificador do cliente
+     * @param idleNanos Tempo mínimo sem uso, em nanossegundos
+     * @return true se o cliente não tiver mais sessão aberta
+     */
+    static boolean closeIdleTenant(String tenant, long idleNanos) {
+        Transaction transaction = tenantTransactions.get(tenant);
+        if (transaction == null) {
+            return true;
+        }
+        synchronized (transaction) {
+            if (transaction.transaction != null || transaction.unitOfWorkDepth > 0 
+                    || System.nanoTime() - transaction.lastUse < idleNanos) {
+                return false;
+            }
+            transaction.closed = true;
+            tenantTransactions.remove(tenant, transaction);
+            transaction.session.close();
+            return true;
         }
-        return daoFactory;
     }
 
     /**
      * Inicia uma transação se tiver uma sessão conectada com o banco de dados
      */
     public void beginTransaction() {
+        this.lastUse = System.nanoTime();
+        if (this.unitOfWorkDepth > 0) {
+            return;
+        }
         if (this.session.isConnected()) {
             this.transaction = this.session.beginTransaction();
         }
     }
 
+    /**
+     * Inicia uma transação somente leitura, marcando a conexão JDBC como read-only e
+     * desligando o flush da sessão até endReadOnlyTransaction
+     */
+    public void beginReadOnlyTransaction() {
+        this.lastUse = System.nanoTime();
+        if (this.session.isConnected()) {
+            this.setConnectionReadOnly(true);
+            this.previousFlushMode = this.session.getFlushMode();
+            this.session.setFlushMode(FlushMode.MANUAL);
+            this.transaction = this.session.beginTransaction();
+        }
+    }
+
+    /**
+     * Encerra a transação somente leitura restaurando a conexão e o modo de flush.
+     * A sessão não é limpa, assim as entidades lidas continuam podendo carregar
+     * as suas associações lazy
+     */
+    public void endReadOnlyTransaction() {
+        try {
+            if (this.transaction.isActive()) {
+                this.transaction.commit();
+            }
+        } finally {
+            this.session.setFlushMode(this.previousFlushMode);
+            this.previousFlushMode = null;
+            this.transaction = null;
+            this.setConnectionReadOnly(false);
+        }
+    }
+
     /**
      * Confirma a transação
      */
     public void commit() {
+        if (this.unitOfWorkDepth > 0) {
+            this.session.flush();
+            return;
+        }
         this.transaction.commit();
+        HibernateUtil.getInstance().markWrite();
+        ChangeTracker.commit(this.session);
+        ChangeEventBus.publish(this.session);
         this.session.clear();
         this.transaction = null;
     }
@@ -63,18 +196,106 @@ public class Transaction implements Serializable{
      * @return Retorna true se tiver transção ativa e false se não tiver transação ativa
      */
     public boolean hasTransaction() {
+        this.lastUse = System.nanoTime();
         return this.transaction != null;
     }
 
     /**
-     * Desfaz a transação
+     * Desfaz a transação. Dentro de uma unidade de trabalho somente marca a transação para rollback
+     * e limpa a sessão, para que a entidade que falhou não seja gravada de novo pelo flush das
+     * próximas operações da unidade
      */
     public void rollback() {
+        if (this.unitOfWorkDepth > 0) {
+            this.rollbackOnly = true;
+            this.session.clear();
+            return;
+        }
         this.transaction.rollback();
+        ChangeTracker.discard(this.session);
+        ChangeEventBus.discard(this.session);
         this.session.clear();
         this.transaction = null;
     }
 
+    /**
+     * Abre uma unidade de trabalho. A primeira unidade inicia a transação e as operações dos
+     * controllers executadas até endUnitOfWork participam dela, com um único commit
+     */
+    public void beginUnitOfWork() {
+        if (this.unitOfWorkDepth == 0) {
+            this.rollbackOnly = false;
+            this.beginTransaction();
+        }
+        this.unitOfWorkDepth++;
+    }
+
+    /**
+     * Fecha a unidade de trabalho. A unidade mais externa confirma a transação, ou a desfaz
+     * se alguma operação pediu rollback
+     * @return true se a transação foi confirmada ou se a unidade estava dentro de outra unidade
+     */
+    public boolean endUnitOfWork() {
+        this.unitOfWorkDepth--;
+        if (this.unitOfWorkDepth > 0) {
+            return true;
+        }
+        if (this.rollbackOnly) {
+            this.rollbackOnly = false;
+            this.rollback();
+            return false;
+        }
+        try {
+            this.commit();
+        } catch (RuntimeException e) {
+            this.rollback();
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Fecha a unidade de trabalho desfazendo a transação. Dentro de outra unidade somente
+     * marca a transação para rollback
+     */
+    public void rollbackUnitOfWork() {
+        this.unitOfWorkDepth--;
+        this.rollbackOnly = true;
+        if (this.unitOfWorkDepth == 0) {
+            this.rollbackOnly = false;
+            if (this.transaction != null) {
+                this.rollback();
+            }
+        }
+    }
+
+    /**
+     * Verifica se há uma unidade de trabalho aberta
+     * @return true se houver uma unidade de trabalho aberta
+     */
+    public boolean inUnitOfWork() {
+        return this.unitOfWorkDepth > 0;
+    }
+
+    /**
+     * Altera a flag read-only da conexão JDBC da sessão. As leituras feitas fora de uma
+     * transação deixam uma transação implícita aberta na conexão, que é confirmada antes,
+     * pois alguns drivers não aceitam a alteração no meio de uma transação
+     * @param readOnly Valor da flag
+     */
+    private void setConnectionReadOnly(final boolean readOnly) {
+        this.session.doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                if (connection.isReadOnly() != readOnly) {
+                    if (readOnly && !connection.getAutoCommit()) {
+                        connection.commit();
+                    }
+                    connection.setReadOnly(readOnly);
+                }
+            }
+        });
+    }
+
     /**
      * Fecha a sessão hibernate
      */
@@ -0,0 +1,146 @@
+package br.com.jbc.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Escreve texto em um WritableByteChannel codificado em UTF-8, através de um buffer direto do
+ * DirectBufferPool. Os caracteres são codificados direto no buffer direto, que é enviado ao canal
+ * quando fica cheio, assim a memória usada não depende do tamanho do texto escrito.
+ * Não é thread-safe e não fecha o canal.
+ * @author Rodrigo Marconato
+ */
+public class ChannelWriter {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder = UTF8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(4096);
+    private ByteBuffer bytes;
+    private long written;
+
+    /**
+     * Cria o escritor com um buffer do pool, que é devolvido em close
+     * @param channel Canal de destino, como um FileChannel ou SocketChannel
+     */
+    public ChannelWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        this.bytes = DirectBufferPool.acquire();
+    }
+
+    /**
+     * Escreve um texto
+     * @param text Texto
+     * @return ChannelWriter
+     * @throws IOException
+     */
+    public ChannelWriter append(CharSequence text) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (!this.chars.hasRemaining()) {
+                this.encode(false);
+            }
+            this.chars.put(text.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Escreve um caractere
+     * @param c Caractere
+     * @return ChannelWriter
+     * @throws IOException
+     */
+    public ChannelWriter append(char c) throws IOException {
+        if (!this.chars.hasRemaining()) {
+            this.encode(false);
+        }
+        this.chars.put(c);
+        return this;
+    }
+
+    /**
+     * Envia ao canal todo o texto escrito até agora
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        this.encode(true);
+        this.drain();
+    }
+
+    /**
+     * Quantidade de bytes enviados ao canal
+     * @return Bytes enviados
+     */
+    public long getBytesWritten() {
+        return this.written;
+    }
+
+    /**
+     * Envia o texto pendente e devolve o buffer ao pool. O canal continua aberto
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if (this.bytes == null) {
+            return;
+        }
+        try {
+            this.flush();
+        } finally {
+            DirectBufferPool.release(this.bytes);
+            this.bytes = null;
+        }
+    }
+
+    /**
+     * Descarta o texto pendente e devolve o buffer ao pool, usado quando a exportação falhar
+     */
+    public void discard() {
+        if (this.bytes != null) {
+            DirectBufferPool.release(this.bytes);
+            this.bytes = null;
+        }
+    }
+
+    /**
+     * Codifica os caracteres pendentes no buffer direto, enviando-o ao canal sempre que encher.
+     * Um surrogate sem o seu par no fim do bloco fica para a próxima codificação, exceto no flush
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        this.chars.flip();
+        while (true) {
+            CoderResult result = this.encoder.encode(this.chars, this.bytes, endOfInput);
+            if (result.isOverflow()) {
+                this.drain();
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+        if (endOfInput) {
+            while (this.encoder.flush(this.bytes).isOverflow()) {
+                this.drain();
+            }
+            this.encoder.reset();
+        }
+        this.chars.compact();
+    }
+
+    private void drain() throws IOException {
+        this.bytes.flip();
+        while (this.bytes.hasRemaining()) {
+            this.written += this.channel.write(this.bytes);
+        }
+        this.bytes.clear();
+    }
+}
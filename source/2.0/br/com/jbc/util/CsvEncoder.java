@@ -0,0 +1,77 @@
+package br.com.jbc.util;
+
+import java.io.IOException;
+
+/**
+ * Codificador CSV (RFC 4180). Valores com o separador, aspas ou quebra de linha são escritos
+ * entre aspas, valores nulos são escritos vazios
+ * @author Rodrigo Marconato
+ */
+public class CsvEncoder extends TextRowEncoder {
+
+    private final char separator;
+    private final boolean header;
+
+    /**
+     * Cria o codificador com separador vírgula e linha de cabeçalho
+     */
+    public CsvEncoder() {
+        this(',', true);
+    }
+
+    /**
+     * Cria o codificador
+     * @param separator Separador das colunas, como ',' ou ';'
+     * @param header true para escrever a linha de cabeçalho com os nomes das colunas
+     */
+    public CsvEncoder(char separator, boolean header) {
+        this.separator = separator;
+        this.header = header;
+    }
+
+    public void begin(String[] columns, ChannelWriter out) throws IOException {
+        if (this.header) {
+            this.line(columns, out);
+        }
+    }
+
+    public void row(String[] columns, Object[] values, boolean first, ChannelWriter out) throws IOException {
+        this.line(values, out);
+    }
+
+    public void end(ChannelWriter out) throws IOException {
+    }
+
+    private void line(Object[] values, ChannelWriter out) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.append(this.separator);
+            }
+            if (values[i] != null) {
+                this.field(this.text(values[i]), out);
+            }
+        }
+        out.append('\r').append('\n');
+    }
+
+    private void field(String value, ChannelWriter out) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == this.separator || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+}
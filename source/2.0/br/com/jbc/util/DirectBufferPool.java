@@ -0,0 +1,55 @@
+package br.com.jbc.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool de buffers diretos, alocados fora do heap e reaproveitados entre as exportações, pois a
+ * alocação de um buffer direto é cara e a sua memória só é liberada pelo coletor de lixo
+ * @author Rodrigo Marconato
+ */
+public class DirectBufferPool {
+
+    /**
+     * Tamanho de cada buffer em bytes
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Quantidade máxima de buffers guardados no pool. Buffers devolvidos além deste limite são descartados
+     */
+    public static final int MAX_POOLED = 16;
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * Retorna um buffer do pool, alocando um novo quando o pool estiver vazio
+     * @return Buffer limpo, pronto para escrita
+     */
+    public static ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Devolve o buffer ao pool
+     * @param buffer Buffer obtido em acquire, que não pode mais ser usado por quem o devolveu
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != BUFFER_SIZE) {
+            return;
+        }
+        if (pooled.incrementAndGet() > MAX_POOLED) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buffers.offer(buffer);
+    }
+}
@@ -14,6 +14,26 @@ public class JBCException extends Exception{
     
     public static String TRANSACAO_DESFEITA = "Transação defeita pois um ou mais registro não foi possível atualizar!";
     
+    public static String GRAVACAO_POSTERIOR_DESABILITADA = "A gravação posterior não foi habilitada, utilize enableWriteBehind!";
+    
+    public static String FILA_FECHADA = "A fila de gravação já foi fechada!";
+    
+    public static String UPSERT_NAO_SUPORTADO = "O dialeto não possui um comando de upsert suportado:";
+    
+    public static String SEM_SHARDS = "Nenhum shard foi configurado em jbc.shard.urls!";
+    
+    public static String SEM_CHAVE_SHARD = "A entidade não possui um atributo anotado com @ShardKey:";
+    
+    public static String CHAVE_SHARD_VAZIA = "O atributo @ShardKey da entidade não foi informado:";
+    
+    public static String CONSTRUTOR_NAO_ENCONTRADO = "Nenhum construtor compatível com os atributos da projeção foi encontrado em";
+    
+    public static String PROJECAO_NULA_PRIMITIVO = "A projeção retornou um valor nulo para um parâmetro primitivo do construtor de";
+    
+    public static String REFERENCIA_NAO_CARREGADA = "A entidade não está carregada no ReferenceStore:";
+    
+    public static String CHAVE_REFERENCIA_DUPLICADA = "Valor repetido em um atributo @ReferenceKey:";
+    
     public JBCException(){
         super();
     }
@@ -0,0 +1,86 @@
+package br.com.jbc.util;
+
+import java.io.IOException;
+
+/**
+ * Codificador JSON. A exportação é um array com um objeto por linha, com os nomes das colunas
+ * como chaves. Números e booleanos são escritos sem aspas e valores nulos como null
+ * @author Rodrigo Marconato
+ */
+public class JsonEncoder extends TextRowEncoder {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public void begin(String[] columns, ChannelWriter out) throws IOException {
+        out.append('[');
+    }
+
+    public void row(String[] columns, Object[] values, boolean first, ChannelWriter out) throws IOException {
+        if (!first) {
+            out.append(',');
+        }
+        out.append('{');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            this.string(columns[i], out);
+            out.append(':');
+            Object value = values[i];
+            if (value == null) {
+                out.append("null");
+            } else if (value instanceof Boolean || (value instanceof Number && this.isFinite((Number) value))) {
+                out.append(value.toString());
+            } else {
+                this.string(this.text(value), out);
+            }
+        }
+        out.append('}');
+    }
+
+    public void end(ChannelWriter out) throws IOException {
+        out.append(']');
+    }
+
+    /**
+     * NaN e infinito não existem em JSON e são escritos como texto
+     */
+    private boolean isFinite(Number value) {
+        if (value instanceof Double || value instanceof Float) {
+            double d = value.doubleValue();
+            return !Double.isNaN(d) && !Double.isInfinite(d);
+        }
+        return true;
+    }
+
+    private void string(String value, ChannelWriter out) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        out.append("\\u").append(HEX[c >> 12 & 0xF]).append(HEX[c >> 8 & 0xF]).append(HEX[c >> 4 & 0xF]).append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,209 @@
+package br.com.jbc.util;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Conjunto imutável de chaves primárias long, ordenado e sem repetições, guardado em um único
+ * long[]. Ocupa 8 bytes por chave, contra cerca de 24 de um Long em um ArrayList, e as consultas
+ * com contains usam busca binária.
+ *
+ * Por ser uma List pode ser passado como lista de parâmetros em getListByHQLCondition; neste caso
+ * cada chave é convertida em Long somente no momento em que o hibernate a lê. Com
+ * Controller.getIdsBySQLCondition as chaves são passadas ao JDBC com setLong, sem conversão.
+ *
+ * Exemplo:
+ *
+ * LongIdSet.Builder builder = new LongIdSet.Builder();
+ * for (Pedido pedido : pedidos) {
+ *     builder.add(pedido.getClienteId());
+ * }
+ * LongIdSet clientes = builder.build();
+ * @author Rodrigo Marconato
+ */
+public final class LongIdSet extends AbstractList<Long> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Conjunto vazio
+     */
+    public static final LongIdSet EMPTY = new LongIdSet(new long[0], 0);
+
+    private final long[] ids;
+    private final int size;
+
+    private LongIdSet(long[] ids, int size) {
+        this.ids = ids;
+        this.size = size;
+    }
+
+    /**
+     * Cria o conjunto com as chaves informadas, em qualquer ordem e com repetições
+     * @param ids Chaves primárias
+     * @return LongIdSet
+     */
+    public static LongIdSet of(long... ids) {
+        return sortUnique(Arrays.copyOf(ids, ids.length), ids.length);
+    }
+
+    /**
+     * Cria o conjunto a partir de uma coleção de números, como o resultado de uma consulta antiga
+     * @param ids Chaves primárias, nulos são ignorados
+     * @return LongIdSet
+     */
+    public static LongIdSet from(Collection<? extends Number> ids) {
+        if (ids instanceof LongIdSet) {
+            return (LongIdSet) ids;
+        }
+        Builder builder = new Builder(ids.size());
+        for (Number id : ids) {
+            if (id != null) {
+                builder.add(id.longValue());
+            }
+        }
+        return builder.build();
+    }
+
+    private static LongIdSet sortUnique(long[] ids, int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+        Arrays.sort(ids, 0, length);
+        int size = 1;
+        for (int i = 1; i < length; i++) {
+            if (ids[i] != ids[size - 1]) {
+                ids[size++] = ids[i];
+            }
+        }
+        return new LongIdSet(ids, size);
+    }
+
+    /**
+     * Chave na posição informada, sem conversão para Long
+     * @param index Posição, de 0 a size() - 1
+     * @return Chave primária
+     */
+    public long getLong(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Posição " + index + ", tamanho " + this.size);
+        }
+        return this.ids[index];
+    }
+
+    /**
+     * Verifica se a chave pertence ao conjunto
+     * @param id Chave primária
+     * @return true quando a chave pertencer ao conjunto
+     */
+    public boolean contains(long id) {
+        return Arrays.binarySearch(this.ids, 0, this.size, id) >= 0;
+    }
+
+    /**
+     * Cópia das chaves em ordem crescente
+     * @return Vetor com as chaves
+     */
+    public long[] toLongArray() {
+        return Arrays.copyOf(this.ids, this.size);
+    }
+
+    /**
+     * Parte do conjunto entre as posições informadas, sem copiar as chaves
+     * @param fromIndex Posição inicial, inclusive
+     * @param toIndex Posição final, exclusive
+     * @return LongIdSet
+     */
+    public LongIdSet slice(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > this.size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Intervalo " + fromIndex + " a " + toIndex + ", tamanho " + this.size);
+        }
+        if (fromIndex == 0) {
+            return toIndex == this.size ? this : new LongIdSet(this.ids, toIndex);
+        }
+        return new LongIdSet(Arrays.copyOfRange(this.ids, fromIndex, toIndex), toIndex - fromIndex);
+    }
+
+    @Override
+    public Long get(int index) {
+        return Long.valueOf(this.getLong(index));
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && this.contains(((Long) o).longValue());
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Long)) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(this.ids, 0, this.size, ((Long) o).longValue());
+        return index < 0 ? -1 : index;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return this.indexOf(o);
+    }
+
+    /**
+     * Montagem de um LongIdSet, acumulando as chaves em um long[] que cresce conforme necessário
+     */
+    public static final class Builder {
+
+        private long[] ids;
+        private int size;
+
+        public Builder() {
+            this(16);
+        }
+
+        /**
+         * @param capacity Quantidade de chaves esperada
+         */
+        public Builder(int capacity) {
+            this.ids = new long[Math.max(capacity, 1)];
+        }
+
+        /**
+         * Inclui uma chave, que pode ser repetida
+         * @param id Chave primária
+         * @return Builder
+         */
+        public Builder add(long id) {
+            if (this.size == this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids, this.size + (this.size >> 1) + 1);
+            }
+            this.ids[this.size++] = id;
+            return this;
+        }
+
+        /**
+         * Quantidade de chaves incluídas, contando as repetidas
+         * @return Quantidade
+         */
+        public int size() {
+            return this.size;
+        }
+
+        /**
+         * Ordena as chaves e remove as repetidas. O Builder não deve ser usado depois
+         * @return LongIdSet
+         */
+        public LongIdSet build() {
+            LongIdSet set = sortUnique(this.ids, this.size);
+            this.ids = null;
+            return set;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package br.com.jbc.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Future concluído por quem executa a operação, usado pelas gravações assíncronas para
+ * devolver a cada chamador o resultado da sua gravação
+ * @author Rodrigo Marconato
+ * @param <V> Tipo do resultado
+ */
+public class ResultFuture<V> implements Future<V> {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile V result;
+
+    private volatile Throwable error;
+
+    /**
+     * Conclui o future com sucesso. Chamadas depois da primeira conclusão são ignoradas
+     * @param result Resultado da operação
+     */
+    public void complete(V result) {
+        if (this.done.getCount() > 0) {
+            this.result = result;
+            this.done.countDown();
+        }
+    }
+
+    /**
+     * Conclui o future com erro. Chamadas depois da primeira conclusão são ignoradas
+     * @param error Erro da operação
+     */
+    public void fail(Throwable error) {
+        if (this.done.getCount() > 0) {
+            this.error = error;
+            this.done.countDown();
+        }
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    public boolean isCancelled() {
+        return false;
+    }
+
+    public boolean isDone() {
+        return this.done.getCount() == 0;
+    }
+
+    public V get() throws InterruptedException, ExecutionException {
+        this.done.await();
+        return this.report();
+    }
+
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!this.done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return this.report();
+    }
+
+    private V report() throws ExecutionException {
+        if (this.error != null) {
+            throw new ExecutionException(this.error);
+        }
+        return this.result;
+    }
+}
@@ -0,0 +1,36 @@
+package br.com.jbc.util;
+
+import java.io.IOException;
+
+/**
+ * Codifica as linhas de uma exportação em um formato de texto. As implementações não guardam
+ * estado entre as chamadas e podem ser reaproveitadas e compartilhadas entre exportações
+ * @author Rodrigo Marconato
+ */
+public interface RowEncoder {
+
+    /**
+     * Escreve o início da exportação
+     * @param columns Nomes das colunas
+     * @param out Destino
+     * @throws IOException
+     */
+    void begin(String[] columns, ChannelWriter out) throws IOException;
+
+    /**
+     * Escreve uma linha
+     * @param columns Nomes das colunas
+     * @param values Valores da linha na ordem das colunas
+     * @param first true para a primeira linha da exportação
+     * @param out Destino
+     * @throws IOException
+     */
+    void row(String[] columns, Object[] values, boolean first, ChannelWriter out) throws IOException;
+
+    /**
+     * Escreve o fim da exportação
+     * @param out Destino
+     * @throws IOException
+     */
+    void end(ChannelWriter out) throws IOException;
+}
@@ -0,0 +1,48 @@
+package br.com.jbc.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Base dos codificadores de texto, com a conversão dos valores das colunas. Datas são escritas
+ * no formato ISO 8601, java.sql.Date somente com a data
+ * @author Rodrigo Marconato
+ */
+public abstract class TextRowEncoder implements RowEncoder {
+
+    private static final ThreadLocal<SimpleDateFormat> dateTimeFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+        }
+    };
+
+    private static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd");
+        }
+    };
+
+    /**
+     * Converte o valor de uma coluna em texto
+     * @param value Valor, diferente de null
+     * @return Texto do valor
+     */
+    protected String text(Object value) {
+        if (value instanceof Calendar) {
+            value = ((Calendar) value).getTime();
+        }
+        if (value instanceof java.sql.Date) {
+            return dateFormat.get().format((Date) value);
+        }
+        if (value instanceof Date) {
+            return dateTimeFormat.get().format((Date) value);
+        }
+        if (value instanceof Enum) {
+            return ((Enum) value).name();
+        }
+        return value.toString();
+    }
+}